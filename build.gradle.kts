@@ -3,6 +3,7 @@ plugins {
 	`java-library`
 	`maven-publish`
 	id("com.github.ben-manes.versions") version "0.36.0"
+	id("me.champeau.gradle.jmh") version "0.5.3"
 }
 
 group = "com.elex-project"
@@ -22,6 +23,12 @@ java {
 	targetCompatibility = org.gradle.api.JavaVersion.VERSION_1_8
 }
 
+// Java 11+ layer of the multi-release jar
+val java11: SourceSet by sourceSets.creating {
+	java.srcDir("src/main/java11")
+	compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
 configurations {
 	compileOnly {
 		extendsFrom(annotationProcessor.get())
@@ -37,15 +44,24 @@ tasks.jar {
 				"Implementation-Title" to project.name,
 				"Implementation-Version" to project.version,
 				"Implementation-Vendor" to "ELEX co.,pte.",
-				"Automatic-Module-Name" to "com.elex_project.harpy"
+				"Automatic-Module-Name" to "com.elex_project.harpy",
+				"Multi-Release" to "true"
 		))
 	}
+	into("META-INF/versions/11") {
+		from(java11.output)
+	}
 }
 
 tasks.compileJava {
 	options.encoding = "UTF-8"
 }
 
+tasks.named<JavaCompile>(java11.compileJavaTaskName) {
+	options.encoding = "UTF-8"
+	options.release.set(11)
+}
+
 tasks.compileTestJava {
 	options.encoding = "UTF-8"
 }
@@ -54,6 +70,18 @@ tasks.test {
 	useJUnitPlatform()
 }
 
+// ./gradlew jmh -- throughput, and allocations per operation from the gc profiler (gc.alloc.rate.norm)
+jmh {
+	jmhVersion = "1.27"
+	benchmarkMode = listOf("thrpt")
+	timeUnit = "s"
+	profilers = listOf("gc")
+	fork = 1
+	warmupIterations = 3
+	iterations = 5
+	resultFormat = "JSON"
+}
+
 tasks.javadoc {
 	if (JavaVersion.current().isJava9Compatible) {
 		(options as StandardJavadocDocletOptions).addBooleanOption("html5", true)
@@ -123,10 +151,12 @@ dependencies {
 
 	implementation("com.elex-project:abraxas:4.0.7")
 	implementation("org.json:json:20201115")
+	api("org.reactivestreams:reactive-streams:1.0.3")
 
 	compileOnly("org.projectlombok:lombok:1.18.16")
 	annotationProcessor("org.projectlombok:lombok:1.18.16")
 	testAnnotationProcessor("org.projectlombok:lombok:1.18.16")
+	testAnnotationProcessor(project(":processor"))
 
 	testImplementation("ch.qos.logback:logback-classic:1.2.3")
 	testImplementation("org.junit.jupiter:junit-jupiter:5.7.0")
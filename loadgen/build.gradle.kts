@@ -0,0 +1,35 @@
+plugins {
+	java
+	application
+}
+
+group = "com.elex-project"
+version = rootProject.version
+description = "Load generator built on Http Companion"
+
+repositories {
+	maven {
+		url = uri("https://repository.elex-project.com/repository/maven")
+	}
+}
+
+java {
+	sourceCompatibility = org.gradle.api.JavaVersion.VERSION_1_8
+	targetCompatibility = org.gradle.api.JavaVersion.VERSION_1_8
+}
+
+application {
+	mainClass.set("com.elex_project.harpy.loadgen.LoadGenerator")
+	applicationName = "harpy-load"
+}
+
+tasks.compileJava {
+	options.encoding = "UTF-8"
+}
+
+dependencies {
+	implementation(rootProject)
+	implementation("org.hdrhistogram:HdrHistogram:2.1.12")
+	implementation("org.jetbrains:annotations:20.1.0")
+	runtimeOnly("org.slf4j:slf4j-nop:1.7.30")
+}
@@ -0,0 +1,292 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy.loadgen;
+
+import com.elex_project.harpy.HttpDeleteRequest;
+import com.elex_project.harpy.HttpGetRequest;
+import com.elex_project.harpy.HttpHeadRequest;
+import com.elex_project.harpy.HttpPostRequest;
+import com.elex_project.harpy.HttpPutRequest;
+import com.elex_project.harpy.HttpRequest;
+import com.elex_project.harpy.HttpResponseHandler;
+import org.HdrHistogram.Histogram;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * wrk style load generator, sending with the harpy request classes.
+ * <p>
+ * Without a rate, each connection sends back to back (closed loop).
+ * Such latencies are subject to coordinated omission: a stalled response also delays
+ * the requests that would have been sent meanwhile, and those are never measured.
+ * With {@code -R}, requests are scheduled at a constant rate and each latency is measured
+ * from the time it should have been sent, so that stalls are accounted for.
+ * With {@code -i}, closed loop latencies are corrected with the expected interval instead.
+ *
+ * @author Elex
+ */
+public final class LoadGenerator {
+	private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+	private static final double[] PERCENTILES = {50, 75, 90, 99, 99.9, 99.99, 99.999, 100};
+
+	private final Options options;
+
+	private LoadGenerator(final Options options) {
+		this.options = options;
+	}
+
+	public static void main(final String[] args) {
+		final Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException | IOException e) {
+			System.err.println(e.getMessage());
+			System.err.print(Options.USAGE);
+			System.exit(1);
+			return;
+		}
+		if (!options.keepAlive) System.setProperty("http.keepAlive", "false");
+		System.setProperty("http.maxConnections", String.valueOf(Math.max(5, options.connections)));
+
+		try {
+			new LoadGenerator(options).run(System.out);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run(final PrintStream out) throws InterruptedException {
+		out.printf(Locale.ROOT, "Running %s test @ %s%n", format(options.durationNanos), options.url);
+		out.printf(Locale.ROOT, "  %d connections, %s%n", options.connections,
+				options.rate > 0 ? String.format(Locale.ROOT, "%.1f requests/s", options.rate) : "closed loop");
+
+		if (options.warmupNanos > 0) {
+			execute(options.warmupNanos);
+		}
+		final long start = System.nanoTime();
+		final Worker[] workers = execute(options.durationNanos);
+		final long elapsed = System.nanoTime() - start;
+
+		final Histogram latency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+		long requests = 0, errors = 0, non2xx = 0, bytes = 0;
+		for (Worker worker : workers) {
+			latency.add(worker.latency);
+			requests += worker.requests;
+			errors += worker.errors;
+			non2xx += worker.non2xx;
+			bytes += worker.bytes;
+		}
+		report(out, latency, elapsed, requests, errors, non2xx, bytes);
+	}
+
+	private Worker[] execute(final long durationNanos) throws InterruptedException {
+		final Worker[] workers = new Worker[options.connections];
+		final CountDownLatch done = new CountDownLatch(workers.length);
+		final long start = System.nanoTime();
+		final long end = start + durationNanos;
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i, start, end, done);
+			final Thread thread = new Thread(workers[i], "harpy-load-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+		return workers;
+	}
+
+	private void report(final PrintStream out, final Histogram latency, final long elapsed,
+	                    final long requests, final long errors, final long non2xx, final long bytes) {
+		final double seconds = elapsed / 1e9;
+		out.println("  Latency Distribution");
+		for (double percentile : PERCENTILES) {
+			out.printf(Locale.ROOT, "  %7s%%  %s%n", trim(percentile), micros(latency.getValueAtPercentile(percentile)));
+		}
+		out.printf(Locale.ROOT, "  mean %s, stdev %s%n", micros((long) latency.getMean()), micros((long) latency.getStdDeviation()));
+		if (options.printDistribution) {
+			out.println();
+			out.println("  Detailed Percentile spectrum (ms):");
+			latency.outputPercentileDistribution(out, 1000.0);
+		}
+		out.printf(Locale.ROOT, "  %d requests in %s, %s read%n", requests, format(elapsed), size(bytes));
+		if (errors > 0) out.printf(Locale.ROOT, "  Errors (socket, timeout or status >= 400): %d%n", errors);
+		if (non2xx > 0) out.printf(Locale.ROOT, "  Non-2xx or 3xx responses: %d%n", non2xx);
+		out.printf(Locale.ROOT, "Requests/sec: %10.2f%n", requests / seconds);
+		out.printf(Locale.ROOT, "Transfer/sec: %10s%n", size((long) (bytes / seconds)));
+		if (options.rate <= 0 && options.intervalNanos <= 0) {
+			out.println("Latencies are not corrected for coordinated omission, use -R or -i.");
+		}
+	}
+
+	private HttpRequest<Long> newRequest() throws IOException {
+		final HttpRequest<Long> request;
+		switch (options.method) {
+			case HEAD:
+				request = new HttpHeadRequest<>(options.url);
+				break;
+			case DELETE:
+				request = new HttpDeleteRequest<>(options.url);
+				break;
+			case POST:
+				request = new HttpPostRequest<>(options.url);
+				if (null != options.body) ((HttpPostRequest<Long>) request).setBody(options.body, options.contentType);
+				break;
+			case PUT:
+				request = new HttpPutRequest<>(options.url);
+				if (null != options.body) ((HttpPutRequest<Long>) request).setBody(options.body, options.contentType);
+				break;
+			case GET:
+				request = new HttpGetRequest<>(options.url);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported method: " + options.method);
+		}
+		request.setConnectTimeout(options.timeoutMillis);
+		request.setRequestTimeout(options.timeoutMillis);
+		for (String[] header : options.headers) {
+			request.setRequestHeaderProperty(header[0], header[1]);
+		}
+		return request;
+	}
+
+	private final class Worker implements Runnable, HttpResponseHandler<Long> {
+		final Histogram latency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+		private final long start;
+		private final long end;
+		private final CountDownLatch done;
+		/**
+		 * Interval between the intended send times of this connection, 0 for closed loop
+		 */
+		private final long period;
+		private final long offset;
+		long requests, errors, non2xx, bytes;
+
+		Worker(final int index, final long start, final long end, final CountDownLatch done) {
+			this.start = start;
+			this.end = end;
+			this.done = done;
+			this.period = options.rate > 0 ? (long) (1e9 * options.connections / options.rate) : 0;
+			// spread the connections evenly over a period
+			this.offset = period * index / options.connections;
+		}
+
+		@Override
+		public void run() {
+			try {
+				long sequence = 0;
+				while (true) {
+					long intended = System.nanoTime();
+					if (period > 0) {
+						intended = start + offset + sequence++ * period;
+						long now;
+						while ((now = System.nanoTime()) < intended) {
+							LockSupport.parkNanos(intended - now);
+						}
+					}
+					if (intended >= end) break;
+
+					try {
+						newRequest().send(this);
+					} catch (IOException e) {
+						errors++;
+					}
+					final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+					if (period <= 0 && options.intervalNanos > 0) {
+						latency.recordValueWithExpectedInterval(Math.min(micros, HIGHEST_LATENCY_MICROS),
+								TimeUnit.NANOSECONDS.toMicros(options.intervalNanos));
+					} else {
+						latency.recordValue(Math.min(micros, HIGHEST_LATENCY_MICROS));
+					}
+					requests++;
+				}
+			} finally {
+				done.countDown();
+			}
+		}
+
+		@Override
+		public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final Long message) {
+			if (status < 200 || status > 399) non2xx++;
+			if (null != message) bytes += message;
+		}
+
+		@Override
+		public void onException(final Throwable e) {
+			errors++;
+		}
+
+		/**
+		 * Discard the body, but count it
+		 */
+		@Override
+		public Long transform(final InputStream is) throws IOException {
+			final byte[] buffer = new byte[8192];
+			long count = 0;
+			int n;
+			while ((n = is.read(buffer)) > 0) {
+				count += n;
+			}
+			is.close();
+			return count;
+		}
+	}
+
+	private static String micros(final long micros) {
+		if (micros >= 1_000_000) return String.format(Locale.ROOT, "%.2fs", micros / 1e6);
+		if (micros >= 1_000) return String.format(Locale.ROOT, "%.2fms", micros / 1e3);
+		return micros + "us";
+	}
+
+	private static String format(final long nanos) {
+		return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+	}
+
+	private static String size(final long bytes) {
+		if (bytes >= 1L << 30) return String.format(Locale.ROOT, "%.2fGB", bytes / (double) (1L << 30));
+		if (bytes >= 1L << 20) return String.format(Locale.ROOT, "%.2fMB", bytes / (double) (1L << 20));
+		if (bytes >= 1L << 10) return String.format(Locale.ROOT, "%.2fKB", bytes / (double) (1L << 10));
+		return bytes + "B";
+	}
+
+	private static String trim(final double percentile) {
+		return percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile);
+	}
+}
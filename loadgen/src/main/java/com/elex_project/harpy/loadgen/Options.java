@@ -0,0 +1,167 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy.loadgen;
+
+import com.elex_project.harpy.HttpMethod;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line options
+ *
+ * @author Elex
+ */
+final class Options {
+	static final String USAGE = "Usage: harpy-load [options] <url>\n" +
+			"  -c, --connections <n>   concurrent connections (default 10)\n" +
+			"  -d, --duration <time>   test duration, e.g. 30s, 2m (default 10s)\n" +
+			"  -w, --warmup <time>     warm up before recording (default 0s)\n" +
+			"  -R, --rate <n>          constant arrival rate in requests/s,\n" +
+			"                          latencies measured from the intended send time\n" +
+			"  -i, --interval <time>   expected interval between requests of a connection,\n" +
+			"                          corrects fixed concurrency latencies, e.g. 10ms\n" +
+			"  -m, --method <method>   GET, HEAD, DELETE, POST or PUT (default GET)\n" +
+			"  -H, --header <k: v>     request header, repeatable\n" +
+			"  -b, --body <text>       request body, or @file\n" +
+			"  -t, --timeout <time>    connect and read timeout (default 10s)\n" +
+			"  -k, --keep-alive <bool> reuse connections (default true)\n" +
+			"      --latency           print the full HDR percentile distribution\n";
+
+	String url;
+	int connections = 10;
+	long durationNanos = TimeUnit.SECONDS.toNanos(10);
+	long warmupNanos = 0;
+	double rate = 0;
+	long intervalNanos = 0;
+	HttpMethod method = HttpMethod.GET;
+	final List<String[]> headers = new ArrayList<>();
+	String body;
+	String contentType = "text/plain; charset=UTF-8";
+	int timeoutMillis = 10000;
+	boolean keepAlive = true;
+	boolean printDistribution = false;
+
+	static Options parse(final String[] args) throws IOException {
+		final Options options = new Options();
+		for (int i = 0; i < args.length; i++) {
+			final String arg = args[i];
+			switch (arg) {
+				case "-c":
+				case "--connections":
+					options.connections = Integer.parseInt(value(args, ++i, arg));
+					break;
+				case "-d":
+				case "--duration":
+					options.durationNanos = nanos(value(args, ++i, arg));
+					break;
+				case "-w":
+				case "--warmup":
+					options.warmupNanos = nanos(value(args, ++i, arg));
+					break;
+				case "-R":
+				case "--rate":
+					options.rate = Double.parseDouble(value(args, ++i, arg));
+					break;
+				case "-i":
+				case "--interval":
+					options.intervalNanos = nanos(value(args, ++i, arg));
+					break;
+				case "-m":
+				case "--method":
+					options.method = HttpMethod.of(value(args, ++i, arg));
+					break;
+				case "-H":
+				case "--header":
+					final String header = value(args, ++i, arg);
+					final int colon = header.indexOf(':');
+					if (colon <= 0) throw new IllegalArgumentException("Invalid header: " + header);
+					final String name = header.substring(0, colon).trim();
+					final String headerValue = header.substring(colon + 1).trim();
+					if ("Content-Type".equalsIgnoreCase(name)) {
+						options.contentType = headerValue;
+					} else {
+						options.headers.add(new String[]{name, headerValue});
+					}
+					break;
+				case "-b":
+				case "--body":
+					final String body = value(args, ++i, arg);
+					options.body = body.startsWith("@")
+							? new String(Files.readAllBytes(Paths.get(body.substring(1))), "UTF-8")
+							: body;
+					break;
+				case "-t":
+				case "--timeout":
+					options.timeoutMillis = (int) TimeUnit.NANOSECONDS.toMillis(nanos(value(args, ++i, arg)));
+					break;
+				case "-k":
+				case "--keep-alive":
+					options.keepAlive = Boolean.parseBoolean(value(args, ++i, arg));
+					break;
+				case "--latency":
+					options.printDistribution = true;
+					break;
+				default:
+					if (arg.startsWith("-")) throw new IllegalArgumentException("Unknown option: " + arg);
+					options.url = arg;
+			}
+		}
+		if (null == options.url) throw new IllegalArgumentException("URL is missing.");
+		if (null == options.method) throw new IllegalArgumentException("Unknown method.");
+		if (options.connections < 1) throw new IllegalArgumentException("Connections must be positive.");
+		return options;
+	}
+
+	private static String value(final String[] args, final int i, final String option) {
+		if (i >= args.length) throw new IllegalArgumentException("Missing value of " + option);
+		return args[i];
+	}
+
+	/**
+	 * @param time 100ms, 30s, 2m, 1h, or seconds without a unit
+	 * @return nanoseconds
+	 */
+	static long nanos(final String time) {
+		if (time.endsWith("us")) return TimeUnit.MICROSECONDS.toNanos(Long.parseLong(time.substring(0, time.length() - 2)));
+		if (time.endsWith("ms")) return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(time.substring(0, time.length() - 2)));
+		if (time.endsWith("s")) return TimeUnit.SECONDS.toNanos(Long.parseLong(time.substring(0, time.length() - 1)));
+		if (time.endsWith("m")) return TimeUnit.MINUTES.toNanos(Long.parseLong(time.substring(0, time.length() - 1)));
+		if (time.endsWith("h")) return TimeUnit.HOURS.toNanos(Long.parseLong(time.substring(0, time.length() - 1)));
+		return TimeUnit.SECONDS.toNanos(Long.parseLong(time));
+	}
+}
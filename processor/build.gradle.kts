@@ -0,0 +1,36 @@
+plugins {
+	java
+	`java-library`
+	`maven-publish`
+}
+
+group = "com.elex-project"
+version = rootProject.version
+description = "Annotation processor generating JSON codecs for Http Companion"
+
+repositories {
+	maven {
+		url = uri("https://repository.elex-project.com/repository/maven")
+	}
+}
+
+java {
+	withSourcesJar()
+	sourceCompatibility = org.gradle.api.JavaVersion.VERSION_1_8
+	targetCompatibility = org.gradle.api.JavaVersion.VERSION_1_8
+}
+
+tasks.compileJava {
+	options.encoding = "UTF-8"
+	// the processor must not process itself
+	options.compilerArgs.add("-proc:none")
+}
+
+publishing {
+	publications {
+		create<MavenPublication>("mavenJava") {
+			artifactId = "harpy-processor"
+			from(components["java"])
+		}
+	}
+}
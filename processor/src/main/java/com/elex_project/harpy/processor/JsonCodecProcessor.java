@@ -0,0 +1,473 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a {@code JsonCodec} for every class marked with {@code @JsonSerializable}.
+ * <p>
+ * The codec of {@code Outer.Inner} is {@code Outer_Inner_JsonCodec} in the same package,
+ * reading and writing the fields directly, or through their getters and setters, without reflection.
+ *
+ * @author Elex
+ */
+@SupportedAnnotationTypes(JsonCodecProcessor.SERIALIZABLE)
+public final class JsonCodecProcessor extends AbstractProcessor {
+	private static final String PACKAGE = "com.elex_project.harpy";
+	static final String SERIALIZABLE = PACKAGE + ".JsonSerializable";
+	private static final String NAME = PACKAGE + ".JsonName";
+	private static final String CODECS = PACKAGE + ".JsonCodecs";
+
+	/**
+	 * Codecs of the types, by qualified name
+	 */
+	private static final Map<String, String> KNOWN = new LinkedHashMap<>();
+
+	static {
+		KNOWN.put("java.lang.String", "STRING");
+		KNOWN.put("java.lang.Boolean", "BOOLEAN");
+		KNOWN.put("java.lang.Integer", "INTEGER");
+		KNOWN.put("java.lang.Long", "LONG");
+		KNOWN.put("java.lang.Short", "SHORT");
+		KNOWN.put("java.lang.Byte", "BYTE");
+		KNOWN.put("java.lang.Double", "DOUBLE");
+		KNOWN.put("java.lang.Float", "FLOAT");
+		KNOWN.put("java.lang.Character", "CHARACTER");
+		KNOWN.put("java.math.BigInteger", "BIG_INTEGER");
+		KNOWN.put("java.math.BigDecimal", "BIG_DECIMAL");
+		KNOWN.put("java.lang.Object", "VALUE");
+		KNOWN.put("org.json.JSONObject", "JSON_OBJECT");
+		KNOWN.put("org.json.JSONArray", "JSON_ARRAY");
+	}
+
+	/**
+	 * A type the processor cannot handle
+	 */
+	private static final class UnsupportedException extends Exception {
+		private final Element element;
+
+		private UnsupportedException(final Element element, final String message) {
+			super(message);
+			this.element = element;
+		}
+	}
+
+	/**
+	 * Codec of a member: an expression, and the type it reads
+	 */
+	private static final class Codec {
+		private final String expression;
+		private final String type;
+		private final boolean collection;
+
+		private Codec(final String expression, final String type, final boolean collection) {
+			this.expression = expression;
+			this.type = type;
+			this.collection = collection;
+		}
+	}
+
+	private static final class Property {
+		private String json;
+		private TypeMirror type;
+		/**
+		 * expression of the value, on "value"
+		 */
+		private String getter;
+		/**
+		 * statement setting the value, with %s for it; null if read only
+		 */
+		private String setter;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		final TypeElement annotation = processingEnv.getElementUtils().getTypeElement(SERIALIZABLE);
+		if (null == annotation) return false;
+		for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+			try {
+				generate(check(element));
+			} catch (UnsupportedException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write the codec: " + e, element);
+			}
+		}
+		return true;
+	}
+
+	private static TypeElement check(final Element element) throws UnsupportedException {
+		if (element.getKind() != ElementKind.CLASS) {
+			throw new UnsupportedException(element, "@JsonSerializable is for classes");
+		}
+		final TypeElement type = (TypeElement) element;
+		final Set<Modifier> modifiers = type.getModifiers();
+		if (modifiers.contains(Modifier.ABSTRACT)) throw new UnsupportedException(type, "Must not be abstract");
+		if (modifiers.contains(Modifier.PRIVATE)) throw new UnsupportedException(type, "Must not be private");
+		if (type.getNestingKind() != NestingKind.TOP_LEVEL && !modifiers.contains(Modifier.STATIC)) {
+			throw new UnsupportedException(type, "Must be a static class");
+		}
+		if (!type.getTypeParameters().isEmpty()) throw new UnsupportedException(type, "Must not be generic");
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return type;
+			}
+		}
+		throw new UnsupportedException(type, "Needs a constructor without arguments, not private");
+	}
+
+	private void generate(final TypeElement type) throws UnsupportedException, IOException {
+		final String pkg = packageOf(type).getQualifiedName().toString();
+		final String name = codecName(type);
+		final String target = type.getQualifiedName().toString();
+		final List<Property> properties = properties(type);
+
+		final List<Codec> codecs = new ArrayList<>();
+		for (Property property : properties) {
+			codecs.add(property.type.getKind().isPrimitive() ? null : codec(property.type, type));
+		}
+
+		final StringBuilder sb = new StringBuilder();
+		if (!pkg.isEmpty()) sb.append("package ").append(pkg).append(";\n\n");
+		sb.append("/**\n * Generated by harpy-processor from {@link ").append(target).append("}; do not edit.\n */\n");
+		sb.append("public final class ").append(name).append(" implements ").append(PACKAGE).append(".JsonCodec<")
+				.append(target).append("> {\n");
+		sb.append("\tpublic static final ").append(name).append(" INSTANCE = new ").append(name).append("();\n");
+		for (int i = 0; i < codecs.size(); i++) {
+			final Codec codec = codecs.get(i);
+			if (null == codec) continue;
+			sb.append("\tprivate static final ").append(PACKAGE).append(".JsonCodec<").append(codec.type).append("> C").append(i)
+					.append(" = ").append(codec.expression).append(";\n");
+		}
+		sb.append("\n\tprivate ").append(name).append("() {\n\t}\n\n");
+
+		// read
+		sb.append("\t@Override\n\tpublic ").append(target).append(" read(final ").append(PACKAGE)
+				.append(".JsonReader reader) throws java.io.IOException {\n");
+		sb.append("\t\tif (reader.peek() == ").append(PACKAGE).append(".JsonReader.Token.NULL) {\n")
+				.append("\t\t\treader.nextNull();\n\t\t\treturn null;\n\t\t}\n");
+		sb.append("\t\tfinal ").append(target).append(" value = new ").append(target).append("();\n");
+		sb.append("\t\treader.beginObject();\n\t\twhile (reader.hasNext()) {\n\t\t\tswitch (reader.nextName()) {\n");
+		for (int i = 0; i < properties.size(); i++) {
+			final Property property = properties.get(i);
+			if (null == property.setter) continue;
+			sb.append("\t\t\t\tcase \"").append(escape(property.json)).append("\":\n");
+			final Codec codec = codecs.get(i);
+			if (null == codec) {
+				sb.append("\t\t\t\t\tif (reader.peek() == ").append(PACKAGE).append(".JsonReader.Token.NULL) {\n")
+						.append("\t\t\t\t\t\treader.nextNull();\n\t\t\t\t\t} else {\n")
+						.append("\t\t\t\t\t\t").append(String.format(property.setter, readPrimitive(property.type.getKind()))).append(";\n")
+						.append("\t\t\t\t\t}\n");
+			} else {
+				final String read = codec.collection ? "(" + typeName(property.type) + ") C" + i + ".read(reader)" : "C" + i + ".read(reader)";
+				sb.append("\t\t\t\t\t").append(String.format(property.setter, read)).append(";\n");
+			}
+			sb.append("\t\t\t\t\tbreak;\n");
+		}
+		sb.append("\t\t\t\tdefault:\n\t\t\t\t\treader.skipValue();\n\t\t\t}\n\t\t}\n\t\treader.endObject();\n\t\treturn value;\n\t}\n\n");
+
+		// write
+		sb.append("\t@Override\n\tpublic void write(final ").append(PACKAGE).append(".JsonWriter writer, final ").append(target)
+				.append(" value) throws java.io.IOException {\n");
+		sb.append("\t\tif (null == value) {\n\t\t\twriter.nullValue();\n\t\t\treturn;\n\t\t}\n");
+		sb.append("\t\twriter.beginObject();\n");
+		for (int i = 0; i < properties.size(); i++) {
+			final Property property = properties.get(i);
+			sb.append("\t\twriter.name(\"").append(escape(property.json)).append("\");\n");
+			if (null == codecs.get(i)) {
+				final String get = property.type.getKind() == TypeKind.CHAR ? "String.valueOf(" + property.getter + ")" : property.getter;
+				sb.append("\t\twriter.value(").append(get).append(");\n");
+			} else {
+				sb.append("\t\tC").append(i).append(".write(writer, ").append(property.getter).append(");\n");
+			}
+		}
+		sb.append("\t\twriter.endObject();\n\t}\n}\n");
+
+		final String file = pkg.isEmpty() ? name : pkg + "." + name;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(file, type).openWriter()) {
+			writer.write(sb.toString());
+		}
+	}
+
+	/**
+	 * Fields of the class and its superclasses, outside of java.*
+	 */
+	private List<Property> properties(final TypeElement type) throws UnsupportedException {
+		final List<TypeElement> hierarchy = new ArrayList<>();
+		for (TypeElement t = type; null != t && !t.getQualifiedName().toString().startsWith("java."); t = superclass(t)) {
+			hierarchy.add(0, t);
+		}
+		final List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type));
+		final Map<String, Property> properties = new LinkedHashMap<>();
+		for (TypeElement t : hierarchy) {
+			for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+				final Set<Modifier> modifiers = field.getModifiers();
+				if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+				final Property property = new Property();
+				property.json = jsonName(field);
+				property.type = field.asType();
+				final String fieldName = field.getSimpleName().toString();
+				final boolean accessible = !modifiers.contains(Modifier.PRIVATE)
+						&& (modifiers.contains(Modifier.PUBLIC) || packageOf(t).equals(packageOf(type)));
+				final String capitalized = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+				final ExecutableElement getter = find(methods, type, "get" + capitalized, null);
+				final ExecutableElement isGetter = property.type.getKind() == TypeKind.BOOLEAN
+						? find(methods, type, "is" + capitalized, null) : null;
+				final ExecutableElement setter = find(methods, type, "set" + capitalized, property.type);
+				if (accessible) {
+					property.getter = "value." + fieldName;
+				} else if (null != getter) {
+					property.getter = "value." + getter.getSimpleName() + "()";
+				} else if (null != isGetter) {
+					property.getter = "value." + isGetter.getSimpleName() + "()";
+				} else {
+					throw new UnsupportedException(field, "Private field without a getter");
+				}
+				if (accessible && !modifiers.contains(Modifier.FINAL)) {
+					property.setter = "value." + fieldName + " = %s";
+				} else if (null != setter) {
+					property.setter = "value." + setter.getSimpleName() + "(%s)";
+				} else if (!modifiers.contains(Modifier.FINAL)) {
+					throw new UnsupportedException(field, "Private field without a setter");
+				}
+				if (null != properties.put(property.json, property)) {
+					throw new UnsupportedException(field, "Duplicate member \"" + property.json + "\"");
+				}
+			}
+		}
+		return new ArrayList<>(properties.values());
+	}
+
+	private Codec codec(final TypeMirror type, final Element where) throws UnsupportedException {
+		if (type.getKind() != TypeKind.DECLARED) {
+			throw new UnsupportedException(where, "Type not supported: " + type);
+		}
+		final DeclaredType declared = (DeclaredType) type;
+		final TypeElement element = (TypeElement) declared.asElement();
+		final String qualified = element.getQualifiedName().toString();
+		final List<? extends TypeMirror> arguments = declared.getTypeArguments();
+		if (KNOWN.containsKey(qualified)) {
+			return new Codec(CODECS + "." + KNOWN.get(qualified), qualified, false);
+		}
+		if (element.getKind() == ElementKind.ENUM) {
+			return new Codec(CODECS + ".enumeration(" + qualified + ".class)", qualified, false);
+		}
+		switch (qualified) {
+			case "java.lang.Iterable": {
+				final Codec element0 = codec(argument(arguments, 0, where), where);
+				return new Codec(CODECS + ".iterable(" + element0.expression + ")", "java.lang.Iterable<" + element0.type + ">", true);
+			}
+			case "java.util.Collection": {
+				final Codec element0 = codec(argument(arguments, 0, where), where);
+				return new Codec(CODECS + ".collection(" + element0.expression + ")", "java.util.Collection<" + element0.type + ">", true);
+			}
+			case "java.util.List":
+			case "java.util.ArrayList": {
+				final Codec element0 = codec(argument(arguments, 0, where), where);
+				return new Codec(CODECS + ".list(" + element0.expression + ")", "java.util.List<" + element0.type + ">", true);
+			}
+			case "java.util.Set":
+			case "java.util.HashSet":
+			case "java.util.LinkedHashSet": {
+				final Codec element0 = codec(argument(arguments, 0, where), where);
+				return new Codec(CODECS + ".set(" + element0.expression + ")", "java.util.Set<" + element0.type + ">", true);
+			}
+			case "java.util.Map":
+			case "java.util.HashMap":
+			case "java.util.LinkedHashMap": {
+				if (!typeName(argument(arguments, 0, where)).equals("java.lang.String")) {
+					throw new UnsupportedException(where, "Map keys must be String: " + type);
+				}
+				final Codec value = codec(argument(arguments, 1, where), where);
+				return new Codec(CODECS + ".map(" + value.expression + ")", "java.util.Map<java.lang.String, " + value.type + ">", true);
+			}
+			default:
+		}
+		if (isSerializable(element)) {
+			final String codec = packageOf(element).getQualifiedName() + "." + codecName(element);
+			// lazily, for classes referring to each other
+			return new Codec(CODECS + ".lazy(() -> " + codec.replaceFirst("^\\.", "") + ".INSTANCE)", qualified, false);
+		}
+		throw new UnsupportedException(where, "Type not supported: " + type + "; mark it with @JsonSerializable");
+	}
+
+	private static TypeMirror argument(final List<? extends TypeMirror> arguments, final int index, final Element where) throws UnsupportedException {
+		if (arguments.size() <= index) throw new UnsupportedException(where, "Raw types are not supported");
+		final TypeMirror argument = arguments.get(index);
+		if (argument.getKind() != TypeKind.DECLARED) {
+			throw new UnsupportedException(where, "Type argument not supported: " + argument);
+		}
+		return argument;
+	}
+
+	private ExecutableElement find(final List<ExecutableElement> methods, final TypeElement type, final String name,
+	                               final TypeMirror parameter) {
+		for (ExecutableElement method : methods) {
+			if (!method.getSimpleName().contentEquals(name) || method.getModifiers().contains(Modifier.STATIC)) continue;
+			if (method.getModifiers().contains(Modifier.PRIVATE)) continue;
+			if (!method.getModifiers().contains(Modifier.PUBLIC)
+					&& !packageOf(method).equals(packageOf(type))) continue;
+			if (null == parameter) {
+				if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID) return method;
+			} else if (method.getParameters().size() == 1
+					&& processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), parameter)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	private static TypeElement superclass(final TypeElement type) {
+		final TypeMirror superclass = type.getSuperclass();
+		return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+	}
+
+	private static boolean isSerializable(final TypeElement element) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(SERIALIZABLE)) return true;
+		}
+		return false;
+	}
+
+	private static String jsonName(final VariableElement field) {
+		for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(NAME)) {
+				for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+					if (entry.getKey().getSimpleName().contentEquals("value")) return String.valueOf(entry.getValue().getValue());
+				}
+			}
+		}
+		return field.getSimpleName().toString();
+	}
+
+	private static PackageElement packageOf(Element element) {
+		while (element.getKind() != ElementKind.PACKAGE) element = element.getEnclosingElement();
+		return (PackageElement) element;
+	}
+
+	/**
+	 * Outer_Inner_JsonCodec
+	 */
+	private static String codecName(final TypeElement type) {
+		final StringBuilder sb = new StringBuilder(type.getSimpleName());
+		for (Element e = type.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+			sb.insert(0, e.getSimpleName() + "_");
+		}
+		return sb.append("_JsonCodec").toString();
+	}
+
+	/**
+	 * Name of a type in source, without type annotations
+	 */
+	private static String typeName(final TypeMirror type) {
+		if (type.getKind() != TypeKind.DECLARED) return type.toString();
+		final DeclaredType declared = (DeclaredType) type;
+		final StringBuilder sb = new StringBuilder(((TypeElement) declared.asElement()).getQualifiedName());
+		if (!declared.getTypeArguments().isEmpty()) {
+			sb.append('<');
+			for (int i = 0; i < declared.getTypeArguments().size(); i++) {
+				if (i > 0) sb.append(", ");
+				sb.append(typeName(declared.getTypeArguments().get(i)));
+			}
+			sb.append('>');
+		}
+		return sb.toString();
+	}
+
+	private static String readPrimitive(final TypeKind kind) {
+		switch (kind) {
+			case BOOLEAN:
+				return "reader.nextBoolean()";
+			case INT:
+				return "reader.nextInt()";
+			case LONG:
+				return "reader.nextLong()";
+			case DOUBLE:
+				return "reader.nextDouble()";
+			case FLOAT:
+				return "(float) reader.nextDouble()";
+			case SHORT:
+				return "(short) reader.nextInt()";
+			case BYTE:
+				return "(byte) reader.nextInt()";
+			default:
+				return CODECS + ".CHARACTER.read(reader)";
+		}
+	}
+
+	private static String escape(final String s) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20 || c > 0x7e) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
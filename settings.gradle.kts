@@ -1,2 +1,4 @@
 rootProject.name = "http-companion"
 
+include("loadgen")
+include("processor")
@@ -0,0 +1,75 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collecting the headers of a typical response and looking one up,
+ * into HttpHeaders versus a map of lists like HttpURLConnection.getHeaderFields().
+ *
+ * @author Elex
+ */
+@State(Scope.Benchmark)
+public class HttpHeadersBenchmark {
+	private final String[] names = {"Date", "Content-Type", "Content-Length", "Connection", "Cache-Control",
+			"ETag", "Vary", "X-Request-Id", "Set-Cookie", "Set-Cookie"};
+	private final String[] values = {"Tue, 19 Oct 2021 08:00:00 GMT", "application/json; charset=UTF-8", "1234",
+			"keep-alive", "no-cache, private", "\"33a64df5\"", "Accept-Encoding", "f058ebd6-02f7-4d3f-942e-904344e8cde5",
+			"a=1; Path=/", "b=2; Path=/"};
+
+	@Benchmark
+	public String headers() {
+		final HttpHeaders headers = new HttpHeaders();
+		for (int i = 0; i < names.length; i++) headers.add(names[i], values[i]);
+		return headers.getContentType();
+	}
+
+	@Benchmark
+	public List<String> mapOfLists() {
+		final Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = 0; i < names.length; i++) {
+			map.computeIfAbsent(names[i], k -> new ArrayList<>(1)).add(values[i]);
+		}
+		final Map<String, List<String>> headers = Collections.unmodifiableMap(map);
+		return headers.get("content-type");
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transforming in-memory bodies, so that only the handlers are measured.
+ *
+ * @author Elex
+ */
+@State(Scope.Benchmark)
+public class ResponseHandlerBenchmark {
+	/**
+	 * number of records in the body
+	 */
+	@Param({"10", "1000"})
+	public int records;
+
+	private static final List<String> POINTERS = Arrays.asList("/items/0/name", "/items/9/price");
+
+	private byte[] text;
+	private byte[] json;
+	private byte[] xml;
+	private HttpHeaders headers;
+
+	private final HttpStringResponseHandler stringHandler = new HttpStringResponseHandler() {
+		@Override
+		public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+		}
+
+		@Override
+		public void onException(final Throwable e) {
+		}
+	};
+	private final HttpJsonResponseHandler jsonHandler = new HttpJsonResponseHandler() {
+		@Override
+		public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final JSONObject message) {
+		}
+
+		@Override
+		public void onException(final Throwable e) {
+		}
+	};
+	private final HttpXmlResponseHandler xmlHandler = new HttpXmlResponseHandler() {
+		@Override
+		public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final Document message) {
+		}
+
+		@Override
+		public void onException(final Throwable e) {
+		}
+	};
+
+	private final HttpXmlStreamResponseHandler<String> xmlStreamHandler =
+			new HttpXmlStreamResponseHandler<String>("/items/item/name", HttpXmlStreamResponseHandler.TEXT) {
+				@Override
+				protected void onElement(final String element) {
+				}
+
+				@Override
+				public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final Long message) {
+				}
+
+				@Override
+				public void onException(final Throwable e) {
+				}
+			};
+
+	@Setup
+	public void setup() {
+		final StringBuilder jsonBuilder = new StringBuilder("{\"items\":[");
+		final StringBuilder xmlBuilder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><items>");
+		for (int i = 0; i < records; i++) {
+			if (i > 0) jsonBuilder.append(',');
+			jsonBuilder.append("{\"id\":").append(i)
+					.append(",\"name\":\"항목 ").append(i)
+					.append("\",\"price\":").append(i * 1.5)
+					.append(",\"active\":").append(i % 2 == 0)
+					.append('}');
+			xmlBuilder.append("<item id=\"").append(i).append("\">")
+					.append("<name>항목 ").append(i).append("</name>")
+					.append("<price>").append(i * 1.5).append("</price>")
+					.append("</item>");
+		}
+		jsonBuilder.append("]}");
+		xmlBuilder.append("</items>");
+
+		json = jsonBuilder.toString().getBytes(StandardCharsets.UTF_8);
+		xml = xmlBuilder.toString().getBytes(StandardCharsets.UTF_8);
+		text = json;
+		headers = new HttpHeaders();
+		headers.add("Content-Type", "application/json; charset=UTF-8");
+		headers.add("Content-Length", String.valueOf(json.length));
+	}
+
+	@Benchmark
+	public String string() throws IOException {
+		return stringHandler.transform(new ByteArrayInputStream(text));
+	}
+
+	/**
+	 * presized from Content-Length
+	 */
+	@Benchmark
+	public String stringWithHeaders() throws Throwable {
+		return stringHandler.transform(new ByteArrayInputStream(text), headers);
+	}
+
+	@Benchmark
+	public JSONObject json() throws IOException {
+		return jsonHandler.transform(new ByteArrayInputStream(json));
+	}
+
+	@Benchmark
+	public JSONObject jsonWithHeaders() throws Throwable {
+		return jsonHandler.transform(new ByteArrayInputStream(json), headers);
+	}
+
+	/**
+	 * sum of the prices, pulled token by token
+	 */
+	@Benchmark
+	public double jsonReader() throws IOException {
+		final JsonReader reader = new JsonReader(new ByteArrayInputStream(json));
+		double sum = 0;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			reader.nextName();
+			reader.beginArray();
+			while (reader.hasNext()) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if (reader.nextName().equals("price")) {
+						sum += reader.nextDouble();
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			}
+			reader.endArray();
+		}
+		reader.endObject();
+		return sum;
+	}
+
+	@Benchmark
+	public Map<String, Object> jsonPointer() throws IOException {
+		return new JsonReader(new ByteArrayInputStream(json)).readPointers(POINTERS);
+	}
+
+	@Benchmark
+	public Document xml() throws IOException {
+		return xmlHandler.transform(new ByteArrayInputStream(xml));
+	}
+
+	/**
+	 * names of the items, without a DOM
+	 */
+	@Benchmark
+	public Long xmlStream() throws IOException {
+		return xmlStreamHandler.transform(new ByteArrayInputStream(xml));
+	}
+}
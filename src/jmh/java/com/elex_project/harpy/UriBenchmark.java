@@ -0,0 +1,115 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link #parse()} against {@link #parseRegex()}, a copy of the former regex based {@link Uri#parse(String)}.
+ *
+ * @author Elex
+ */
+@State(Scope.Benchmark)
+public class UriBenchmark {
+	private static final Pattern URI_PATTERN = Pattern
+			.compile("(?<scheme>[^:/]+)://((?<user>[^@]+)@)?(?<host>[^:]+)(:(?<port>[0-9]+))?(/(?<path>[^?]+))?(\\?(?<query>[^#]+))?(#(?<fragment>.+))?");
+
+	@Param({"https://user@example.com:8080/api/v1/items/42?query=Hello&sort=desc#section_1",
+			"http://www.example.com/",
+			"http://10.0.0.1:8080/search?q=harpy&page=2&size=20&sort=desc&lang=ko"})
+	public String uriString;
+
+	private Uri uri;
+	private String plain;
+	private String encoded;
+
+	@Setup
+	public void setup() {
+		uri = Uri.parse(uriString);
+		plain = "안녕 하세요 key1=value 1&key2=value@!$2";
+		encoded = Uri.encode(plain);
+	}
+
+	@Benchmark
+	public Uri parse() {
+		return Uri.parse(uriString);
+	}
+
+	@Benchmark
+	public Object[] parseRegex() {
+		final Matcher matcher = URI_PATTERN.matcher(uriString);
+		if (!matcher.matches()) throw new IllegalArgumentException("URI pattern mismatches.");
+		final int port = null == matcher.group("port") ? -1 : Integer.parseInt(matcher.group("port"));
+		final List<String> path = new ArrayList<>();
+		if (null != matcher.group("path")) {
+			for (String seg : matcher.group("path").split("/")) {
+				path.add(seg);
+			}
+		}
+		final Map<String, String> query = new HashMap<>();
+		if (null != matcher.group("query")) {
+			for (String q : matcher.group("query").split("&")) {
+				String[] pair = q.split("=");
+				query.put(pair[0], pair[1]);
+			}
+		}
+		return new Object[]{matcher.group("scheme"), matcher.group("user"), matcher.group("host"), port,
+				path, query, matcher.group("fragment")};
+	}
+
+	@Benchmark
+	public String toUriString() {
+		return uri.toString();
+	}
+
+	@Benchmark
+	public String encode() {
+		return Uri.encode(plain);
+	}
+
+	@Benchmark
+	public String decode() {
+		return Uri.decode(encoded);
+	}
+}
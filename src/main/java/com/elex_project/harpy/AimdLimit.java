@@ -0,0 +1,95 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease.
+ * <p>
+ * The limit grows by about one per limit's worth of successful requests, while it is being used,
+ * and is cut by the backoff ratio on every drop or on a request slower than the timeout.
+ *
+ * @author Elex
+ */
+public final class AimdLimit implements LimitAlgorithm {
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoff;
+	private final long timeout;
+	private double limit;
+
+	/**
+	 * 20 to start with, between 1 and 1000, backoff 0.9, 5 seconds timeout
+	 */
+	public AimdLimit() {
+		this(20, 1, 1000, 0.9, 5000);
+	}
+
+	/**
+	 * @param initialLimit initial limit
+	 * @param minLimit     minimum limit
+	 * @param maxLimit     maximum limit
+	 * @param backoff      ratio to cut the limit by, between 0.5 and 1
+	 * @param timeout      milliseconds, slower requests count as drops
+	 */
+	public AimdLimit(final int initialLimit, final int minLimit, final int maxLimit, final double backoff, final long timeout) {
+		if (minLimit < 1 || maxLimit < minLimit) throw new IllegalArgumentException("limits: " + minLimit + "-" + maxLimit);
+		if (backoff < 0.5 || backoff >= 1) throw new IllegalArgumentException("backoff: " + backoff);
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.backoff = backoff;
+		this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	@Override
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	@Override
+	public void onSample(final long rtt, final int inFlight, final boolean dropped) {
+		if (dropped || rtt > timeout) {
+			limit = Math.max(minLimit, limit * backoff);
+		} else if (inFlight * 2 >= limit) {
+			// only grow a limit that is being used
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AimdLimit{limit=" + getLimit() + "}";
+	}
+}
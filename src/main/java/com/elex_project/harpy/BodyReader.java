@@ -0,0 +1,263 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+
+/**
+ * Reads response bodies with as few copies as possible.
+ * <p>
+ * Bodies are read into a buffer of the reading thread, presized from Content-Length when there is one,
+ * then decoded once with the charset of the Content-Type.
+ * Buffers up to 1MB are kept per thread; larger bodies get a buffer of their own.
+ * Read with {@link ResponseLimits}, those are counted against the global memory budget
+ * until the body has been decoded.
+ *
+ * @author Elex
+ */
+public final class BodyReader {
+	private static final int MIN_BUFFER = 8192;
+	private static final int MAX_POOLED = 1 << 20;
+	private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+	private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+	private BodyReader() {
+	}
+
+	/**
+	 * @param is      body
+	 * @param headers response headers, for the length and charset
+	 * @return body, decoded with the charset of the Content-Type, or UTF-8
+	 * @throws IOException on read failure
+	 */
+	public static String readString(@NotNull final InputStream is, @Nullable final HttpHeaders headers) throws IOException {
+		return readString(is, headers, -1);
+	}
+
+	/**
+	 * @param is       body
+	 * @param headers  response headers, for the length and charset
+	 * @param maxBytes maximum size of the body, -1 for unlimited
+	 * @return body, decoded with the charset of the Content-Type, or UTF-8
+	 * @throws IOException on read failure, or if the body is larger than maxBytes
+	 */
+	public static String readString(@NotNull final InputStream is, @Nullable final HttpHeaders headers, final long maxBytes) throws IOException {
+		if (null == headers) return readString(is, -1, StandardCharsets.UTF_8, maxBytes);
+		return readString(is, headers.getContentLength(), charsetOf(headers.getContentType(), StandardCharsets.UTF_8), maxBytes);
+	}
+
+	/**
+	 * @param is      body
+	 * @param headers response headers, for the length and charset
+	 * @param limits  maximum size of the body, and the wait for the global memory budget
+	 * @return body, decoded with the charset of the Content-Type, or UTF-8
+	 * @throws IOException on read failure, if the body is larger than the maximum, or if there is no room in the budget
+	 */
+	public static String readString(@NotNull final InputStream is, @Nullable final HttpHeaders headers,
+	                                @NotNull final ResponseLimits limits) throws IOException {
+		final long contentLength = null == headers ? -1 : headers.getContentLength();
+		final Charset charset = null == headers ? StandardCharsets.UTF_8 : charsetOf(headers.getContentType(), StandardCharsets.UTF_8);
+		return readString(is, contentLength, charset, limits.getMaxBytes(), limits.getBudgetWait());
+	}
+
+	/**
+	 * @param is            body
+	 * @param contentLength expected length, or -1 if unknown
+	 * @param charset       charset
+	 * @return body
+	 * @throws IOException on read failure
+	 */
+	public static String readString(@NotNull final InputStream is, final long contentLength, @NotNull final Charset charset) throws IOException {
+		return readString(is, contentLength, charset, -1);
+	}
+
+	/**
+	 * @param is            body
+	 * @param contentLength expected length, or -1 if unknown
+	 * @param charset       charset
+	 * @param maxBytes      maximum size of the body, -1 for unlimited
+	 * @return body
+	 * @throws IOException on read failure, or if the body is larger than maxBytes
+	 */
+	public static String readString(@NotNull final InputStream is, final long contentLength, @NotNull final Charset charset,
+	                                final long maxBytes) throws IOException {
+		return readString(is, contentLength, charset, maxBytes, -1);
+	}
+
+	/**
+	 * @param budgetWait nanoseconds to wait for the global memory budget, -1 to leave it
+	 */
+	private static String readString(final InputStream is, final long contentLength, final Charset charset,
+	                                 final long maxBytes, final long budgetWait) throws IOException {
+		final Buffer buffer = BUFFER.get();
+		try {
+			return new String(buffer.read(is, contentLength, maxBytes, budgetWait), 0, buffer.length, charset);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	/**
+	 * @param is            body
+	 * @param contentLength expected length, or -1 if unknown
+	 * @return body
+	 * @throws IOException on read failure
+	 */
+	public static byte[] readBytes(@NotNull final InputStream is, final long contentLength) throws IOException {
+		if (contentLength >= 0 && contentLength < MAX_ARRAY) {
+			// no copy when the length is right
+			final byte[] bytes = new byte[(int) contentLength];
+			final int length = readFully(is, bytes, 0);
+			if (length < bytes.length) return Arrays.copyOf(bytes, length);
+			if (is.read() < 0) return bytes;
+			throw new IOException("Body longer than Content-Length: " + contentLength);
+		}
+		final Buffer buffer = BUFFER.get();
+		return Arrays.copyOf(buffer.read(is, contentLength, -1, -1), buffer.length);
+	}
+
+	/**
+	 * @param contentType value of Content-Type, like text/html; charset=EUC-KR
+	 * @param fallback    charset when none is named, or it is not supported
+	 * @return charset
+	 */
+	public static Charset charsetOf(@Nullable final String contentType, @NotNull final Charset fallback) {
+		if (null == contentType) return fallback;
+		int i = indexOfIgnoreCase(contentType, "charset=");
+		if (i < 0) return fallback;
+		i += 8;
+		int end = contentType.indexOf(';', i);
+		if (end < 0) end = contentType.length();
+		String name = contentType.substring(i, end).trim();
+		if (name.length() >= 2 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+			name = name.substring(1, name.length() - 1);
+		}
+		if (name.equalsIgnoreCase("utf-8")) return StandardCharsets.UTF_8;
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			return fallback;
+		}
+	}
+
+	private static int indexOfIgnoreCase(final String str, final String search) {
+		for (int i = 0; i <= str.length() - search.length(); i++) {
+			if (str.regionMatches(true, i, search, 0, search.length())) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return bytes read into the array from offset, until it is full or the end of the stream
+	 */
+	private static int readFully(final InputStream is, final byte[] array, int offset) throws IOException {
+		int n;
+		while (offset < array.length && (n = is.read(array, offset, array.length - offset)) > 0) {
+			offset += n;
+		}
+		return offset;
+	}
+
+	private static IOException tooLarge(final long length, final long maxBytes) {
+		return new IOException("Response body too large: " + length + " > " + maxBytes);
+	}
+
+	/**
+	 * Buffer of a thread, with the length of the body last read
+	 */
+	private static final class Buffer {
+		private byte[] array = new byte[MIN_BUFFER];
+		private int length;
+		/**
+		 * bytes of the global memory budget reserved for the body being read
+		 */
+		private long reserved = 0;
+
+		/**
+		 * @param budgetWait nanoseconds to wait for the global memory budget for arrays beyond the pooled one,
+		 *                   -1 to leave the budget; {@link #release()} it afterwards
+		 * @return array with the body, from 0 to length; the pooled one, unless too large to keep
+		 */
+		byte[] read(final InputStream is, final long contentLength, final long maxBytes, final long budgetWait) throws IOException {
+			if (maxBytes >= 0 && contentLength > maxBytes) throw tooLarge(contentLength, maxBytes);
+			byte[] target = array;
+			// the body may be longer than said, so leave room to find the end without growing
+			if (contentLength >= target.length && contentLength < MAX_ARRAY) {
+				target = allocate((int) contentLength + 1, budgetWait);
+			}
+			length = 0;
+			while (true) {
+				length = readFully(is, target, length);
+				if (length < target.length) break;
+				final int b = is.read();
+				if (b < 0) break;
+				if (maxBytes >= 0 && length >= maxBytes) throw tooLarge(length + 1, maxBytes);
+				if (target.length >= MAX_ARRAY) throw new IOException("Body too large");
+				long size = Math.min(MAX_ARRAY, target.length * 2L);
+				if (maxBytes >= 0) size = Math.min(size, maxBytes + 1);
+				final byte[] larger = allocate((int) size, budgetWait);
+				System.arraycopy(target, 0, larger, 0, length);
+				target = larger;
+				target[length++] = (byte) b;
+			}
+			if (maxBytes >= 0 && length > maxBytes) throw tooLarge(length, maxBytes);
+			if (target != array && target.length <= MAX_POOLED + 1) array = target;
+			return target;
+		}
+
+		/**
+		 * The array it replaces is garbage afterwards, so the reservation grows by the difference
+		 */
+		private byte[] allocate(final int size, final long budgetWait) throws IOException {
+			if (budgetWait >= 0 && size > reserved) {
+				ResponseLimits.reserveOrFail(size - reserved, budgetWait);
+				reserved = size;
+			}
+			return new byte[size];
+		}
+
+		void release() {
+			ResponseLimits.release(reserved);
+			reserved = 0;
+		}
+	}
+}
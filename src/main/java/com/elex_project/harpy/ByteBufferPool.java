@@ -0,0 +1,172 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte buffers in power of two size classes, for {@link HttpByteBufferResponseHandler}.
+ * <p>
+ * Direct buffers are costly to allocate and are freed only by the GC,
+ * so reusing them keeps the native memory flat under load.
+ * A buffer larger than the largest class is allocated as is and is dropped on release.
+ * <pre>
+ * ByteBufferPool pool = new ByteBufferPool(true, 4 * 1024 * 1024, 64 * 1024 * 1024);
+ * ByteBuffer buffer = pool.acquire(1000);
+ * try {
+ *     ...
+ * } finally {
+ *     pool.release(buffer);
+ * }
+ * </pre>
+ *
+ * @author Elex
+ */
+public final class ByteBufferPool {
+	private static final int MIN_SHIFT = 12;
+	private static final ByteBufferPool DIRECT = new ByteBufferPool(true, 4 << 20, 64 << 20);
+
+	private final boolean direct;
+	private final int maxBufferSize;
+	private final long maxPooledBytes;
+	private final Queue<ByteBuffer>[] classes;
+	private final AtomicLong pooledBytes = new AtomicLong();
+
+	/**
+	 * @param direct         true for direct buffers, false for heap ones
+	 * @param maxBufferSize  capacity of the largest pooled buffer, rounded up to a power of two
+	 * @param maxPooledBytes capacity of all the idle buffers together; released ones beyond it are dropped
+	 */
+	@SuppressWarnings("unchecked")
+	public ByteBufferPool(final boolean direct, final int maxBufferSize, final long maxPooledBytes) {
+		if (maxBufferSize <= 0 || maxBufferSize > 1 << 30) throw new IllegalArgumentException("maxBufferSize: " + maxBufferSize);
+		if (maxPooledBytes < 0) throw new IllegalArgumentException("maxPooledBytes: " + maxPooledBytes);
+		this.direct = direct;
+		this.maxBufferSize = Math.max(1 << MIN_SHIFT, Integer.highestOneBit(maxBufferSize - 1) << 1);
+		this.maxPooledBytes = maxPooledBytes;
+		this.classes = new Queue[classOf(this.maxBufferSize) + 1];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = new ConcurrentLinkedQueue<>();
+		}
+	}
+
+	/**
+	 * @return shared pool of direct buffers up to 4MB, keeping up to 64MB idle
+	 */
+	public static ByteBufferPool getDirect() {
+		return DIRECT;
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	/**
+	 * @return capacity of the idle buffers in the pool
+	 */
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	/**
+	 * @param size bytes needed
+	 * @return cleared buffer with a capacity of at least the size, and the limit at the size
+	 */
+	public ByteBuffer acquire(final int size) {
+		if (size < 0) throw new IllegalArgumentException("size: " + size);
+		final int index = size > maxBufferSize ? -1 : classOf(size);
+		ByteBuffer buffer = index < 0 ? null : classes[index].poll();
+		if (index < 0) {
+			buffer = allocate(size);
+		} else if (null == buffer) {
+			buffer = allocate(1 << (index + MIN_SHIFT));
+		} else {
+			pooledBytes.addAndGet(-buffer.capacity());
+			((Buffer) buffer).clear();
+		}
+		// through Buffer, as ByteBuffer overrides these only since Java 9
+		((Buffer) buffer).limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Returns the buffer to the pool. It must not be used after this, nor released twice.
+	 * Buffers not from this pool, or over the pooled capacity, are left to the GC.
+	 *
+	 * @param buffer buffer from {@link #acquire(int)}
+	 */
+	public void release(@NotNull final ByteBuffer buffer) {
+		final int capacity = buffer.capacity();
+		if (buffer.isDirect() != direct || buffer.isReadOnly() || capacity > maxBufferSize
+				|| capacity < 1 << MIN_SHIFT || Integer.bitCount(capacity) != 1) return;
+		if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+			pooledBytes.addAndGet(-capacity);
+			return;
+		}
+		classes[classOf(capacity)].offer(buffer);
+	}
+
+	/**
+	 * Drops the idle buffers.
+	 */
+	public void clear() {
+		for (Queue<ByteBuffer> queue : classes) {
+			ByteBuffer buffer;
+			while (null != (buffer = queue.poll())) {
+				pooledBytes.addAndGet(-buffer.capacity());
+			}
+		}
+	}
+
+	private ByteBuffer allocate(final int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * @return index of the smallest class holding the size
+	 */
+	private static int classOf(final int size) {
+		if (size <= 1 << MIN_SHIFT) return 0;
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+	}
+}
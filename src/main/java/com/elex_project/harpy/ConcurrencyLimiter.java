@@ -0,0 +1,291 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit of the requests in flight, per host.
+ * <p>
+ * Each host gets its own {@link LimitAlgorithm}, which learns the capacity of the upstream
+ * from the latency and failures of the completed requests. Requests beyond the current limit wait in a
+ * bounded queue, and are rejected with a {@link LimitExceededException} when it is full or the wait times out.
+ * A request is counted as dropped when it fails with an exception, or is answered with 429 or 503.
+ * <pre>
+ * HttpRequest.setDefaultConcurrencyLimiter(ConcurrencyLimiter.builder()
+ *         .algorithm(GradientLimit::new)
+ *         .maxQueue(100)
+ *         .build());
+ * </pre>
+ *
+ * @author Elex
+ */
+public final class ConcurrencyLimiter {
+	private final Supplier<? extends LimitAlgorithm> algorithm;
+	private final int maxQueue;
+	private final long queueTimeout;
+	private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+	private final LongAdder rejected = new LongAdder();
+
+	private ConcurrencyLimiter(final Builder builder) {
+		this.algorithm = builder.algorithm;
+		this.maxQueue = builder.maxQueue;
+		this.queueTimeout = TimeUnit.MILLISECONDS.toNanos(builder.queueTimeout);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Wait for a slot of the host of the url.
+	 *
+	 * @param url url
+	 * @return permit, to be released when the request completes
+	 * @throws LimitExceededException if the queue is full, or the wait timed out
+	 * @throws IOException            if interrupted while waiting
+	 */
+	public Permit acquire(@NotNull final URL url) throws IOException {
+		return host(url.getAuthority()).acquire();
+	}
+
+	/**
+	 * @param host host[:port]
+	 * @return current limit, or 0 for a host not seen yet
+	 */
+	public int getLimit(@NotNull final String host) {
+		final Host h = hosts.get(host);
+		return null == h ? 0 : h.algorithm.getLimit();
+	}
+
+	/**
+	 * @param host host[:port]
+	 * @return requests in flight
+	 */
+	public int getInFlight(@NotNull final String host) {
+		final Host h = hosts.get(host);
+		return null == h ? 0 : h.inFlight;
+	}
+
+	/**
+	 * @param host host[:port]
+	 * @return requests waiting for a slot
+	 */
+	public int getQueued(@NotNull final String host) {
+		final Host h = hosts.get(host);
+		return null == h ? 0 : h.queued;
+	}
+
+	/**
+	 * @return current limits, by host[:port]
+	 */
+	public Map<String, Integer> getLimits() {
+		final Map<String, Integer> limits = new TreeMap<>();
+		for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+			limits.put(entry.getKey(), entry.getValue().algorithm.getLimit());
+		}
+		return limits;
+	}
+
+	/**
+	 * @return requests rejected, for all hosts
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	private Host host(final String authority) {
+		Host host = hosts.get(authority);
+		if (null == host) {
+			host = hosts.computeIfAbsent(authority, k -> new Host(algorithm.get()));
+		}
+		return host;
+	}
+
+	/**
+	 * Slot of a request in flight
+	 */
+	public static final class Permit {
+		private final Host host;
+		private final long start = System.nanoTime();
+		private final int inFlight;
+		private boolean released = false;
+
+		private Permit(final Host host, final int inFlight) {
+			this.host = host;
+			this.inFlight = inFlight;
+		}
+
+		/**
+		 * @param dropped whether the request failed or was turned away by the upstream
+		 */
+		public void release(final boolean dropped) {
+			if (released) return;
+			released = true;
+			host.release(System.nanoTime() - start, inFlight, dropped);
+		}
+
+		/**
+		 * A drop is 429 or 503, a timeout, or a failure before the status arrived.
+		 * Other statuses are answers, even though {@link java.net.HttpURLConnection#getInputStream()} throws on 4xx.
+		 */
+		void release(final HttpTrace trace) {
+			release(trace.status <= 0 ? null != trace.failure
+					: trace.status == 429 || trace.status == 503 || trace.failure instanceof SocketTimeoutException);
+		}
+	}
+
+	/**
+	 * Thrown when a request is turned away by the limiter
+	 */
+	public static final class LimitExceededException extends IOException {
+		public LimitExceededException(final String message) {
+			super(message);
+		}
+	}
+
+	private void reject() {
+		rejected.increment();
+		HttpStatistics.limited();
+	}
+
+	private final class Host {
+		private final LimitAlgorithm algorithm;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition available = lock.newCondition();
+		private volatile int inFlight = 0;
+		private volatile int queued = 0;
+
+		Host(final LimitAlgorithm algorithm) {
+			this.algorithm = algorithm;
+		}
+
+		Permit acquire() throws IOException {
+			lock.lock();
+			try {
+				if (inFlight < algorithm.getLimit()) return new Permit(this, ++inFlight);
+				if (queued >= maxQueue) {
+					reject();
+					throw new LimitExceededException("Concurrency limit exceeded: " + algorithm.getLimit());
+				}
+				queued++;
+				try {
+					long wait = queueTimeout;
+					while (inFlight >= algorithm.getLimit()) {
+						if (wait <= 0) {
+							reject();
+							throw new LimitExceededException("Timed out waiting for a slot: " + algorithm.getLimit());
+						}
+						wait = available.awaitNanos(wait);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for a slot");
+				} finally {
+					queued--;
+				}
+				return new Permit(this, ++inFlight);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void release(final long rtt, final int inFlight, final boolean dropped) {
+			lock.lock();
+			try {
+				this.inFlight--;
+				algorithm.onSample(rtt, inFlight, dropped);
+				final int free = algorithm.getLimit() - this.inFlight;
+				if (free > 1) {
+					available.signalAll();
+				} else if (free == 1) {
+					available.signal();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	public static class Builder {
+		private Supplier<? extends LimitAlgorithm> algorithm = AimdLimit::new;
+		private int maxQueue = 0;
+		private long queueTimeout = 1000;
+
+		/**
+		 * @param algorithm creates the algorithm of each host, {@link AimdLimit} by default
+		 * @return builder
+		 */
+		public Builder algorithm(@NotNull final Supplier<? extends LimitAlgorithm> algorithm) {
+			this.algorithm = algorithm;
+			return this;
+		}
+
+		/**
+		 * @param maxQueue requests that may wait for a slot per host, 0 (default) to reject right away
+		 * @return builder
+		 */
+		public Builder maxQueue(final int maxQueue) {
+			if (maxQueue < 0) throw new IllegalArgumentException("maxQueue: " + maxQueue);
+			this.maxQueue = maxQueue;
+			return this;
+		}
+
+		/**
+		 * @param timeout milliseconds to wait for a slot, 1 second by default
+		 * @return builder
+		 */
+		public Builder queueTimeout(final long timeout) {
+			if (timeout < 0) throw new IllegalArgumentException("timeout: " + timeout);
+			this.queueTimeout = timeout;
+			return this;
+		}
+
+		public ConcurrencyLimiter build() {
+			return new ConcurrencyLimiter(this);
+		}
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Server-Sent Events client, which keeps a text/event-stream open and hands its events over to a listener.
+ * <p>
+ * When the stream ends or fails, it reconnects after the retry delay, set by the server or the builder,
+ * sending the id of the last event as Last-Event-ID so that the server can resume from it.
+ * The delay doubles on consecutive failures to connect, up to the max retry delay.
+ * It stops on 204 No Content, a 4xx status other than 429, a response which is not an event stream,
+ * or {@link #close()}.
+ * <pre>
+ * EventSource source = EventSource.builder("https://example.com/events")
+ *         .listener(event -&gt; System.out.println(event.getData()))
+ *         .build();
+ * source.start();
+ * ...
+ * source.close();
+ * </pre>
+ * The stream is read on a daemon thread of its own unless an executor is given,
+ * and is not subject to the concurrency limiter.
+ *
+ * @author Elex
+ */
+@Slf4j
+public final class EventSource implements Closeable {
+	private static final String EVENT_STREAM = "text/event-stream";
+
+	private final URL url;
+	private final Listener listener;
+	private final Executor executor;
+	@Nullable
+	private final Consumer<? super HttpGetRequest<Void>> customizer;
+	private final long maxRetry;
+
+	private volatile long retry;
+	private volatile String lastEventId;
+	private volatile boolean started = false;
+	private volatile boolean closed = false;
+	private final CountDownLatch closing = new CountDownLatch(1);
+	@Nullable
+	private volatile HttpURLConnection connection = null;
+
+	private EventSource(final Builder builder) {
+		this.url = builder.url;
+		this.listener = builder.listener;
+		this.executor = builder.executor;
+		this.customizer = builder.customizer;
+		this.retry = builder.retry;
+		this.maxRetry = builder.maxRetry;
+		this.lastEventId = builder.lastEventId;
+	}
+
+	public static Builder builder(@NotNull final URL url) {
+		return new Builder(url);
+	}
+
+	public static Builder builder(@NotNull final Uri uri) {
+		return builder(uri.toString());
+	}
+
+	/**
+	 * @param url url of the event stream
+	 * @return builder
+	 * @throws IllegalArgumentException if the url is malformed
+	 */
+	public static Builder builder(@NotNull final String url) {
+		try {
+			return builder(new URL(url));
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid url: " + url, e);
+		}
+	}
+
+	/**
+	 * Connects, and keeps reading the stream until closed.
+	 *
+	 * @throws IllegalStateException if started already
+	 */
+	public synchronized void start() {
+		if (started) throw new IllegalStateException("Started already");
+		started = true;
+		executor.execute(this::run);
+	}
+
+	/**
+	 * @return id of the last event, sent as Last-Event-ID on reconnecting
+	 */
+	@NotNull
+	public String getLastEventId() {
+		return lastEventId;
+	}
+
+	/**
+	 * @return reconnection delay in milliseconds
+	 */
+	public long getRetry() {
+		return retry;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Stops reading, and disconnects the stream if open.
+	 * {@link Listener#onClosed()} is called once the reading thread has stopped.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		closing.countDown();
+		final HttpURLConnection connection = this.connection;
+		if (null != connection) connection.disconnect();
+	}
+
+	private void run() {
+		int failures = 0;
+		try {
+			while (!closed) {
+				final Stream stream = new Stream();
+				try {
+					stream.open();
+				} catch (IOException | RuntimeException e) {
+					stream.failure = e;
+				}
+				if (closed) break;
+				if (null != stream.failure) {
+					listener.onError(stream.failure);
+					if (stream.fatal) break;
+				}
+				if (stream.done) break;
+				failures = stream.opened ? 0 : failures + 1;
+				final long delay = Math.min(retry << Math.min(Math.max(failures - 1, 0), 16), Math.max(maxRetry, retry));
+				if (closing.await(delay, TimeUnit.MILLISECONDS)) break;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closed = true;
+			connection = null;
+			listener.onClosed();
+		}
+	}
+
+	/**
+	 * A connection to the event stream.
+	 */
+	private final class Stream implements HttpResponseHandler<Void> {
+		@Nullable
+		private HttpURLConnection connection;
+		private boolean opened = false;
+		private boolean done = false;
+		private boolean fatal = false;
+		@Nullable
+		private Throwable failure = null;
+
+		private void open() throws IOException {
+			final HttpGetRequest<Void> request = new HttpGetRequest<>(url);
+			request.setConcurrencyLimiter(null);
+			request.setFollowRedirect(true);
+			request.setRequestHeaderProperty("Accept", EVENT_STREAM);
+			request.setRequestHeaderProperty("Cache-Control", "no-cache");
+			if (!lastEventId.isEmpty()) request.setRequestHeaderProperty("Last-Event-ID", lastEventId);
+			if (null != customizer) customizer.accept(request);
+			connection = request.connection;
+			EventSource.this.connection = connection;
+			// closed in between, so not disconnected by close()
+			if (closed) return;
+			request.send(this);
+		}
+
+		@Override
+		public Void transform(final InputStream is) throws IOException {
+			final int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NO_CONTENT) {
+				done = true;
+				return null;
+			}
+			final String contentType = connection.getContentType();
+			if (status != HttpURLConnection.HTTP_OK || null == contentType
+					|| !contentType.regionMatches(true, 0, EVENT_STREAM, 0, EVENT_STREAM.length())) {
+				fatal = true;
+				throw new IOException("Not an event stream: " + status + " " + contentType);
+			}
+			opened = true;
+			final HttpHeaders headers = ResponseStream.headersOf(is);
+			listener.onOpen(null != headers ? headers : HttpHeaders.of(connection));
+			try (EventStreamReader reader = new EventStreamReader(is, lastEventId)) {
+				ServerSentEvent event;
+				while (!closed && null != (event = reader.next())) {
+					lastEventId = event.getId();
+					if (reader.getRetry() >= 0) retry = reader.getRetry();
+					try {
+						listener.onEvent(event);
+					} catch (RuntimeException e) {
+						log.error("Listener failed on {}", event, e);
+					}
+				}
+				lastEventId = reader.getLastEventId();
+				if (reader.getRetry() >= 0) retry = reader.getRetry();
+			}
+			return null;
+		}
+
+		@Override
+		public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final Void message) {
+		}
+
+		@Override
+		public void onException(final Throwable e) {
+			failure = e;
+			if (fatal || opened) return;
+			try {
+				// the status line has been read already, unless it is the connection which failed
+				final int status = connection.getResponseCode();
+				fatal = status >= 400 && status < 500 && status != 429;
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Receives the events on the reading thread, one at a time.
+	 * An exception thrown by {@link #onEvent} is logged, and the stream goes on.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		/**
+		 * @param event event
+		 */
+		public void onEvent(@NotNull ServerSentEvent event);
+
+		/**
+		 * The stream is open, on each reconnection too.
+		 *
+		 * @param headers response headers
+		 */
+		public default void onOpen(@NotNull HttpHeaders headers) {
+		}
+
+		/**
+		 * A connection failed. It reconnects after this, unless the failure is final.
+		 *
+		 * @param e failure
+		 */
+		public default void onError(@NotNull Throwable e) {
+		}
+
+		/**
+		 * Called once, when it has stopped for good.
+		 */
+		public default void onClosed() {
+		}
+	}
+
+	public static class Builder {
+		private final URL url;
+		@Nullable
+		private Listener listener = null;
+		private Executor executor = runnable -> {
+			final Thread thread = new Thread(runnable, "harpy-sse");
+			thread.setDaemon(true);
+			thread.start();
+		};
+		@Nullable
+		private Consumer<? super HttpGetRequest<Void>> customizer = null;
+		private long retry = 3000;
+		private long maxRetry = 60000;
+		private String lastEventId = "";
+
+		private Builder(@NotNull final URL url) {
+			this.url = url;
+		}
+
+		/**
+		 * @param listener receives the events
+		 * @return builder
+		 */
+		public Builder listener(@NotNull final Listener listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		/**
+		 * @param executor runs the blocking reads; a new daemon thread by default
+		 * @return builder
+		 */
+		public Builder executor(@NotNull final Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * @param customizer called on each request before connecting, to set headers or timeouts;
+		 *                   a request timeout closes a stream idle for that long
+		 * @return builder
+		 */
+		public Builder request(@NotNull final Consumer<? super HttpGetRequest<Void>> customizer) {
+			this.customizer = customizer;
+			return this;
+		}
+
+		/**
+		 * @param retry reconnection delay in milliseconds until the server sets one, 3 seconds by default
+		 * @return builder
+		 */
+		public Builder retry(final long retry) {
+			if (retry < 0) throw new IllegalArgumentException("retry: " + retry);
+			this.retry = retry;
+			return this;
+		}
+
+		/**
+		 * @param maxRetry cap of the doubled delay on consecutive failures, in milliseconds, a minute by default
+		 * @return builder
+		 */
+		public Builder maxRetry(final long maxRetry) {
+			if (maxRetry < 0) throw new IllegalArgumentException("maxRetry: " + maxRetry);
+			this.maxRetry = maxRetry;
+			return this;
+		}
+
+		/**
+		 * @param lastEventId id to resume from on the first connection
+		 * @return builder
+		 */
+		public Builder lastEventId(@NotNull final String lastEventId) {
+			this.lastEventId = lastEventId;
+			return this;
+		}
+
+		/**
+		 * @return event source, not started yet
+		 * @throws IllegalStateException if no listener is set
+		 */
+		public EventSource build() {
+			if (null == listener) throw new IllegalStateException("No listener");
+			return new EventSource(this);
+		}
+	}
+}
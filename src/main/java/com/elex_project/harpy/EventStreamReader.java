@@ -0,0 +1,249 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental parser of a text/event-stream, as specified by the HTML living standard.
+ * <p>
+ * Events are dispatched as soon as their blank line has been read,
+ * so it works on a stream which is never finished. Used by {@link EventSource},
+ * or directly on the body of any response, like that of a POST.
+ * <pre>
+ * try (EventStreamReader reader = new EventStreamReader(is)) {
+ *     ServerSentEvent event;
+ *     while (null != (event = reader.next())) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Elex
+ */
+public final class EventStreamReader implements Closeable {
+	private static final byte[] DATA = {'d', 'a', 't', 'a'};
+	private static final byte[] EVENT = {'e', 'v', 'e', 'n', 't'};
+	private static final byte[] ID = {'i', 'd'};
+	private static final byte[] RETRY = {'r', 'e', 't', 'r', 'y'};
+
+	private final InputStream is;
+	private final byte[] buffer = new byte[8192];
+	private int position = 0;
+	private int limit = 0;
+
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+	private boolean firstLine = true;
+	private boolean skipLineFeed = false;
+
+	private final StringBuilder data = new StringBuilder();
+	@Nullable
+	private String eventType = null;
+	private String idBuffer = "";
+	private String lastEventId = "";
+	private long retry = -1;
+
+	/**
+	 * @param is body, read as UTF-8
+	 */
+	public EventStreamReader(@NotNull final InputStream is) {
+		this.is = is;
+	}
+
+	/**
+	 * @param is          body, read as UTF-8
+	 * @param lastEventId last event id to begin with, like the one sent as Last-Event-ID
+	 */
+	public EventStreamReader(@NotNull final InputStream is, @NotNull final String lastEventId) {
+		this.is = is;
+		this.lastEventId = lastEventId;
+		this.idBuffer = lastEventId;
+	}
+
+	/**
+	 * Blocks until an event has been read.
+	 *
+	 * @return next event, or null at the end of the stream; an unfinished event at the end is dropped
+	 * @throws IOException on read failure
+	 */
+	@Nullable
+	public ServerSentEvent next() throws IOException {
+		while (readLine()) {
+			if (lineLength == 0) {
+				final ServerSentEvent event = dispatch();
+				if (null != event) return event;
+			} else {
+				field();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return id of the last dispatched event, or of a former one, empty if none
+	 */
+	@NotNull
+	public String getLastEventId() {
+		return lastEventId;
+	}
+
+	/**
+	 * @return reconnection time in milliseconds, last set by the server, or -1 if never
+	 */
+	public long getRetry() {
+		return retry;
+	}
+
+	@Override
+	public void close() throws IOException {
+		is.close();
+	}
+
+	private void field() {
+		int colon = 0;
+		while (colon < lineLength && line[colon] != ':') colon++;
+		// a comment, like the keep alive heartbeats
+		if (colon == 0) return;
+		int start = colon + 1;
+		if (start < lineLength && line[start] == ' ') start++;
+		if (colon >= lineLength) start = lineLength;
+		if (is(DATA, colon)) {
+			data.append(value(start)).append('\n');
+		} else if (is(EVENT, colon)) {
+			eventType = value(start);
+		} else if (is(ID, colon)) {
+			final String id = value(start);
+			if (id.indexOf('\0') < 0) idBuffer = id;
+		} else if (is(RETRY, colon)) {
+			if (lineLength - start == 0 || lineLength - start > 18) return;
+			long value = 0;
+			for (int i = start; i < lineLength; i++) {
+				if (line[i] < '0' || line[i] > '9') return;
+				value = value * 10 + (line[i] - '0');
+			}
+			retry = value;
+		}
+		// unknown fields are ignored
+	}
+
+	private boolean is(final byte[] name, final int length) {
+		if (name.length != length) return false;
+		for (int i = 0; i < length; i++) {
+			if (line[i] != name[i]) return false;
+		}
+		return true;
+	}
+
+	private String value(final int start) {
+		return new String(line, start, lineLength - start, StandardCharsets.UTF_8);
+	}
+
+	@Nullable
+	private ServerSentEvent dispatch() {
+		lastEventId = idBuffer;
+		if (data.length() == 0) {
+			eventType = null;
+			return null;
+		}
+		data.setLength(data.length() - 1);
+		final ServerSentEvent event = new ServerSentEvent(lastEventId,
+				null == eventType || eventType.isEmpty() ? "message" : eventType, data.toString());
+		data.setLength(0);
+		eventType = null;
+		return event;
+	}
+
+	/**
+	 * Reads a line ended by CRLF, LF or CR into {@link #line}.
+	 *
+	 * @return false at the end of the stream
+	 */
+	private boolean readLine() throws IOException {
+		lineLength = 0;
+		while (true) {
+			if (position == limit && !fill()) return false;
+			if (skipLineFeed) {
+				skipLineFeed = false;
+				if (buffer[position] == '\n') {
+					position++;
+					continue;
+				}
+			}
+			int end = position;
+			while (end < limit && buffer[end] != '\n' && buffer[end] != '\r') end++;
+			append(end);
+			if (end < limit) {
+				skipLineFeed = buffer[end] == '\r';
+				position = end + 1;
+				if (firstLine) {
+					firstLine = false;
+					skipBom();
+				}
+				return true;
+			}
+			position = end;
+		}
+	}
+
+	private void append(final int end) {
+		final int length = end - position;
+		if (lineLength + length > line.length) {
+			line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+		}
+		System.arraycopy(buffer, position, line, lineLength, length);
+		lineLength += length;
+	}
+
+	private void skipBom() {
+		if (lineLength >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+			System.arraycopy(line, 3, line, 0, lineLength - 3);
+			lineLength -= 3;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		final int n = is.read(buffer, 0, buffer.length);
+		if (n <= 0) return false;
+		position = 0;
+		limit = n;
+		return true;
+	}
+}
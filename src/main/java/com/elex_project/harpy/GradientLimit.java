@@ -0,0 +1,111 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+/**
+ * Vegas style limit, driven by the gradient between the long term and the recent round trip time.
+ * <p>
+ * While the recent rtt stays near the long term one, the limit grows by a queue allowance of
+ * about the square root of the limit. When the upstream slows down and the recent rtt rises,
+ * the limit shrinks in proportion, down to half at a time; drops halve it.
+ * The long term average adapts slowly, so a lasting change of the upstream becomes the new normal.
+ *
+ * @author Elex
+ */
+public final class GradientLimit implements LimitAlgorithm {
+	private static final double SHORT_WEIGHT = 0.1;
+	private static final double LONG_WEIGHT = 0.01;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+	private final double smoothing;
+	private double limit;
+	private double shortRtt = 0;
+	private double longRtt = 0;
+
+	/**
+	 * 20 to start with, between 1 and 1000, tolerance 1.5, smoothing 0.2
+	 */
+	public GradientLimit() {
+		this(20, 1, 1000, 1.5, 0.2);
+	}
+
+	/**
+	 * @param initialLimit initial limit
+	 * @param minLimit     minimum limit
+	 * @param maxLimit     maximum limit
+	 * @param tolerance    how much slower than the long term rtt the recent one may get before the limit shrinks, at least 1
+	 * @param smoothing    weight of a new estimate, between 0 and 1
+	 */
+	public GradientLimit(final int initialLimit, final int minLimit, final int maxLimit, final double tolerance, final double smoothing) {
+		if (minLimit < 1 || maxLimit < minLimit) throw new IllegalArgumentException("limits: " + minLimit + "-" + maxLimit);
+		if (tolerance < 1) throw new IllegalArgumentException("tolerance: " + tolerance);
+		if (smoothing <= 0 || smoothing > 1) throw new IllegalArgumentException("smoothing: " + smoothing);
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.smoothing = smoothing;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	@Override
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	@Override
+	public void onSample(final long rtt, final int inFlight, final boolean dropped) {
+		if (dropped) {
+			limit = Math.max(minLimit, limit / 2);
+			return;
+		}
+		if (longRtt == 0) {
+			shortRtt = longRtt = rtt;
+		} else {
+			shortRtt += (rtt - shortRtt) * SHORT_WEIGHT;
+			longRtt += (rtt - longRtt) * LONG_WEIGHT;
+		}
+		// an application limited sample says nothing about the upstream's capacity
+		if (inFlight * 2 < limit) return;
+
+		final double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+		final double estimate = limit * gradient + Math.sqrt(limit);
+		limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + estimate * smoothing));
+	}
+
+	@Override
+	public String toString() {
+		return "GradientLimit{limit=" + getLimit() + ", shortRtt=" + (long) shortRtt + ", longRtt=" + (long) longRtt + "}";
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the body into a {@link ResponseBuffer}, in memory up to a threshold and in a temp file beyond it.
+ * <p>
+ * The buffer is closed by {@link #release(ResponseBuffer)} once {@link #onResponse} returns,
+ * which frees its memory and deletes its temp file.
+ * To keep it longer, override {@link #release(ResponseBuffer)} and close the buffer when done with it.
+ * <pre>
+ * request.send(new HttpBufferedResponseHandler() {
+ *     public void onResponse(int status, Map&lt;String, List&lt;String&gt;&gt; headers, ResponseBuffer body) {
+ *         try (InputStream is = body.getInputStream()) {
+ *             ...
+ *         }
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * @author Elex
+ */
+public abstract class HttpBufferedResponseHandler implements HttpResponseHandler<ResponseBuffer> {
+	private final ResponseLimits limits;
+
+	/**
+	 * Limited by {@link ResponseLimits#getDefault()}
+	 */
+	public HttpBufferedResponseHandler() {
+		this(ResponseLimits.getDefault());
+	}
+
+	/**
+	 * @param limits limits
+	 */
+	public HttpBufferedResponseHandler(@NotNull final ResponseLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Presized from Content-Length.
+	 */
+	@Override
+	public ResponseBuffer transform(final InputStream is) throws IOException {
+		return ResponseBuffer.read(is, ResponseStream.contentLengthOf(is), limits);
+	}
+
+	/**
+	 * Closes the buffer.
+	 */
+	@Override
+	public void release(final ResponseBuffer message) {
+		message.close();
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads the body into a {@link ByteBuffer}, flipped and ready to be read,
+ * presized from Content-Length.
+ * <p>
+ * With a {@link ByteBufferPool}, the buffer is borrowed from the pool, direct ones filled by channel reads.
+ * The buffer counts against the global memory budget of {@link ResponseLimits}, waiting for room while it is read,
+ * until it is {@link #recycle(ByteBuffer) recycled}, which {@link #release(ByteBuffer)} does once {@link #onResponse} returns.
+ * Don't keep the buffer beyond {@link #onResponse} then; to hand it over to another thread,
+ * override {@link #release(ByteBuffer)} to do nothing and call {@link #recycle(ByteBuffer)} later.
+ * <pre>
+ * request.send(new HttpByteBufferResponseHandler(ByteBufferPool.getDirect()) {
+ *     public void onResponse(int status, Map&lt;String, List&lt;String&gt;&gt; headers, ByteBuffer body) {
+ *         channel.write(body);
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * @author Elex
+ */
+public abstract class HttpByteBufferResponseHandler implements HttpResponseHandler<ByteBuffer> {
+	private static final int INITIAL_CAPACITY = 8192;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	@Nullable
+	private final ByteBufferPool pool;
+	private final long maxBytes;
+	private final long budgetWait;
+
+	/**
+	 * Heap buffers, limited by {@link ResponseLimits#getDefault()}
+	 */
+	public HttpByteBufferResponseHandler() {
+		this(null, ResponseLimits.getDefault());
+	}
+
+	/**
+	 * @param pool pool to borrow the buffers from, or null for new heap buffers
+	 */
+	public HttpByteBufferResponseHandler(@Nullable final ByteBufferPool pool) {
+		this(pool, ResponseLimits.getDefault());
+	}
+
+	/**
+	 * @param pool   pool to borrow the buffers from, or null for new heap buffers
+	 * @param limits limits, of which the max bytes and the budget wait apply
+	 */
+	public HttpByteBufferResponseHandler(@Nullable final ByteBufferPool pool, @NotNull final ResponseLimits limits) {
+		this.pool = pool;
+		this.maxBytes = limits.getMaxBytes() < 0 ? MAX_CAPACITY : Math.min(limits.getMaxBytes(), MAX_CAPACITY);
+		this.budgetWait = limits.getBudgetWait();
+	}
+
+	/**
+	 * Presized from Content-Length.
+	 */
+	@Override
+	public ByteBuffer transform(final InputStream is) throws IOException {
+		return read(is, ResponseStream.contentLengthOf(is));
+	}
+
+	/**
+	 * {@link #recycle(ByteBuffer) Recycles} the buffer.
+	 */
+	@Override
+	public void release(final ByteBuffer message) {
+		recycle(message);
+	}
+
+	/**
+	 * Returns the buffer to the pool, if any, and its bytes to the global memory budget.
+	 *
+	 * @param buffer buffer read by this handler, not to be used afterwards
+	 */
+	public final void recycle(@NotNull final ByteBuffer buffer) {
+		ResponseLimits.release(buffer.capacity());
+		if (null != pool) pool.release(buffer);
+	}
+
+	/**
+	 * @param is            body
+	 * @param contentLength expected length, or -1 if unknown
+	 * @return flipped buffer
+	 * @throws IOException on read failure, or if the body is larger than the limit
+	 */
+	protected ByteBuffer read(@NotNull final InputStream is, final long contentLength) throws IOException {
+		if (contentLength > maxBytes) throw tooLarge(contentLength);
+		ByteBuffer buffer = allocate(contentLength >= 0 ? (int) contentLength : (int) Math.min(INITIAL_CAPACITY, maxBytes));
+		try {
+			// heap buffers are read into directly, channels would copy through a temp array
+			final ReadableByteChannel channel = buffer.hasArray() ? null : Channels.newChannel(is);
+			while (true) {
+				while (buffer.hasRemaining()) {
+					final int n = null == channel ? readArray(is, buffer) : channel.read(buffer);
+					if (n < 0) return flip(buffer);
+				}
+				final int next = is.read();
+				if (next < 0) return flip(buffer);
+				if (contentLength >= 0) throw new IOException("Body longer than Content-Length: " + contentLength);
+				if (buffer.position() >= maxBytes) throw tooLarge(buffer.position() + 1L);
+				buffer = grow(buffer);
+				buffer.put((byte) next);
+			}
+		} catch (IOException | RuntimeException e) {
+			recycle(buffer);
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the capacity in the global memory budget
+	 */
+	private ByteBuffer allocate(final int size) throws IOException {
+		if (null == pool) {
+			ResponseLimits.reserveOrFail(size, budgetWait);
+			return ByteBuffer.allocate(size);
+		}
+		final ByteBuffer buffer = pool.acquire(size);
+		try {
+			ResponseLimits.reserveOrFail(buffer.capacity(), budgetWait);
+		} catch (IOException e) {
+			pool.release(buffer);
+			throw e;
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return larger buffer with the content of the full one, which goes back to the pool
+	 */
+	private ByteBuffer grow(final ByteBuffer buffer) throws IOException {
+		final int capacity = (int) Math.min(Math.max(buffer.position() * 2L, INITIAL_CAPACITY), maxBytes);
+		final ByteBuffer larger = allocate(capacity);
+		flip(buffer);
+		larger.put(buffer);
+		recycle(buffer);
+		return larger;
+	}
+
+	private static int readArray(final InputStream is, final ByteBuffer buffer) throws IOException {
+		final int n = is.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		if (n > 0) ((Buffer) buffer).position(buffer.position() + n);
+		return n;
+	}
+
+	private static ByteBuffer flip(final ByteBuffer buffer) {
+		// through Buffer, as ByteBuffer overrides it only since Java 9
+		((Buffer) buffer).flip();
+		return buffer;
+	}
+
+	private IOException tooLarge(final long length) {
+		return new IOException("Response body too large: " + length + " > " + maxBytes);
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * End to end deadline of a request, backed by the shared {@link TimerWheel}.
+ * <p>
+ * Connect and read timeouts are clamped to the time left. When the deadline passes
+ * before the response body is read, the connection is disconnected, which closes the socket
+ * and fails any blocked connect, write or wait for the status line.
+ * While reading the body, disconnecting would block on the stream being read, and the JDK applies
+ * the read timeout only when connecting. So every read checks the deadline, and a read that
+ * could outlast it, one that finds nothing buffered within the read timeout of the deadline,
+ * runs on a reader thread and is given up on at the deadline. The connection is then
+ * closed on a thread of its own, once the abandoned read returns.
+ * Host name resolution can not be interrupted; it is checked right after connecting.
+ *
+ * @author Elex
+ */
+final class HttpDeadline {
+	private static final String EXCEEDED = "Deadline exceeded: ";
+	/**
+	 * Disconnecting may block for a moment, so it is kept off the timer thread.
+	 * A few threads are enough; when many requests expire at once, the rest wait in the queue.
+	 */
+	private static final Executor DISCONNECTOR = disconnector(2);
+	/**
+	 * Runs the reads that could outlast the deadline. A stalled read holds its thread
+	 * up to the read timeout, so when all of them are busy the read runs on the caller instead.
+	 */
+	private static final Executor READERS = readers(64);
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private long timeout = 0;
+	private long deadline;
+	@Nullable
+	private TimerWheel.Timeout timer;
+	private volatile boolean reading = false;
+	/**
+	 * A read given up on at the deadline, that may still be blocked
+	 */
+	private volatile boolean abandoned = false;
+
+	/**
+	 * @param timeout milliseconds, 0 for none
+	 */
+	void setTimeout(final long timeout) {
+		if (timeout < 0) throw new IllegalArgumentException("timeout: " + timeout);
+		this.timeout = timeout;
+	}
+
+	long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Start counting down, and clamp the timeouts of the connection.
+	 *
+	 * @param connection connection, not connected yet
+	 */
+	void start(@NotNull final HttpURLConnection connection) {
+		if (timeout <= 0) return;
+		deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		connection.setConnectTimeout(clamp(connection.getConnectTimeout()));
+		connection.setReadTimeout(clamp(connection.getReadTimeout()));
+		timer = TimerWheel.getDefault().schedule(timeout, TimeUnit.MILLISECONDS, () -> {
+			if (!reading) DISCONNECTOR.execute(connection::disconnect);
+		});
+	}
+
+	/**
+	 * @throws SocketTimeoutException if the deadline has passed
+	 */
+	void check() throws SocketTimeoutException {
+		if (isExpired()) throw exceeded(null);
+	}
+
+	boolean isExpired() {
+		return null != timer && (timer.isExpired() || System.nanoTime() - deadline >= 0);
+	}
+
+	/**
+	 * @param connection connection, connected
+	 * @param is         response body
+	 * @return stream that fails once the deadline has passed
+	 */
+	InputStream guard(@NotNull final HttpURLConnection connection, @NotNull final InputStream is) {
+		if (timeout <= 0) return is;
+		reading = true;
+		final long readTimeout = TimeUnit.MILLISECONDS.toNanos(connection.getReadTimeout());
+		return new FilterInputStream(is) {
+			private byte[] buffer;
+
+			@Override
+			public int read() throws IOException {
+				check();
+				if (!blocksPastDeadline()) return super.read();
+				final int n = readBeforeDeadline(1);
+				return n < 0 ? -1 : buffer[0] & 0xff;
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len) throws IOException {
+				check();
+				if (len == 0 || !blocksPastDeadline()) return super.read(b, off, len);
+				final int n = readBeforeDeadline(len);
+				if (n > 0) System.arraycopy(buffer, 0, b, off, n);
+				return n;
+			}
+
+			@Override
+			public long skip(final long n) throws IOException {
+				check();
+				if (n <= 0 || !blocksPastDeadline()) return super.skip(n);
+				return Math.max(0, readBeforeDeadline((int) Math.min(n, READ_BUFFER_SIZE)));
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (abandoned) {
+					DISCONNECTOR.execute(() -> {
+						try {
+							in.close();
+						} catch (IOException ignore) {
+						}
+					});
+				} else {
+					super.close();
+				}
+			}
+
+			private boolean blocksPastDeadline() throws IOException {
+				if (readTimeout > 0 && deadline - System.nanoTime() > readTimeout) return false;
+				return in.available() <= 0;
+			}
+
+			/**
+			 * Read into the buffer of this stream, so the caller's array is not written to after giving up.
+			 */
+			private int readBeforeDeadline(final int len) throws IOException {
+				if (null == buffer) buffer = new byte[READ_BUFFER_SIZE];
+				final byte[] target = buffer;
+				final int length = Math.min(len, target.length);
+				final FutureTask<Integer> task = new FutureTask<>(() -> in.read(target, 0, length));
+				READERS.execute(task);
+				try {
+					return task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				} catch (TimeoutException e) {
+					abandoned = true;
+					throw exceeded(null);
+				} catch (InterruptedException e) {
+					abandoned = true;
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof IOException) throw (IOException) cause;
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof Error) throw (Error) cause;
+					throw new IOException(cause);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Disconnect, off the calling thread if a read was given up on and may still hold the stream.
+	 *
+	 * @param connection connection
+	 */
+	void disconnect(@NotNull final HttpURLConnection connection) {
+		if (abandoned) {
+			DISCONNECTOR.execute(connection::disconnect);
+		} else {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * @param e failure
+	 * @return SocketTimeoutException caused by e if the deadline has passed, otherwise e
+	 */
+	Throwable translate(@NotNull final Throwable e) {
+		if (!isExpired() || e instanceof SocketTimeoutException && String.valueOf(e.getMessage()).startsWith(EXCEEDED)) {
+			return e;
+		}
+		return exceeded(e);
+	}
+
+	void cancel() {
+		if (null != timer) timer.cancel();
+	}
+
+	private SocketTimeoutException exceeded(@Nullable final Throwable cause) {
+		final SocketTimeoutException e = new SocketTimeoutException(EXCEEDED + timeout + "ms");
+		if (null != cause) e.initCause(cause);
+		return e;
+	}
+
+	private int clamp(final int current) {
+		final long left = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+		return (int) (current > 0 ? Math.min(current, left) : Math.min(Integer.MAX_VALUE, left));
+	}
+
+	private static Executor readers(final int threads) {
+		return new ThreadPoolExecutor(0, threads, 10, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+			final Thread thread = new Thread(r, "harpy-deadline-read");
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private static Executor disconnector(final int threads) {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			final Thread thread = new Thread(r, "harpy-deadline");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
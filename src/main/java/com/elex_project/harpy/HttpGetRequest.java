@@ -33,6 +33,7 @@
 package com.elex_project.harpy;
 
 import java.io.IOException;
+import java.net.URL;
 
 public class HttpGetRequest<T> extends HttpRequest<T>{
 
@@ -44,6 +45,10 @@ public class HttpGetRequest<T> extends HttpRequest<T>{
 		super(uri);
 	}
 
+	public HttpGetRequest(final URL url) throws IOException {
+		super(url);
+	}
+
 	@Override
 	protected void init() throws IOException {
 		super.init();
@@ -51,13 +56,4 @@ public class HttpGetRequest<T> extends HttpRequest<T>{
 		this.connection.setDoInput(true);
 		this.connection.setDoOutput(true);
 	}
-
-	@Override
-	public void send(final HttpResponseHandler<T> handler) throws IOException {
-		connection.connect();
-
-		processResponse(handler);
-
-		if (closeConnection) connection.disconnect();
-	}
 }
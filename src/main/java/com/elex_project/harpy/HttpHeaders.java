@@ -0,0 +1,346 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.HttpURLConnection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Response headers, in parallel arrays of names and raw values.
+ * <p>
+ * Well-known names are replaced with shared constants and found in O(1); others are compared
+ * case-insensitively. Comma separated values are only split by {@link #getTokens(String)}.
+ * As a {@code Map}, it is a read-only, case-insensitive view like {@link HttpURLConnection#getHeaderFields()},
+ * with the status line under the null key.
+ *
+ * @author Elex
+ */
+public final class HttpHeaders extends AbstractMap<String, List<String>> {
+	private static final String[] KNOWN = {
+			"Accept-Ranges", "Access-Control-Allow-Origin", "Age", "Allow", "Cache-Control", "Connection",
+			"Content-Disposition", "Content-Encoding", "Content-Language", "Content-Length", "Content-Location",
+			"Content-Range", "Content-Type", "Date", "ETag", "Expires", "Keep-Alive", "Last-Modified", "Link",
+			"Location", "Pragma", "Proxy-Authenticate", "Retry-After", "Server", "Set-Cookie",
+			"Strict-Transport-Security", "Trailer", "Transfer-Encoding", "Vary", "Via", "WWW-Authenticate",
+			"X-Content-Type-Options", "X-Frame-Options", "X-Request-Id"};
+	/**
+	 * Open addressing table of indices into KNOWN, plus one
+	 */
+	private static final byte[] TABLE = new byte[128];
+
+	static {
+		for (int i = 0; i < KNOWN.length; i++) {
+			int slot = hash(KNOWN[i]) & (TABLE.length - 1);
+			while (TABLE[slot] != 0) slot = (slot + 1) & (TABLE.length - 1);
+			TABLE[slot] = (byte) (i + 1);
+		}
+	}
+
+	@Nullable
+	private String statusLine;
+	private String[] names;
+	private String[] values;
+	private byte[] known;
+	private int size = 0;
+	/**
+	 * index of the first value of each well-known name, plus one
+	 */
+	private final int[] first = new int[KNOWN.length];
+	@Nullable
+	private Set<Entry<String, List<String>>> entries;
+
+	HttpHeaders() {
+		this(16);
+	}
+
+	HttpHeaders(final int capacity) {
+		names = new String[capacity];
+		values = new String[capacity];
+		known = new byte[capacity];
+	}
+
+	/**
+	 * Read the headers of a connection, without the map of lists of {@link HttpURLConnection#getHeaderFields()}.
+	 *
+	 * @param connection connection with a response
+	 * @return headers
+	 */
+	public static HttpHeaders of(@NotNull final HttpURLConnection connection) {
+		final HttpHeaders headers = new HttpHeaders();
+		for (int i = 0; ; i++) {
+			final String value = connection.getHeaderField(i);
+			if (null == value) break;
+			final String name = connection.getHeaderFieldKey(i);
+			if (null == name) {
+				if (i == 0) headers.statusLine = value;
+			} else {
+				headers.add(name, value);
+			}
+		}
+		return headers;
+	}
+
+	void add(@NotNull final String name, @NotNull final String value) {
+		if (size == names.length) {
+			final int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			values = Arrays.copyOf(values, capacity);
+			known = Arrays.copyOf(known, capacity);
+		}
+		final int id = known(name);
+		names[size] = id < 0 ? name : KNOWN[id];
+		values[size] = value;
+		known[size] = (byte) (id + 1);
+		if (id >= 0 && first[id] == 0) first[id] = size + 1;
+		size++;
+		entries = null;
+	}
+
+	/**
+	 * @return status line, like HTTP/1.1 200 OK
+	 */
+	@Nullable
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	void setStatusLine(@Nullable final String statusLine) {
+		this.statusLine = statusLine;
+		entries = null;
+	}
+
+	/**
+	 * @return number of header lines, the status line excluded
+	 */
+	public int count() {
+		return size;
+	}
+
+	public String getName(final int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+		return names[index];
+	}
+
+	public String getValue(final int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+		return values[index];
+	}
+
+	/**
+	 * @param name case-insensitive
+	 * @return value of the first line with the name, or null
+	 */
+	@Nullable
+	public String getFirst(@NotNull final String name) {
+		final int index = indexOf(name, 0);
+		return index < 0 ? null : values[index];
+	}
+
+	/**
+	 * @param name case-insensitive
+	 * @return raw values of the lines with the name
+	 */
+	public List<String> getValues(@NotNull final String name) {
+		int index = indexOf(name, 0);
+		if (index < 0) return Collections.emptyList();
+		final int next = indexOf(name, index + 1);
+		if (next < 0) return Collections.singletonList(values[index]);
+		final List<String> list = new ArrayList<>(4);
+		list.add(values[index]);
+		for (index = next; index >= 0; index = indexOf(name, index + 1)) {
+			list.add(values[index]);
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Values split at the commas outside of quoted strings, like Cache-Control or Vary.
+	 * Do not use for Set-Cookie, Expires or Date, whose values contain commas.
+	 *
+	 * @param name case-insensitive
+	 * @return trimmed elements of all the lines with the name
+	 */
+	public List<String> getTokens(@NotNull final String name) {
+		final List<String> tokens = new ArrayList<>();
+		for (int index = indexOf(name, 0); index >= 0; index = indexOf(name, index + 1)) {
+			final String value = values[index];
+			boolean quoted = false;
+			int start = 0;
+			for (int i = 0; i < value.length(); i++) {
+				final char c = value.charAt(i);
+				if (c == '"') {
+					quoted = !quoted;
+				} else if (c == '\\' && quoted) {
+					i++;
+				} else if (c == ',' && !quoted) {
+					addToken(tokens, value, start, i);
+					start = i + 1;
+				}
+			}
+			addToken(tokens, value, start, value.length());
+		}
+		return tokens;
+	}
+
+	/**
+	 * @return Content-Length, or -1
+	 */
+	public long getContentLength() {
+		final String value = getFirst("Content-Length");
+		if (null == value) return -1;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	@Nullable
+	public String getContentType() {
+		return getFirst("Content-Type");
+	}
+
+	@Override
+	public List<String> get(final Object key) {
+		if (null == key) return null == statusLine ? null : Collections.singletonList(statusLine);
+		if (!(key instanceof String)) return null;
+		final List<String> list = getValues((String) key);
+		return list.isEmpty() ? null : list;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		if (null == key) return null != statusLine;
+		return key instanceof String && indexOf((String) key, 0) >= 0;
+	}
+
+	@Override
+	public Set<Entry<String, List<String>>> entrySet() {
+		Set<Entry<String, List<String>>> set = entries;
+		if (null == set) entries = set = new EntrySet();
+		return set;
+	}
+
+	private int indexOf(final String name, final int from) {
+		final int id = known(name);
+		if (id >= 0) {
+			if (from == 0) return first[id] - 1;
+			for (int i = from; i < size; i++) {
+				if (known[i] == id + 1) return i;
+			}
+			return -1;
+		}
+		for (int i = from; i < size; i++) {
+			if (known[i] == 0 && names[i].equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index into KNOWN, or -1
+	 */
+	private static int known(final String name) {
+		int slot = hash(name) & (TABLE.length - 1);
+		int id;
+		while ((id = TABLE[slot]) != 0) {
+			if (KNOWN[id - 1].equalsIgnoreCase(name)) return id - 1;
+			slot = (slot + 1) & (TABLE.length - 1);
+		}
+		return -1;
+	}
+
+	private static int hash(final String name) {
+		int h = name.length();
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			h = 31 * h + ((c >= 'A' && c <= 'Z') ? c + 32 : c);
+		}
+		return h ^ (h >>> 7);
+	}
+
+	private static void addToken(final List<String> tokens, final String value, int start, int end) {
+		while (start < end && value.charAt(start) <= ' ') start++;
+		while (end > start && value.charAt(end - 1) <= ' ') end--;
+		if (start < end) tokens.add(value.substring(start, end));
+	}
+
+	/**
+	 * Distinct names, in the order of appearance, after the status line
+	 */
+	private final class EntrySet extends AbstractSet<Entry<String, List<String>>> {
+		private final List<String> keys = new ArrayList<>();
+
+		EntrySet() {
+			if (null != statusLine) keys.add(null);
+			for (int i = 0; i < size; i++) {
+				if (indexOf(names[i], 0) == i) keys.add(names[i]);
+			}
+		}
+
+		@Override
+		public Iterator<Entry<String, List<String>>> iterator() {
+			return new Iterator<Entry<String, List<String>>>() {
+				private int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					return index < keys.size();
+				}
+
+				@Override
+				public Entry<String, List<String>> next() {
+					if (!hasNext()) throw new NoSuchElementException();
+					final String key = keys.get(index++);
+					return new SimpleImmutableEntry<>(key, get(key));
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return keys.size();
+		}
+	}
+}
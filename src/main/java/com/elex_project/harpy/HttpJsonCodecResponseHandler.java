@@ -0,0 +1,73 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Binds the body to a type with a {@link JsonCodec}, as it is read.
+ * <pre>
+ * request.send(new HttpJsonCodecResponseHandler&lt;User&gt;(User.class) {
+ *     ...
+ * });
+ * </pre>
+ *
+ * @param <T> type of the body
+ * @author Elex
+ * @see JsonSerializable
+ */
+public abstract class HttpJsonCodecResponseHandler<T> implements HttpResponseHandler<T> {
+	private final JsonCodec<T> codec;
+
+	/**
+	 * @param type class marked with {@link JsonSerializable}
+	 */
+	public HttpJsonCodecResponseHandler(@NotNull final Class<T> type) {
+		this(JsonCodecs.of(type));
+	}
+
+	/**
+	 * @param codec codec of the body
+	 */
+	public HttpJsonCodecResponseHandler(@NotNull final JsonCodec<T> codec) {
+		this.codec = codec;
+	}
+
+	@Override
+	public T transform(final InputStream is) throws IOException {
+		return codec.read(new JsonReader(is));
+	}
+}
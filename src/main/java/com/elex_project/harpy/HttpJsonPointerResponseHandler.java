@@ -0,0 +1,88 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Picks values out of a JSON body by JSON Pointer, skipping the rest without building it.
+ * Top-level arrays are fine too, like "/0/id".
+ * <pre>
+ * request.send(new HttpJsonPointerResponseHandler("/data/total", "/data/items/0/name") {
+ *     public void onResponse(int status, Map&lt;String, List&lt;String&gt;&gt; headers, Map&lt;String, Object&gt; values) {
+ *         Object total = values.get("/data/total");
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * @author Elex
+ * @see JsonReader#readPointers(Collection)
+ */
+public abstract class HttpJsonPointerResponseHandler implements HttpResponseHandler<Map<String, Object>> {
+	private final Collection<String> pointers;
+
+	/**
+	 * @param pointers JSON Pointers (RFC 6901)
+	 */
+	public HttpJsonPointerResponseHandler(@NotNull final String... pointers) {
+		this(Arrays.asList(pointers));
+	}
+
+	/**
+	 * @param pointers JSON Pointers (RFC 6901)
+	 */
+	public HttpJsonPointerResponseHandler(@NotNull final Collection<String> pointers) {
+		for (String pointer : pointers) {
+			if (!pointer.isEmpty() && pointer.charAt(0) != '/') {
+				throw new IllegalArgumentException("Not a JSON Pointer: " + pointer);
+			}
+		}
+		this.pointers = new ArrayList<>(pointers);
+	}
+
+	/**
+	 * @return values by pointer, for the pointers found in the body
+	 */
+	@Override
+	public Map<String, Object> transform(final InputStream is) throws IOException {
+		return new JsonReader(is).readPointers(pointers);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses the body with a {@link JsonReader}, as it arrives, instead of reading it into a string first.
+ * <pre>
+ * request.send(new HttpJsonReaderResponseHandler&lt;Long&gt;() {
+ *     protected Long read(JsonReader reader) throws IOException {
+ *         long total = 0;
+ *         reader.beginArray();
+ *         while (reader.hasNext()) total += reader.nextLong();
+ *         reader.endArray();
+ *         return total;
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * @param <T> type of the result
+ * @author Elex
+ */
+public abstract class HttpJsonReaderResponseHandler<T> implements HttpResponseHandler<T> {
+
+	/**
+	 * @param reader reader over the body
+	 * @return result
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	protected abstract T read(JsonReader reader) throws IOException;
+
+	@Override
+	public T transform(final InputStream is) throws IOException {
+		return read(new JsonReader(is));
+	}
+}
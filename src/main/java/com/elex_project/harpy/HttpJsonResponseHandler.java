@@ -32,7 +32,6 @@
 
 package com.elex_project.harpy;
 
-import com.elex_project.abraxas.IOz;
 import org.json.JSONObject;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -45,9 +44,24 @@ import java.io.InputStream;
  * @author Elex
  */
 public abstract class HttpJsonResponseHandler implements HttpResponseHandler<JSONObject> {
+	private final ResponseLimits limits;
+
+	/**
+	 * Limited by {@link ResponseLimits#getDefault()}
+	 */
+	public HttpJsonResponseHandler() {
+		this(ResponseLimits.getDefault());
+	}
+
+	/**
+	 * @param limits limits, of which {@link ResponseLimits#getMaxBytes()} caps the body
+	 */
+	public HttpJsonResponseHandler(final ResponseLimits limits) {
+		this.limits = limits;
+	}
 
 	@Override
 	public JSONObject transform(final InputStream is) throws IOException {
-		return new JSONObject(IOz.readStringFrom(is));
+		return new JSONObject(BodyReader.readString(is, ResponseStream.headersOf(is), limits));
 	}
 }
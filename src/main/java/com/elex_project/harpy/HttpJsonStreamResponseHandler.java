@@ -0,0 +1,146 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Hands each element of a JSON array, or each value of NDJSON, to {@link #onElement(Object)} as soon as it is parsed.
+ * Memory is bounded by the size of an element, times the window in parallel mode.
+ * The result is the number of elements.
+ * <pre>
+ * request.send(new HttpJsonStreamResponseHandler&lt;Object&gt;(JsonElements.VALUE) {
+ *     protected void onElement(Object element) {
+ *         ...
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * @param <T> type of an element
+ * @author Elex
+ * @see JsonElements
+ */
+public abstract class HttpJsonStreamResponseHandler<T> implements HttpResponseHandler<Long> {
+	public enum Format {
+		/**
+		 * NDJSON if Content-Type says so, like application/x-ndjson or application/jsonl, an array otherwise
+		 */
+		AUTO,
+		/**
+		 * elements of an array
+		 */
+		ARRAY,
+		/**
+		 * values one after another, newline delimited or not
+		 */
+		NDJSON
+	}
+
+	private final JsonElements.ElementReader<T> elementReader;
+	private final Format format;
+	@Nullable
+	private final String pointer;
+	@Nullable
+	private final ForkJoinPool pool;
+
+	/**
+	 * Format from Content-Type, parsed on the reading thread
+	 *
+	 * @param elementReader reads an element
+	 */
+	public HttpJsonStreamResponseHandler(@NotNull final JsonElements.ElementReader<T> elementReader) {
+		this(elementReader, Format.AUTO, null, null);
+	}
+
+	/**
+	 * @param elementReader reads an element
+	 * @param format        format of the body
+	 * @param pointer       JSON Pointer of the array in the body, like "/data/items", or null for the body itself
+	 * @param pool          pool to parse the elements on, in order, or null to parse on the reading thread
+	 */
+	public HttpJsonStreamResponseHandler(@NotNull final JsonElements.ElementReader<T> elementReader, @NotNull final Format format,
+	                                     @Nullable final String pointer, @Nullable final ForkJoinPool pool) {
+		this.elementReader = elementReader;
+		this.format = format;
+		this.pointer = pointer;
+		this.pool = pool;
+	}
+
+	/**
+	 * Called on the reading thread, in order
+	 *
+	 * @param element element
+	 * @throws IOException to stop
+	 */
+	protected abstract void onElement(T element) throws IOException;
+
+	@Override
+	public Long transform(final InputStream is) throws IOException {
+		if (format != Format.AUTO) return read(is, format == Format.NDJSON);
+		final HttpHeaders headers = ResponseStream.headersOf(is);
+		final String contentType = null == headers ? null : headers.getContentType();
+		return read(is, null != contentType && (contentType.contains("ndjson") || contentType.contains("jsonl")));
+	}
+
+	private long read(final InputStream is, final boolean lines) throws IOException {
+		final JsonReader reader = new JsonReader(is);
+		final JsonElements<T> elements;
+		if (lines) {
+			elements = JsonElements.lines(reader, elementReader);
+		} else if (null != pointer) {
+			elements = JsonElements.array(reader, pointer, elementReader);
+		} else {
+			elements = JsonElements.array(reader, elementReader);
+		}
+		if (null != pool) elements.parallel(pool, pool.getParallelism() * 2);
+		long count = 0;
+		try {
+			while (elements.hasNext()) {
+				onElement(elements.next());
+				count++;
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			elements.close();
+		}
+		return count;
+	}
+}
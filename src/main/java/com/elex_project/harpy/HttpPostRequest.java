@@ -32,19 +32,30 @@
 
 package com.elex_project.harpy;
 
-import com.elex_project.abraxas.IOz;
 import com.elex_project.abraxas.Stringz;
+import org.json.JSONObject;
 import org.w3c.dom.Document;
 
 import javax.xml.transform.TransformerException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
 public class HttpPostRequest<T> extends HttpRequest<T>{
+	private static final int CHUNK_SIZE = 8192;
 	private Map<String, String> arguments;
 	private String body;
+	private RequestBody requestBody;
+	private byte[] out;
+	private long expectContinue = -1;
+	/**
+	 * Expect: 100-continue has been sent with this request
+	 */
+	private boolean expectSent = false;
 	public HttpPostRequest(final Uri uri) throws IOException {
 		super(uri);
 	}
@@ -53,6 +64,10 @@ public class HttpPostRequest<T> extends HttpRequest<T>{
 		super(uri);
 	}
 
+	public HttpPostRequest(final URL url) throws IOException {
+		super(url);
+	}
+
 	@Override
 	protected void init() throws IOException {
 		super.init();
@@ -68,6 +83,7 @@ public class HttpPostRequest<T> extends HttpRequest<T>{
 	 * @param content
 	 */
 	public void setBody(String content, String contentType) {
+		this.requestBody = null;
 		this.body = content;
 		setContentType(contentType);
 	}
@@ -80,22 +96,83 @@ public class HttpPostRequest<T> extends HttpRequest<T>{
 	 */
 	public void putParameter(String k, String v) {
 		this.body = null;
+		this.requestBody = null;
 		this.arguments.put(k, v);
 	}
 	/**
-	 * application/xml
+	 * application/xml, serialized now and sent with a Content-Length.
+	 * To send it chunked as it is serialized, use {@link #setBody(RequestBody)} with {@link RequestBody#xml(org.w3c.dom.Node)}.
 	 *
 	 * @param xml
-	 * @throws TransformerException
+	 * @throws TransformerException if failed to serialize the document
 	 */
 	public void setBody(Document xml) throws TransformerException {
-		this.body = IOz.convertXMLToString(xml);
-		setContentType(Mime.XML.getMimeType()+"; charset=UTF-8");
+		setBody(RequestBody.of(Xmlz.toBytes(xml), Mime.XML.getMimeType() + "; charset=UTF-8"));
+	}
+
+	/**
+	 * 바디가 설정된 때에는 파라미터는 사용하지 않는다.
+	 * 길이를 모르는 바디는 chunked로 보낸다.
+	 *
+	 * @param body body, written straight to the connection
+	 */
+	public void setBody(RequestBody body) {
+		this.body = null;
+		this.requestBody = body;
+		if (null != body.getContentType()) setContentType(body.getContentType());
+	}
+
+	/**
+	 * application/json, written by the codec as it is sent
+	 *
+	 * @param value value
+	 * @param codec codec, like {@link JsonCodecs#of(Class)}
+	 * @param <V>   type of the value
+	 */
+	public <V> void setBody(V value, JsonCodec<V> codec) {
+		setBody(RequestBody.json(value, codec));
+	}
+
+	/**
+	 * application/json, encoded as it is sent
+	 *
+	 * @param json
+	 */
+	public void setBody(JSONObject json) {
+		setBody(RequestBody.json(json));
+	}
+
+	/**
+	 * Send Expect: 100-continue, and the body only after the server accepted the request headers.
+	 * If the server answers with a final status, like 401, 413 or 3xx, the body is never sent
+	 * and the handler gets the status with a null message.
+	 * <p>
+	 * The wait for the answer lasts the request timeout, or 5 seconds without one.
+	 * The body is sent anyway after 5 seconds, but a request timeout fails the request,
+	 * so use this with servers that support it.
+	 *
+	 * @param threshold minimum size of the body in bytes, 0 for every body, -1 for never (default)
+	 */
+	public void setExpectContinue(long threshold) {
+		this.expectContinue = threshold;
 	}
 
 	@Override
-	public void send(final HttpResponseHandler<T> handler) throws IOException {
-		byte[] out = null;
+	protected void prepare() throws IOException {
+		expectSent = false;
+		if (null != requestBody) {
+			final long length = requestBody.getContentLength();
+			if (length >= 0) {
+				connection.setFixedLengthStreamingMode(length);
+			} else {
+				connection.setChunkedStreamingMode(CHUNK_SIZE);
+			}
+			// a body of unknown length may be a large one
+			if (expectContinue >= 0 && (length < 0 || (length > 0 && length >= expectContinue))) {
+				expectContinue();
+			}
+			return;
+		}
 		if (null == body) {
 			out = Stringz.toBytes(Stringz.join("&","=", arguments));
 			setContentType(Mime.URL_ENCODED.getMimeType()+"; charset=UTF-8");
@@ -106,19 +183,65 @@ public class HttpPostRequest<T> extends HttpRequest<T>{
 		}
 
 		connection.setFixedLengthStreamingMode(out == null ? 0 : out.length);
+		if (expectContinue >= 0 && null != out && out.length > 0 && out.length >= expectContinue) {
+			expectContinue();
+		}
+	}
 
-		connection.connect();
+	private void expectContinue() {
+		setRequestHeaderProperty("Expect", "100-continue");
+		expectSent = true;
+	}
 
-		OutputStream os = connection.getOutputStream();
+	@Override
+	protected long writeBody() throws IOException {
+		final OutputStream os;
+		try {
+			os = connection.getOutputStream();
+		} catch (ProtocolException e) {
+			// "Server rejected operation", the final status is already there
+			if (!expectSent) throw e;
+			bodyRejected = true;
+			// the connection is closed by now; reading the headers would otherwise send the request again
+			connection.setDoInput(false);
+			return 0;
+		}
+		if (null != requestBody) {
+			final CountingOutputStream cos = new CountingOutputStream(os);
+			requestBody.writeTo(cos);
+			// ends the chunked stream, or checks the fixed length
+			os.close();
+			return cos.count;
+		}
 		if (null != out) os.write(out);
 		os.flush();
 		//os.close();
 
-		processResponse(handler);
+		return out == null ? 0 : out.length;
+	}
 
-		//os.close();
-		//connection.getInputStream().close();
+	private static final class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		private CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
 
-		if (closeConnection) connection.disconnect();
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void close() {
+			// the request closes the stream when the body is done
+		}
 	}
 }
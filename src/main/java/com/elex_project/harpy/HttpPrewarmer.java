@@ -0,0 +1,284 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens connections before they are needed, so that the first requests after
+ * a deploy or a scale-out do not pay for DNS, TCP connect and TLS handshakes.
+ * <p>
+ * Connections are parked in the keep-alive cache of HttpURLConnection,
+ * which keeps at most {@code http.maxConnections} (5 by default) idle connections per host.
+ * Https connections are only reused with the same socket factory,
+ * so set {@link HttpRequest#setDefaultTlsContext(TlsContext)} before prewarming.
+ * <p>
+ * Origins of the sent requests are recorded, so that they can be saved
+ * and prewarmed on the next start.
+ * <pre>
+ * HttpPrewarmer.prewarm(Paths.get("origins.txt"), 4);
+ * Runtime.getRuntime().addShutdownHook(new Thread(() -&gt; HttpPrewarmer.save(Paths.get("origins.txt"))));
+ * </pre>
+ *
+ * @author Elex
+ */
+@Slf4j
+public final class HttpPrewarmer {
+	private static final int MAX_ORIGINS = 1024;
+	private static final int DEFAULT_TIMEOUT = 10000;
+	/**
+	 * also the most connections warmed per origin at once
+	 */
+	private static final int MAX_THREADS = 8;
+	private static final ExecutorService EXECUTOR = executor(MAX_THREADS);
+	/**
+	 * authority to protocol
+	 */
+	private static final Map<String, String> ORIGINS = new ConcurrentHashMap<>();
+	private static volatile boolean recording = true;
+
+	private HttpPrewarmer() {
+	}
+
+	/**
+	 * Resolve the host, then open and handshake https connections to it.
+	 *
+	 * @param host  host
+	 * @param port  port
+	 * @param count number of connections
+	 * @return number of connections warmed
+	 */
+	public static int prewarm(final @NotNull String host, final int port, final int count) {
+		return prewarm(Uri.builder().scheme("https").host(host).port(port).build(), count);
+	}
+
+	/**
+	 * Resolve the host, then open connections to it and send a HEAD request on each.
+	 *
+	 * @param uri   origin, with the path of a cheap resource if '/' is not
+	 * @param count number of connections, up to 8
+	 * @return number of connections warmed
+	 */
+	public static int prewarm(final @NotNull Uri uri, final int count) {
+		return await(warm(uri.toString(), count, DEFAULT_TIMEOUT));
+	}
+
+	/**
+	 * Prewarm the origins saved with {@link #save(Path)}
+	 *
+	 * @param file  origins, one per line
+	 * @param count number of connections per origin, up to 8
+	 * @return number of connections warmed
+	 * @throws IOException if failed to read the file
+	 */
+	public static int prewarm(final @NotNull Path file, final int count) throws IOException {
+		final List<String> origins = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while (null != (line = reader.readLine())) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) origins.add(line);
+			}
+		}
+		CompletableFuture<Integer> warmed = CompletableFuture.completedFuture(0);
+		for (final String origin : origins) {
+			warmed = warmed.thenCombine(warm(origin, count, DEFAULT_TIMEOUT), Integer::sum);
+		}
+		return await(warmed);
+	}
+
+	/**
+	 * Save the recorded origins
+	 *
+	 * @param file file
+	 * @throws IOException if failed to write the file
+	 */
+	public static void save(final @NotNull Path file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (String origin : getRecordedOrigins()) {
+				writer.write(origin);
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * @return origins of the requests sent, like https://example.com:443
+	 */
+	public static List<String> getRecordedOrigins() {
+		final TreeSet<String> origins = new TreeSet<>();
+		for (Map.Entry<String, String> entry : ORIGINS.entrySet()) {
+			origins.add(entry.getValue() + "://" + entry.getKey());
+		}
+		return new ArrayList<>(origins);
+	}
+
+	/**
+	 * @param record record the origins of the requests, true by default
+	 */
+	public static void setRecording(final boolean record) {
+		recording = record;
+	}
+
+	static void record(final @NotNull URL url) {
+		if (!recording) return;
+		final String authority = url.getAuthority();
+		if (null == authority || ORIGINS.containsKey(authority) || ORIGINS.size() >= MAX_ORIGINS) return;
+		ORIGINS.put(authority, url.getProtocol());
+	}
+
+	/**
+	 * Resolve the host on the executor, then queue the connections.
+	 * The connections of an origin are queued together, and there are never more of them than threads,
+	 * so they all get a thread before those of the next origin and the barrier can not starve.
+	 */
+	private static CompletableFuture<Integer> warm(final String uri, final int count, final int timeout) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				InetAddress.getAllByName(new URL(uri).getHost());
+				return true;
+			} catch (IOException e) {
+				log.warn("Failed to resolve {}", uri, e);
+				return false;
+			}
+		}, EXECUTOR).thenCompose(resolved -> {
+			if (!resolved || count < 1) return CompletableFuture.completedFuture(0);
+			final int n = Math.min(count, MAX_THREADS);
+			// Hold every connection until all are connected, otherwise a connection returned early
+			// to the keep-alive cache would be taken by the next request instead of opening a new one.
+			final CyclicBarrier connected = new CyclicBarrier(n);
+			final AtomicInteger warmed = new AtomicInteger();
+			final CompletableFuture<?>[] connections = new CompletableFuture<?>[n];
+			synchronized (EXECUTOR) {
+				for (int i = 0; i < n; i++) {
+					connections[i] = CompletableFuture.runAsync(() -> {
+						try {
+							final Request request = new Request(uri, connected, timeout);
+							request.send(null);
+							if (request.status > 0) warmed.incrementAndGet();
+						} catch (IOException e) {
+							connected.reset();
+							log.warn("Failed to prewarm {}", uri, e);
+						}
+					}, EXECUTOR);
+				}
+			}
+			return CompletableFuture.allOf(connections).thenApply(v -> {
+				HttpStatistics.prewarmed(warmed.get());
+				return warmed.get();
+			});
+		});
+	}
+
+	private static int await(final CompletableFuture<Integer> warmed) {
+		try {
+			return warmed.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.warn("Failed to prewarm", e.getCause());
+		}
+		return 0;
+	}
+
+	private static ExecutorService executor(final int threads) {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			final Thread thread = new Thread(r, "harpy-prewarm");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * HEAD request, waits for the others after connecting
+	 */
+	private static final class Request extends HttpHeadRequest<Void> {
+		private final CyclicBarrier connected;
+		private final int timeout;
+		private int status = -1;
+
+		Request(final String uri, final CyclicBarrier connected, final int timeout) throws IOException {
+			super(uri);
+			this.connected = connected;
+			this.timeout = timeout;
+			setConnectTimeout(timeout);
+			setRequestTimeout(timeout);
+		}
+
+		@Override
+		protected long writeBody() throws IOException {
+			try {
+				connected.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (BrokenBarrierException | TimeoutException ignore) {
+				// others failed, go on with this one
+			}
+			return 0;
+		}
+
+		@Override
+		protected void processResponse(@Nullable final HttpResponseHandler<Void> handler) throws IOException {
+			status = connection.getResponseCode();
+		}
+	}
+}
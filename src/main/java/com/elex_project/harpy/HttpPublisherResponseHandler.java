@@ -0,0 +1,115 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.reactivestreams.Publisher;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the response body over as a Reactive Streams publisher of byte buffers.
+ * <p>
+ * The body is read as the subscriber requests it, after {@link HttpRequest#send(HttpResponseHandler)} has returned.
+ * Subscribe once, in {@link #onResponse} or later; the request is finished when the body
+ * has been read to the end, or the subscription is cancelled. Only then are the connection
+ * and the concurrency permit released, and the bytes read and the read time recorded.
+ * A body nobody subscribes to is closed after the subscribe timeout, 30 seconds by default,
+ * and a subscriber that throws from {@code onNext} cancels its subscription.
+ * On Java 9+, {@code org.reactivestreams.FlowAdapters.toFlowPublisher()} adapts it to {@code java.util.concurrent.Flow}.
+ *
+ * @author Elex
+ */
+public abstract class HttpPublisherResponseHandler implements HttpResponseHandler<Publisher<ByteBuffer>> {
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	private static final long DEFAULT_SUBSCRIBE_TIMEOUT = 30_000L;
+	private static final ExecutorService READERS = readers(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+	private final Executor executor;
+	private final int bufferSize;
+	private final long subscribeTimeout;
+
+	/**
+	 * Reads on a shared pool of daemon threads, 8KB at a time.
+	 * The pool has as many threads as processors; reads of other bodies queue up behind them,
+	 * so pass an executor of your own to read many slow bodies at once.
+	 */
+	public HttpPublisherResponseHandler() {
+		this(READERS, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param executor   runs the blocking reads, at most one at a time per body
+	 * @param bufferSize maximum size of a buffer
+	 */
+	public HttpPublisherResponseHandler(@NotNull final Executor executor, final int bufferSize) {
+		this(executor, bufferSize, DEFAULT_SUBSCRIBE_TIMEOUT);
+	}
+
+	/**
+	 * @param executor         runs the blocking reads, at most one at a time per body
+	 * @param bufferSize       maximum size of a buffer
+	 * @param subscribeTimeout milliseconds to wait for a subscriber before the body is closed, 0 for no limit
+	 */
+	public HttpPublisherResponseHandler(@NotNull final Executor executor, final int bufferSize,
+	                                    final long subscribeTimeout) {
+		if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+		if (subscribeTimeout < 0) throw new IllegalArgumentException("subscribeTimeout: " + subscribeTimeout);
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+		this.subscribeTimeout = subscribeTimeout;
+	}
+
+	@Override
+	public Publisher<ByteBuffer> transform(final InputStream is) {
+		ResponseStream.defer(is);
+		return new InputStreamPublisher(is, executor, bufferSize, subscribeTimeout);
+	}
+
+	private static ExecutorService readers(final int threads) {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			final Thread thread = new Thread(r, "harpy-body");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
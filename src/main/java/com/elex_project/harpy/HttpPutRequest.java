@@ -33,6 +33,7 @@
 package com.elex_project.harpy;
 
 import java.io.IOException;
+import java.net.URL;
 
 /**
  *
@@ -48,6 +49,10 @@ public class HttpPutRequest<T> extends HttpPostRequest<T> {
 		super(uri);
 	}
 
+	public HttpPutRequest(final URL url) throws IOException {
+		super(url);
+	}
+
 	@Override
 	protected void init() throws IOException {
 		super.init();
@@ -34,13 +34,16 @@ package com.elex_project.harpy;
 
 import com.elex_project.abraxas.Stringz;
 import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @param <T> type of a response
@@ -57,13 +60,39 @@ public abstract class HttpRequest<T> {
 	protected URL url;
 	protected HttpURLConnection connection;
 	protected boolean closeConnection = false;
+	/**
+	 * The server answered Expect: 100-continue with a final status, so the body was not sent
+	 * and the response has no body to read.
+	 */
+	protected boolean bodyRejected = false;
+	private final HttpTrace trace = new HttpTrace();
+	private final HttpDeadline deadline = new HttpDeadline();
+	/**
+	 * Response body handed to the handler
+	 */
+	@Nullable
+	private ResponseStream responseBody;
+
+	@Nullable
+	private ConcurrencyLimiter concurrencyLimiter;
+	@Nullable
+	private LoadBalancer.Endpoint endpoint;
+
+	@Nullable
+	private static volatile TlsContext defaultTlsContext = null;
+	@Nullable
+	private static volatile ConcurrencyLimiter defaultConcurrencyLimiter = null;
 
 	public HttpRequest(Uri uri) throws IOException {
 		this(uri.toString());
 	}
 
 	public HttpRequest(String uri) throws IOException {
-		this.url = new URL(uri);
+		this(new URL(uri));
+	}
+
+	public HttpRequest(URL url) throws IOException {
+		this.url = url;
 		init();
 	}
 
@@ -78,6 +107,65 @@ public abstract class HttpRequest<T> {
 		} catch (NoClassDefFoundError e) {
 			connection.setRequestProperty(ACCEPT_CHARSET, Stringz.UTF_8);
 		}
+		final TlsContext tlsContext = defaultTlsContext;
+		if (null != tlsContext) setTlsContext(tlsContext);
+		this.concurrencyLimiter = defaultConcurrencyLimiter;
+	}
+
+	/**
+	 * TLS context of the https requests created from now on.
+	 *
+	 * @param tlsContext tls context, or null for the defaults of HttpsURLConnection
+	 */
+	public static void setDefaultTlsContext(@Nullable final TlsContext tlsContext) {
+		defaultTlsContext = tlsContext;
+	}
+
+	@Nullable
+	public static TlsContext getDefaultTlsContext() {
+		return defaultTlsContext;
+	}
+
+	/**
+	 * Concurrency limiter of the requests created from now on.
+	 *
+	 * @param limiter limiter, or null for no limit
+	 */
+	public static void setDefaultConcurrencyLimiter(@Nullable final ConcurrencyLimiter limiter) {
+		defaultConcurrencyLimiter = limiter;
+	}
+
+	@Nullable
+	public static ConcurrencyLimiter getDefaultConcurrencyLimiter() {
+		return defaultConcurrencyLimiter;
+	}
+
+	/**
+	 * @param limiter limiter, or null for no limit
+	 */
+	public void setConcurrencyLimiter(@Nullable final ConcurrencyLimiter limiter) {
+		this.concurrencyLimiter = limiter;
+	}
+
+	/**
+	 * Report the outcome of this request to the load balancer.
+	 *
+	 * @param endpoint endpoint this request was created for
+	 * @see LoadBalancer#select()
+	 */
+	public void setEndpoint(@Nullable final LoadBalancer.Endpoint endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * Ignored for plain http requests
+	 *
+	 * @param tlsContext tls context
+	 */
+	public void setTlsContext(@NotNull final TlsContext tlsContext) {
+		if (connection instanceof HttpsURLConnection) {
+			tlsContext.apply((HttpsURLConnection) connection);
+		}
 	}
 
 	public void setUserAgent(String userAgent) {
@@ -92,6 +180,16 @@ public abstract class HttpRequest<T> {
 		this.connection.setConnectTimeout(timeout);
 	}
 
+	/**
+	 * Bound the whole exchange: connect, write and reading the response body.
+	 * Once passed, the request fails with a {@link java.net.SocketTimeoutException}.
+	 *
+	 * @param timeout milliseconds from {@link #send(HttpResponseHandler)}, 0 for none
+	 */
+	public void setDeadline(long timeout) {
+		this.deadline.setTimeout(timeout);
+	}
+
 	public void setRequestHeaderProperty(String k, String v) {
 		this.connection.setRequestProperty(k, v);
 	}
@@ -106,20 +204,108 @@ public abstract class HttpRequest<T> {
 
 	public void setDisconnect(boolean disconnect) {
 		this.closeConnection = disconnect;
-		setRequestHeaderProperty(CONNECTION, disconnect ? "keep-alive" : "close");
+		setRequestHeaderProperty(CONNECTION, disconnect ? "close" : "keep-alive");
 	}
 
-	public abstract void send(HttpResponseHandler<T> handler) throws IOException;
+	/**
+	 * Connect, write the body if any, then hand the response over to the handler.
+	 * Each phase is timed and reported to {@link HttpStatistics}, and to JFR on Java 11+.
+	 *
+	 * @param handler response handler
+	 * @throws IOException on connect or write failure, or if turned away by the concurrency limiter
+	 */
+	public void send(final HttpResponseHandler<T> handler) throws IOException {
+		HttpPrewarmer.record(url);
+		final ConcurrencyLimiter.Permit permit = null == concurrencyLimiter ? null : concurrencyLimiter.acquire(url);
+		if (null != endpoint) endpoint.started();
+		trace.start(connection.getRequestMethod(), url);
+		boolean deferred = false;
+		try {
+			prepare();
+			deadline.start(connection);
+			connection.connect();
+			deadline.check();
+			trace.connected();
+
+			trace.written(writeBody());
+			deadline.check();
+
+			processResponse(handler);
+		} catch (IOException | RuntimeException e) {
+			final Throwable failure = deadline.translate(e);
+			trace.failed(failure);
+			if (failure instanceof IOException && failure != e) throw (IOException) failure;
+			throw e;
+		} finally {
+			// a body read after returning finishes the request when it is closed
+			deferred = null != responseBody && responseBody.isDeferred()
+					&& responseBody.onClose(() -> finishDeferred(permit));
+			if (!deferred) finish(permit);
+		}
+
+		if (!deferred && (closeConnection || bodyRejected || deadline.isExpired())) deadline.disconnect(connection);
+	}
+
+	private void finish(@Nullable final ConcurrencyLimiter.Permit permit) {
+		deadline.cancel();
+		trace.end();
+		if (null != permit) permit.release(trace);
+		if (null != endpoint) endpoint.finished(trace);
+	}
+
+	private void finishDeferred(@Nullable final ConcurrencyLimiter.Permit permit) {
+		trace.read();
+		final Throwable failure = null == responseBody ? null : responseBody.getFailure();
+		if (null != failure) trace.failed(deadline.translate(failure));
+		finish(permit);
+		if (closeConnection || deadline.isExpired()) deadline.disconnect(connection);
+	}
+
+	/**
+	 * Called before connecting, while the request properties can still be changed.
+	 *
+	 * @throws IOException on failure
+	 */
+	protected void prepare() throws IOException {
+	}
+
+	/**
+	 * Write the request body, if any.
+	 *
+	 * @return number of bytes written
+	 * @throws IOException on failure
+	 */
+	protected long writeBody() throws IOException {
+		return 0;
+	}
 
 	protected void processResponse(HttpResponseHandler<T> handler) throws IOException {
 		if (null != handler) {
 			try {
-				handler.onResponse(
-						connection.getResponseCode(),
-						connection.getHeaderFields(),
-						handler.transform(connection.getInputStream()));
+				final int status = connection.getResponseCode();
+				trace.responded(status);
+				final HttpHeaders headers = HttpHeaders.of(connection);
+				if (!bodyRejected) {
+					responseBody = new ResponseStream(trace.count(deadline.guard(connection, connection.getInputStream())), headers);
+				}
+				final T message = bodyRejected ? null : handler.transform(responseBody, headers);
+				if (null == responseBody || !responseBody.isDeferred()) trace.read();
+				try {
+					handler.onResponse(status, headers, message);
+				} finally {
+					if (null != message) handler.release(message);
+				}
 			} catch (Throwable e) {
-				handler.onException(e);
+				final Throwable failure = deadline.translate(e);
+				trace.failed(failure);
+				// nobody is going to read the body
+				if (null != responseBody && responseBody.isDeferred()) {
+					try {
+						responseBody.close();
+					} catch (IOException ignore) {
+					}
+				}
+				handler.onException(failure);
 			}
 		}
 
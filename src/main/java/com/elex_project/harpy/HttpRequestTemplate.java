@@ -0,0 +1,395 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Request shape compiled once, for sending many times with only some path segments or query values changed.
+ * <pre>
+ * HttpRequestTemplate template = HttpRequestTemplate.builder(HttpMethod.GET, "https://example.com/items/{id}?fields={fields}")
+ *         .header("Accept", "application/json")
+ *         .build();
+ * template.send(handler, "42", "name,price");
+ * </pre>
+ * The uri and headers are parsed and validated when built. Creating a request then only percent-encodes
+ * the values into the pre-split uri, and applies the headers without re-checking them.
+ * Host and port can not be variables.
+ *
+ * @author Elex
+ */
+public final class HttpRequestTemplate {
+	private static final Pattern TEMPLATE = Pattern
+			.compile("(?<scheme>https?)://(?<host>\\[[0-9a-fA-F:.]+]|[^:/?#\\[\\]@{}]+)(:(?<port>[0-9]+))?(?<file>[/?][^#]*)?(#.*)?");
+	private static final Pattern VARIABLE = Pattern.compile("\\{([A-Za-z0-9_.-]+)}");
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final HttpMethod method;
+	private final String template;
+	private final String protocol;
+	private final String host;
+	private final int port;
+	/**
+	 * literals.length == variables.length + 1
+	 */
+	private final String[] literals;
+	private final int[] variables;
+	private final String[] names;
+	private final int literalLength;
+	private final String[] headerNames;
+	private final String[] headerValues;
+	private final int connectTimeout;
+	private final int requestTimeout;
+	private final long deadline;
+	private final boolean followRedirect;
+	@Nullable
+	private final TlsContext tlsContext;
+
+	private HttpRequestTemplate(final Builder builder) {
+		this.method = builder.method;
+		this.template = builder.template;
+
+		final Matcher matcher = TEMPLATE.matcher(template);
+		if (!matcher.matches()) throw new IllegalArgumentException("Invalid template: " + template);
+		this.protocol = matcher.group("scheme");
+		this.host = matcher.group("host");
+		this.port = null == matcher.group("port") ? -1 : Integer.parseInt(matcher.group("port"));
+		final String file = null == matcher.group("file") ? "/" : matcher.group("file");
+
+		final List<String> literals = new ArrayList<>();
+		final List<String> names = new ArrayList<>();
+		final List<Integer> variables = new ArrayList<>();
+		final Matcher variable = VARIABLE.matcher(file);
+		int start = 0;
+		while (variable.find()) {
+			literals.add(literal(file.substring(start, variable.start())));
+			int index = names.indexOf(variable.group(1));
+			if (index < 0) {
+				index = names.size();
+				names.add(variable.group(1));
+			}
+			variables.add(index);
+			start = variable.end();
+		}
+		literals.add(literal(file.substring(start)));
+
+		this.literals = literals.toArray(new String[0]);
+		this.names = names.toArray(new String[0]);
+		this.variables = new int[variables.size()];
+		int length = 0;
+		for (int i = 0; i < this.variables.length; i++) this.variables[i] = variables.get(i);
+		for (String literal : this.literals) length += literal.length();
+		this.literalLength = length;
+
+		this.headerNames = builder.headerNames.toArray(new String[0]);
+		this.headerValues = builder.headerValues.toArray(new String[0]);
+		this.connectTimeout = builder.connectTimeout;
+		this.requestTimeout = builder.requestTimeout;
+		this.deadline = builder.deadline;
+		this.followRedirect = builder.followRedirect;
+		this.tlsContext = builder.tlsContext;
+	}
+
+	/**
+	 * @param method   GET, HEAD, POST, PUT or DELETE
+	 * @param template absolute uri with {name} variables in the path and query, already encoded
+	 * @return builder
+	 */
+	public static Builder builder(@NotNull final HttpMethod method, @NotNull final String template) {
+		return new Builder(method, template);
+	}
+
+	/**
+	 * @return names of the variables, in the order of the values
+	 */
+	public String[] getVariables() {
+		return names.clone();
+	}
+
+	public HttpMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * Fill in the variables.
+	 *
+	 * @param values values of the variables in order of first appearance, to be percent-encoded
+	 * @return url
+	 * @throws MalformedURLException on unknown protocol
+	 */
+	public URL expand(@NotNull final String... values) throws MalformedURLException {
+		if (values.length != names.length) {
+			throw new IllegalArgumentException("Expected " + names.length + " values, got " + values.length);
+		}
+		if (variables.length == 0) return new URL(protocol, host, port, literals[0]);
+
+		final StringBuilder file = new StringBuilder(literalLength + 16 * variables.length);
+		file.append(literals[0]);
+		for (int i = 0; i < variables.length; i++) {
+			encode(file, values[variables[i]]);
+			file.append(literals[i + 1]);
+		}
+		return new URL(protocol, host, port, file.toString());
+	}
+
+	/**
+	 * Fill in the variables by name.
+	 *
+	 * @param values values of the variables, to be percent-encoded
+	 * @return url
+	 * @throws MalformedURLException on unknown protocol
+	 */
+	public URL expand(@NotNull final Map<String, ?> values) throws MalformedURLException {
+		final String[] array = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			final Object value = values.get(names[i]);
+			if (null == value) throw new IllegalArgumentException("No value for {" + names[i] + "}");
+			array[i] = value.toString();
+		}
+		return expand(array);
+	}
+
+	/**
+	 * Create a request, set the body of POST and PUT requests on it before sending.
+	 *
+	 * @param values values of the variables in order of first appearance
+	 * @param <T>    type of a response
+	 * @return request
+	 * @throws IOException on failure
+	 */
+	public <T> HttpRequest<T> create(@NotNull final String... values) throws IOException {
+		return configure(this.<T>open(expand(values)));
+	}
+
+	/**
+	 * @param values values of the variables by name
+	 * @param <T>    type of a response
+	 * @return request
+	 * @throws IOException on failure
+	 */
+	public <T> HttpRequest<T> create(@NotNull final Map<String, ?> values) throws IOException {
+		return configure(this.<T>open(expand(values)));
+	}
+
+	/**
+	 * Create a request, and send it
+	 *
+	 * @param handler response handler
+	 * @param values  values of the variables in order of first appearance
+	 * @param <T>     type of a response
+	 * @throws IOException on failure
+	 */
+	public <T> void send(@Nullable final HttpResponseHandler<T> handler, @NotNull final String... values) throws IOException {
+		this.<T>create(values).send(handler);
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + template;
+	}
+
+	private <T> HttpRequest<T> open(final URL url) throws IOException {
+		switch (method) {
+			case GET:
+				return new HttpGetRequest<>(url);
+			case HEAD:
+				return new HttpHeadRequest<>(url);
+			case POST:
+				return new HttpPostRequest<>(url);
+			case PUT:
+				return new HttpPutRequest<>(url);
+			case DELETE:
+				return new HttpDeleteRequest<>(url);
+			default:
+				throw new IllegalStateException(method.getName());
+		}
+	}
+
+	private <T> HttpRequest<T> configure(final HttpRequest<T> request) {
+		for (int i = 0; i < headerNames.length; i++) {
+			request.setRequestHeaderProperty(headerNames[i], headerValues[i]);
+		}
+		if (connectTimeout >= 0) request.setConnectTimeout(connectTimeout);
+		if (requestTimeout >= 0) request.setRequestTimeout(requestTimeout);
+		if (deadline > 0) request.setDeadline(deadline);
+		if (followRedirect) request.setFollowRedirect(true);
+		if (null != tlsContext) request.setTlsContext(tlsContext);
+		return request;
+	}
+
+	/**
+	 * Percent-encode everything but the unreserved characters of RFC 3986,
+	 * appending the value as is when there is nothing to encode.
+	 */
+	private static void encode(final StringBuilder sb, final String value) {
+		final int length = value.length();
+		int i = 0;
+		while (i < length && isUnreserved(value.charAt(i))) i++;
+		if (i == length) {
+			sb.append(value);
+			return;
+		}
+		sb.append(value, 0, i);
+		for (byte b : value.substring(i).getBytes(StandardCharsets.UTF_8)) {
+			if (isUnreserved((char) (b & 0xff))) {
+				sb.append((char) b);
+			} else {
+				sb.append('%').append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+			}
+		}
+	}
+
+	private static boolean isUnreserved(final char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '-' || c == '.' || c == '_' || c == '~';
+	}
+
+	private static String literal(final String literal) {
+		for (int i = 0; i < literal.length(); i++) {
+			final char c = literal.charAt(i);
+			if (c <= ' ' || c >= 0x7f || c == '{' || c == '}') {
+				throw new IllegalArgumentException("Invalid character in template: " + literal);
+			}
+		}
+		return literal;
+	}
+
+	public static class Builder {
+		private final HttpMethod method;
+		private final String template;
+		private final List<String> headerNames = new ArrayList<>();
+		private final List<String> headerValues = new ArrayList<>();
+		private int connectTimeout = -1;
+		private int requestTimeout = -1;
+		private long deadline = 0;
+		private boolean followRedirect = false;
+		@Nullable
+		private TlsContext tlsContext = null;
+
+		private Builder(@NotNull final HttpMethod method, @NotNull final String template) {
+			switch (method) {
+				case GET:
+				case HEAD:
+				case POST:
+				case PUT:
+				case DELETE:
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported method: " + method);
+			}
+			this.method = method;
+			this.template = template;
+		}
+
+		/**
+		 * @param name  token, as of RFC 7230
+		 * @param value without line breaks
+		 * @return builder
+		 */
+		public Builder header(@NotNull final String name, @NotNull final String value) {
+			if (name.isEmpty()) throw new IllegalArgumentException("Empty header name");
+			for (int i = 0; i < name.length(); i++) {
+				final char c = name.charAt(i);
+				if (c <= ' ' || c >= 0x7f || "\"(),/:;<=>?@[\\]{}".indexOf(c) >= 0) {
+					throw new IllegalArgumentException("Invalid header name: " + name);
+				}
+			}
+			for (int i = 0; i < value.length(); i++) {
+				final char c = value.charAt(i);
+				if (c == '\r' || c == '\n' || c == 0) {
+					throw new IllegalArgumentException("Invalid header value: " + name);
+				}
+			}
+			headerNames.add(name);
+			headerValues.add(value);
+			return this;
+		}
+
+		public Builder userAgent(@NotNull final String userAgent) {
+			return header(HttpRequest.USER_AGENT, userAgent);
+		}
+
+		public Builder contentType(@NotNull final String contentType) {
+			return header(HttpRequest.CONTENT_TYPE, contentType);
+		}
+
+		public Builder connectTimeout(final int timeout) {
+			this.connectTimeout = timeout;
+			return this;
+		}
+
+		public Builder requestTimeout(final int timeout) {
+			this.requestTimeout = timeout;
+			return this;
+		}
+
+		/**
+		 * @param timeout milliseconds
+		 * @return builder
+		 * @see HttpRequest#setDeadline(long)
+		 */
+		public Builder deadline(final long timeout) {
+			this.deadline = timeout;
+			return this;
+		}
+
+		public Builder followRedirect(final boolean follow) {
+			this.followRedirect = follow;
+			return this;
+		}
+
+		public Builder tlsContext(@Nullable final TlsContext tlsContext) {
+			this.tlsContext = tlsContext;
+			return this;
+		}
+
+		/**
+		 * @return template
+		 * @throws IllegalArgumentException if the template is not a valid http(s) uri
+		 */
+		public HttpRequestTemplate build() {
+			return new HttpRequestTemplate(this);
+		}
+	}
+}
@@ -43,7 +43,7 @@ public interface HttpResponseHandler<T> {
 	 * 응답 받았다~
 	 *
 	 * @param status  서버 응답 코드
-	 * @param headers 응답 헤더
+	 * @param headers 응답 헤더, {@link HttpHeaders}
 	 * @param message 전송받은 메시지
 	 */
 	public void onResponse(final int status, final Map<String, List<String>> headers, final @Nullable T message);
@@ -51,4 +51,27 @@ public interface HttpResponseHandler<T> {
 	public void onException(Throwable e);
 
 	public T transform(InputStream is) throws Throwable;
+
+	/**
+	 * 응답 헤더를 참고하여 변환, 길이나 문자셋 등
+	 * 헤더는 스트림과 함께 {@link #transform(InputStream)}으로 넘어가므로, 보통은 그것만 재정의하면 된다.
+	 *
+	 * @param is      응답 바디
+	 * @param headers 응답 헤더
+	 * @return 변환된 메시지
+	 * @throws Throwable 변환 실패
+	 */
+	public default T transform(InputStream is, HttpHeaders headers) throws Throwable {
+		return transform(is instanceof ResponseStream ? is : new ResponseStream(is, headers));
+	}
+
+	/**
+	 * {@link #onResponse}가 끝난 뒤에 불림, 풀에서 빌린 버퍼 등을 돌려줄 때
+	 * <p>
+	 * {@link #onResponse}가 던지더라도 불리며, 메시지가 null이면 불리지 않는다.
+	 *
+	 * @param message 전송받은 메시지
+	 */
+	public default void release(final T message) {
+	}
 }
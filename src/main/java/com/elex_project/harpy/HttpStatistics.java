@@ -0,0 +1,149 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide counters of the requests sent with {@link HttpRequest}.
+ * <p>
+ * On Java 11+, these are also emitted periodically as a JFR event.
+ *
+ * @author Elex
+ */
+public final class HttpStatistics {
+	private static final AtomicLong ACTIVE = new AtomicLong();
+	private static final LongAdder TOTAL = new LongAdder();
+	private static final LongAdder FAILED = new LongAdder();
+	private static final LongAdder BYTES_IN = new LongAdder();
+	private static final LongAdder BYTES_OUT = new LongAdder();
+	private static final LongAdder FULL_HANDSHAKES = new LongAdder();
+	private static final LongAdder RESUMED_HANDSHAKES = new LongAdder();
+	private static final LongAdder PREWARMED = new LongAdder();
+	private static final LongAdder LIMITED = new LongAdder();
+
+	private HttpStatistics() {
+	}
+
+	static void started() {
+		ACTIVE.incrementAndGet();
+	}
+
+	static void finished(final HttpTrace trace) {
+		ACTIVE.decrementAndGet();
+		TOTAL.increment();
+		if (null != trace.failure) FAILED.increment();
+		BYTES_IN.add(trace.bytesIn);
+		BYTES_OUT.add(trace.bytesOut);
+	}
+
+	static void handshakeCompleted(final boolean resumed) {
+		if (resumed) {
+			RESUMED_HANDSHAKES.increment();
+		} else {
+			FULL_HANDSHAKES.increment();
+		}
+	}
+
+	static void prewarmed(final int connections) {
+		PREWARMED.add(connections);
+	}
+
+	static void limited() {
+		LIMITED.increment();
+	}
+
+	/**
+	 * @return number of requests in flight
+	 */
+	public static long getActiveRequests() {
+		return ACTIVE.get();
+	}
+
+	/**
+	 * @return number of requests completed, successfully or not
+	 */
+	public static long getTotalRequests() {
+		return TOTAL.sum();
+	}
+
+	/**
+	 * @return number of requests that ended with an exception
+	 */
+	public static long getFailedRequests() {
+		return FAILED.sum();
+	}
+
+	/**
+	 * @return response body bytes read
+	 */
+	public static long getBytesIn() {
+		return BYTES_IN.sum();
+	}
+
+	/**
+	 * @return request body bytes written
+	 */
+	public static long getBytesOut() {
+		return BYTES_OUT.sum();
+	}
+
+	/**
+	 * @return TLS handshakes that created a new session, counted by {@link TlsContext}s
+	 */
+	public static long getFullHandshakes() {
+		return FULL_HANDSHAKES.sum();
+	}
+
+	/**
+	 * @return TLS handshakes that resumed a cached session, counted by {@link TlsContext}s
+	 */
+	public static long getResumedHandshakes() {
+		return RESUMED_HANDSHAKES.sum();
+	}
+
+	/**
+	 * @return connections opened by {@link HttpPrewarmer}
+	 */
+	public static long getPrewarmedConnections() {
+		return PREWARMED.sum();
+	}
+
+	/**
+	 * @return requests rejected by {@link ConcurrencyLimiter}s
+	 */
+	public static long getLimitedRequests() {
+		return LIMITED.sum();
+	}
+}
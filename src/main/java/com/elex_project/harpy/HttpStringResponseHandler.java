@@ -32,8 +32,6 @@
 
 package com.elex_project.harpy;
 
-import com.elex_project.abraxas.IOz;
-
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -41,9 +39,27 @@ import java.io.InputStream;
  * @author Elex
  */
 public abstract class HttpStringResponseHandler implements HttpResponseHandler<String> {
+	private final ResponseLimits limits;
+
+	/**
+	 * Limited by {@link ResponseLimits#getDefault()}
+	 */
+	public HttpStringResponseHandler() {
+		this(ResponseLimits.getDefault());
+	}
+
+	/**
+	 * @param limits limits, of which {@link ResponseLimits#getMaxBytes()} caps the body
+	 */
+	public HttpStringResponseHandler(final ResponseLimits limits) {
+		this.limits = limits;
+	}
 
+	/**
+	 * Presized from Content-Length, decoded with the charset of Content-Type, or as UTF-8
+	 */
 	@Override
 	public String transform(final InputStream is) throws IOException {
-		return IOz.readStringFrom(is);
+		return BodyReader.readString(is, ResponseStream.headersOf(is), limits);
 	}
 }
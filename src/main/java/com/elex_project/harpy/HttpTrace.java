@@ -0,0 +1,141 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Timings and counters of a single request/response exchange.
+ * <p>
+ * Phases are measured back to back: connect, write, wait (until the status line), read.
+ *
+ * @author Elex
+ */
+final class HttpTrace {
+	String method;
+	String host;
+	int port;
+	int status = -1;
+	long bytesIn;
+	long bytesOut;
+	long connectTime;
+	long writeTime;
+	long waitTime;
+	long readTime;
+	long duration;
+	Throwable failure;
+	/**
+	 * Recorder specific state, see {@link HttpEvents}
+	 */
+	Object event;
+
+	private long start;
+	private long mark;
+	private boolean started = false;
+	private boolean ended = false;
+
+	void start(final String method, final URL url) {
+		this.method = method;
+		this.host = url.getHost();
+		this.port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		this.started = true;
+		HttpStatistics.started();
+		HttpEvents.begin(this);
+		this.start = this.mark = System.nanoTime();
+	}
+
+	void connected() {
+		connectTime = lap();
+	}
+
+	void written(final long bytes) {
+		bytesOut += bytes;
+		writeTime = lap();
+	}
+
+	void responded(final int status) {
+		this.status = status;
+		waitTime = lap();
+	}
+
+	void read() {
+		readTime = lap();
+	}
+
+	void failed(final Throwable e) {
+		if (null == failure) failure = e;
+	}
+
+	void end() {
+		if (!started || ended) return;
+		ended = true;
+		duration = System.nanoTime() - start;
+		HttpStatistics.finished(this);
+		HttpEvents.commit(this);
+	}
+
+	InputStream count(final InputStream is) {
+		return new FilterInputStream(is) {
+			@Override
+			public int read() throws IOException {
+				final int b = super.read();
+				if (b >= 0) bytesIn++;
+				return b;
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len) throws IOException {
+				final int n = super.read(b, off, len);
+				if (n > 0) bytesIn += n;
+				return n;
+			}
+
+			@Override
+			public long skip(final long n) throws IOException {
+				final long skipped = super.skip(n);
+				if (skipped > 0) bytesIn += skipped;
+				return skipped;
+			}
+		};
+	}
+
+	private long lap() {
+		final long now = System.nanoTime();
+		final long elapsed = now - mark;
+		mark = now;
+		return elapsed;
+	}
+}
@@ -32,29 +32,22 @@
 
 package com.elex_project.harpy;
 
-import com.elex_project.abraxas.IOz;
 import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
+ * For big documents, see {@link HttpXmlStreamResponseHandler}.
+ *
  * @author Elex
  */
 public abstract class HttpXmlResponseHandler implements HttpResponseHandler<Document> {
 
 	@Override
 	public Document transform(final InputStream is) throws IOException {
-		Document xml = null;
-		try {
-			xml = IOz.readXMLFrom(is);
-			xml.normalize();
-			return xml;
-
-		} catch (ParserConfigurationException | SAXException e) {
-			throw new IOException("XML?");
-		}
+		final Document xml = Xmlz.parse(is);
+		xml.normalize();
+		return xml;
 	}
 }
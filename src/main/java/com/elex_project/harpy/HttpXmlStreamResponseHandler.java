@@ -0,0 +1,228 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Hands the elements matching a path to {@link #onElement(Object)} as they are parsed with StAX,
+ * so that memory stays the same however long the document is, like a big RSS or Atom feed.
+ * The result is the number of elements.
+ * <p>
+ * Paths are of names, or * for any: "/rss/channel/item" from the root, "item" or "channel/item" at any depth.
+ * Names match the local name, or the prefixed name like "atom:entry".
+ * Elements inside a matched one are not matched again.
+ * <pre>
+ * request.send(new HttpXmlStreamResponseHandler&lt;Element&gt;("/rss/channel/item", HttpXmlStreamResponseHandler.ELEMENT) {
+ *     protected void onElement(Element item) {
+ *         ...
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * @param <T> type of an element
+ * @author Elex
+ */
+public abstract class HttpXmlStreamResponseHandler<T> implements HttpResponseHandler<Long> {
+	/**
+	 * Reads one element
+	 *
+	 * @param <T> type of an element
+	 */
+	@FunctionalInterface
+	public interface ElementReader<T> {
+		/**
+		 * @param reader reader at the start of the element, to be left at its end
+		 * @return element
+		 * @throws XMLStreamException on malformed XML
+		 */
+		T read(XMLStreamReader reader) throws XMLStreamException;
+	}
+
+	/**
+	 * Elements as DOM fragments, with their attributes and children
+	 */
+	public static final ElementReader<Element> ELEMENT = HttpXmlStreamResponseHandler::readElement;
+	/**
+	 * Text of elements without children, like &lt;title&gt;
+	 */
+	public static final ElementReader<String> TEXT = XMLStreamReader::getElementText;
+
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+	private static final ThreadLocal<Document> FRAGMENTS = ThreadLocal.withInitial(() -> Xmlz.documentBuilder().newDocument());
+
+	static {
+		// no DTDs, no external entities
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+	}
+
+	private final String[] path;
+	private final boolean absolute;
+	private final ElementReader<T> elementReader;
+
+	/**
+	 * @param path          path of the elements
+	 * @param elementReader reads an element, like {@link #ELEMENT} or {@link #TEXT}
+	 */
+	public HttpXmlStreamResponseHandler(@NotNull final String path, @NotNull final ElementReader<T> elementReader) {
+		this.absolute = path.startsWith("/") && !path.startsWith("//");
+		final String relative = path.replaceFirst("^/+", "");
+		if (relative.isEmpty() || relative.contains("//")) throw new IllegalArgumentException("path: " + path);
+		this.path = relative.split("/");
+		this.elementReader = elementReader;
+	}
+
+	/**
+	 * Called on the reading thread, in order
+	 *
+	 * @param element element
+	 * @throws IOException to stop
+	 */
+	protected abstract void onElement(T element) throws IOException;
+
+	@Override
+	public Long transform(final InputStream is) throws IOException {
+		XMLStreamReader reader = null;
+		long count = 0;
+		String[] stack = new String[16];
+		int depth = 0;
+		try {
+			reader = INPUT_FACTORY.createXMLStreamReader(is);
+			while (reader.hasNext()) {
+				final int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+					stack[depth++] = reader.getLocalName();
+					if (matches(stack, depth, reader.getPrefix())) {
+						final T element = elementReader.read(reader);
+						if (reader.getEventType() != XMLStreamConstants.END_ELEMENT) {
+							throw new XMLStreamException("Element not read to its end", reader.getLocation());
+						}
+						depth--;
+						count++;
+						onElement(element);
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				}
+			}
+			return count;
+		} catch (XMLStreamException e) {
+			throw new IOException("Malformed XML", e);
+		} finally {
+			if (null != reader) {
+				try {
+					reader.close();
+				} catch (XMLStreamException ignore) {
+				}
+			}
+		}
+	}
+
+	private boolean matches(final String[] stack, final int depth, final String prefix) {
+		if (depth < path.length || (absolute && depth != path.length)) return false;
+		for (int i = 0; i < path.length; i++) {
+			final String segment = path[path.length - 1 - i];
+			final String name = stack[depth - 1 - i];
+			if (segment.equals("*") || segment.equals(name)) continue;
+			// prefixes are known for the current element only
+			if (i == 0 && null != prefix && !prefix.isEmpty() && segment.equals(prefix + ":" + name)) continue;
+			return false;
+		}
+		return true;
+	}
+
+	private static Element readElement(final XMLStreamReader reader) throws XMLStreamException {
+		final Document document = FRAGMENTS.get();
+		Element root = null;
+		Node current = null;
+		while (true) {
+			switch (reader.getEventType()) {
+				case XMLStreamConstants.START_ELEMENT: {
+					final String prefix = reader.getPrefix();
+					final String ns = reader.getNamespaceURI();
+					final Element element = document.createElementNS(null == ns || ns.isEmpty() ? null : ns,
+							null == prefix || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName());
+					for (int i = 0; i < reader.getNamespaceCount(); i++) {
+						final String p = reader.getNamespacePrefix(i);
+						element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+								null == p || p.isEmpty() ? "xmlns" : "xmlns:" + p, reader.getNamespaceURI(i));
+					}
+					for (int i = 0; i < reader.getAttributeCount(); i++) {
+						final String p = reader.getAttributePrefix(i);
+						final String attributeNs = reader.getAttributeNamespace(i);
+						element.setAttributeNS(null == attributeNs || attributeNs.isEmpty() ? null : attributeNs,
+								null == p || p.isEmpty() ? reader.getAttributeLocalName(i) : p + ":" + reader.getAttributeLocalName(i),
+								reader.getAttributeValue(i));
+					}
+					if (null == root) {
+						root = element;
+					} else {
+						current.appendChild(element);
+					}
+					current = element;
+					break;
+				}
+				case XMLStreamConstants.END_ELEMENT:
+					if (current == root) return root;
+					current = current.getParentNode();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					current.appendChild(document.createTextNode(reader.getText()));
+					break;
+				case XMLStreamConstants.CDATA:
+					current.appendChild(document.createCDATASection(reader.getText()));
+					break;
+				default:
+			}
+			reader.next();
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes an input stream as byte buffers, to a single subscriber.
+ * <p>
+ * The stream is only read while the subscriber has outstanding demand, one read per buffer,
+ * so a slow subscriber leaves the data in the socket and TCP applies backpressure to the server.
+ * Reads block, so they run on the given executor. The stream is closed on completion, error or cancel,
+ * when the subscriber throws from onNext, or when nobody subscribes within the timeout.
+ *
+ * @author Elex
+ */
+@Slf4j
+final class InputStreamPublisher implements Publisher<ByteBuffer> {
+	private final InputStream is;
+	private final Executor executor;
+	private final int bufferSize;
+	private final AtomicBoolean subscribed = new AtomicBoolean(false);
+	@Nullable
+	private final TimerWheel.Timeout subscribeTimer;
+
+	/**
+	 * @param subscribeTimeout milliseconds to wait for a subscriber before closing the stream, 0 for no limit
+	 */
+	InputStreamPublisher(@NotNull final InputStream is, @NotNull final Executor executor, final int bufferSize,
+	                     final long subscribeTimeout) {
+		if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+		if (subscribeTimeout < 0) throw new IllegalArgumentException("subscribeTimeout: " + subscribeTimeout);
+		this.is = is;
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+		// closing may block, so not on the timer thread
+		this.subscribeTimer = subscribeTimeout == 0 ? null
+				: TimerWheel.getDefault().schedule(subscribeTimeout, TimeUnit.MILLISECONDS, () -> {
+			try {
+				executor.execute(this::abandon);
+			} catch (RuntimeException e) {
+				abandon();
+			}
+		});
+	}
+
+	private void abandon() {
+		if (!subscribed.compareAndSet(false, true)) return;
+		log.warn("No subscriber for the response body, closed");
+		try {
+			is.close();
+		} catch (IOException ignore) {
+		}
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+		if (null == subscriber) throw new NullPointerException("subscriber");
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Subscription() {
+				@Override
+				public void request(final long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("Only one subscriber is allowed."));
+			return;
+		}
+		if (null != subscribeTimer) subscribeTimer.cancel();
+		final ReadSubscription subscription = new ReadSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	private final class ReadSubscription implements Subscription, Runnable {
+		private final Subscriber<? super ByteBuffer> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		/**
+		 * Work in progress, the drain loop runs while it is not zero
+		 */
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean done = false;
+		private volatile Throwable invalidRequest;
+
+		ReadSubscription(final Subscriber<? super ByteBuffer> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("Non-positive request: " + n);
+			} else {
+				long current;
+				do {
+					current = demand.get();
+					if (current == Long.MAX_VALUE) break;
+				} while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			done = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) {
+					done = true;
+					close();
+					subscriber.onError(e);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				drain();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			if (done) {
+				close();
+				return;
+			}
+			if (null != invalidRequest) {
+				done = true;
+				close();
+				subscriber.onError(invalidRequest);
+				return;
+			}
+			while (demand.get() > 0 && !done) {
+				final byte[] buffer = new byte[bufferSize];
+				final int n;
+				try {
+					n = is.read(buffer);
+				} catch (IOException | RuntimeException e) {
+					done = true;
+					close();
+					subscriber.onError(e);
+					return;
+				}
+				if (n < 0) {
+					done = true;
+					close();
+					subscriber.onComplete();
+					return;
+				}
+				if (n == 0) continue;
+				if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+				try {
+					subscriber.onNext(ByteBuffer.wrap(buffer, 0, n));
+				} catch (Throwable t) {
+					// the subscription is cancelled, rule 2.13
+					done = true;
+					close();
+					log.warn("Subscriber failed, cancelled", t);
+					return;
+				}
+			}
+			if (done) close();
+		}
+
+		private void close() {
+			try {
+				is.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+}
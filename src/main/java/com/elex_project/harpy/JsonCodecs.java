@@ -0,0 +1,303 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * {@link JsonCodec}s of the common types, and the generated ones of {@link JsonSerializable} classes.
+ * Every one of them reads and writes JSON null as null.
+ *
+ * @author Elex
+ */
+public final class JsonCodecs {
+	private JsonCodecs() {
+	}
+
+	/**
+	 * Writes a value
+	 *
+	 * @param <T> type of the value
+	 */
+	@FunctionalInterface
+	private interface ValueWriter<T> {
+		void write(JsonWriter writer, T value) throws IOException;
+	}
+
+	private static final class Simple<T> implements JsonCodec<T> {
+		private final JsonElements.ElementReader<T> reader;
+		private final ValueWriter<T> writer;
+
+		private Simple(final JsonElements.ElementReader<T> reader, final ValueWriter<T> writer) {
+			this.reader = reader;
+			this.writer = writer;
+		}
+
+		@Override
+		public T read(final JsonReader reader) throws IOException {
+			if (reader.peek() == JsonReader.Token.NULL) {
+				reader.nextNull();
+				return null;
+			}
+			return this.reader.read(reader);
+		}
+
+		@Override
+		public void write(final JsonWriter writer, final T value) throws IOException {
+			if (null == value) {
+				writer.nullValue();
+			} else {
+				this.writer.write(writer, value);
+			}
+		}
+	}
+
+	public static final JsonCodec<String> STRING = new Simple<>(JsonReader::nextString, JsonWriter::value);
+	public static final JsonCodec<Boolean> BOOLEAN = new Simple<>(JsonReader::nextBoolean, JsonWriter::value);
+	public static final JsonCodec<Integer> INTEGER = new Simple<>(JsonReader::nextInt, JsonWriter::value);
+	public static final JsonCodec<Long> LONG = new Simple<>(JsonReader::nextLong, JsonWriter::value);
+	public static final JsonCodec<Short> SHORT = new Simple<>(r -> (short) r.nextInt(), JsonWriter::value);
+	public static final JsonCodec<Byte> BYTE = new Simple<>(r -> (byte) r.nextInt(), JsonWriter::value);
+	public static final JsonCodec<Double> DOUBLE = new Simple<>(JsonReader::nextDouble, JsonWriter::value);
+	public static final JsonCodec<Float> FLOAT = new Simple<>(r -> (float) r.nextDouble(), JsonWriter::value);
+	public static final JsonCodec<Character> CHARACTER = new Simple<>(r -> {
+		final String s = r.nextString();
+		if (s.length() != 1) throw new IOException("Expected a character but was \"" + s + "\"");
+		return s.charAt(0);
+	}, (w, c) -> w.value(String.valueOf(c)));
+	public static final JsonCodec<BigInteger> BIG_INTEGER = new Simple<>(r -> {
+		final String s = r.nextString();
+		try {
+			return new BigInteger(s);
+		} catch (NumberFormatException e) {
+			throw new IOException("Expected an integer but was " + s, e);
+		}
+	}, JsonWriter::value);
+	public static final JsonCodec<BigDecimal> BIG_DECIMAL = new Simple<>(r -> {
+		final String s = r.nextString();
+		try {
+			return new BigDecimal(s);
+		} catch (NumberFormatException e) {
+			throw new IOException("Expected a number but was " + s, e);
+		}
+	}, JsonWriter::value);
+	/**
+	 * Any value, read as org.json
+	 */
+	public static final JsonCodec<Object> VALUE = new Simple<>(JsonReader::readValue, JsonWriter::value);
+	public static final JsonCodec<JSONObject> JSON_OBJECT = new Simple<>(r -> {
+		if (r.peek() != JsonReader.Token.BEGIN_OBJECT) throw new IOException("Expected an object at " + r.getPath());
+		return (JSONObject) r.readValue();
+	}, JsonWriter::value);
+	public static final JsonCodec<JSONArray> JSON_ARRAY = new Simple<>(r -> {
+		if (r.peek() != JsonReader.Token.BEGIN_ARRAY) throw new IOException("Expected an array at " + r.getPath());
+		return (JSONArray) r.readValue();
+	}, JsonWriter::value);
+
+	/**
+	 * @param element codec of the elements
+	 * @param <T>     type of an element
+	 * @return codec of arrays, read as ArrayLists
+	 */
+	public static <T> JsonCodec<List<T>> list(@NotNull final JsonCodec<T> element) {
+		return new Simple<>(r -> readList(r, element), (w, list) -> writeArray(w, list, element));
+	}
+
+	/**
+	 * @param element codec of the elements
+	 * @param <T>     type of an element
+	 * @return codec of arrays, read as ArrayLists
+	 */
+	public static <T> JsonCodec<Collection<T>> collection(@NotNull final JsonCodec<T> element) {
+		return new Simple<>(r -> readList(r, element), (w, collection) -> writeArray(w, collection, element));
+	}
+
+	/**
+	 * @param element codec of the elements
+	 * @param <T>     type of an element
+	 * @return codec of arrays, read as ArrayLists
+	 */
+	public static <T> JsonCodec<Iterable<T>> iterable(@NotNull final JsonCodec<T> element) {
+		return new Simple<>(r -> readList(r, element), (w, iterable) -> writeArray(w, iterable, element));
+	}
+
+	/**
+	 * @param element codec of the elements
+	 * @param <T>     type of an element
+	 * @return codec of arrays, read as LinkedHashSets
+	 */
+	public static <T> JsonCodec<Set<T>> set(@NotNull final JsonCodec<T> element) {
+		return new Simple<>(r -> {
+			final Set<T> set = new LinkedHashSet<>();
+			r.beginArray();
+			while (r.hasNext()) set.add(element.read(r));
+			r.endArray();
+			return set;
+		}, (w, set) -> {
+			w.beginArray();
+			for (T value : set) element.write(w, value);
+			w.endArray();
+		});
+	}
+
+	/**
+	 * @param value codec of the values
+	 * @param <T>   type of a value
+	 * @return codec of objects, read as LinkedHashMaps
+	 */
+	public static <T> JsonCodec<Map<String, T>> map(@NotNull final JsonCodec<T> value) {
+		return new Simple<>(r -> {
+			final Map<String, T> map = new LinkedHashMap<>();
+			r.beginObject();
+			while (r.hasNext()) {
+				final String name = r.nextName();
+				map.put(name, value.read(r));
+			}
+			r.endObject();
+			return map;
+		}, (w, map) -> {
+			w.beginObject();
+			for (Map.Entry<String, T> entry : map.entrySet()) {
+				w.name(entry.getKey());
+				value.write(w, entry.getValue());
+			}
+			w.endObject();
+		});
+	}
+
+	/**
+	 * @param type enum
+	 * @param <E>  type of the enum
+	 * @return codec of the constants by name
+	 */
+	public static <E extends Enum<E>> JsonCodec<E> enumeration(@NotNull final Class<E> type) {
+		return new Simple<>(r -> {
+			final String name = r.nextString();
+			try {
+				return Enum.valueOf(type, name);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("No " + type.getSimpleName() + " named " + name, e);
+			}
+		}, (w, e) -> w.value(e.name()));
+	}
+
+	/**
+	 * For codecs that refer to each other, like those of recursive classes,
+	 * so that none of them is needed before it is made.
+	 *
+	 * @param supplier supplies the codec when it is first used
+	 * @param <T>      type of the values
+	 * @return codec that delegates to the supplied one
+	 */
+	public static <T> JsonCodec<T> lazy(@NotNull final Supplier<JsonCodec<T>> supplier) {
+		return new JsonCodec<T>() {
+			private volatile JsonCodec<T> codec;
+
+			private JsonCodec<T> codec() {
+				JsonCodec<T> c = codec;
+				if (null == c) {
+					c = supplier.get();
+					codec = c;
+				}
+				return c;
+			}
+
+			@Override
+			public T read(final JsonReader reader) throws IOException {
+				return codec().read(reader);
+			}
+
+			@Override
+			public void write(final JsonWriter writer, final T value) throws IOException {
+				codec().write(writer, value);
+			}
+		};
+	}
+
+	private static final ClassValue<JsonCodec<?>> GENERATED = new ClassValue<JsonCodec<?>>() {
+		@Override
+		protected JsonCodec<?> computeValue(final Class<?> type) {
+			final String name = type.getName();
+			final int dot = name.lastIndexOf('.');
+			final String codec = name.substring(0, dot + 1) + name.substring(dot + 1).replace('$', '_') + "_JsonCodec";
+			try {
+				return (JsonCodec<?>) Class.forName(codec, true, type.getClassLoader()).getField("INSTANCE").get(null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalArgumentException("No JsonCodec generated for " + name
+						+ "; mark it with @JsonSerializable and run harpy-processor", e);
+			}
+		}
+	};
+
+	/**
+	 * The codec generated at compile time for a {@link JsonSerializable} class.
+	 * It is looked up once per class; the codec itself uses no reflection.
+	 *
+	 * @param type class marked with {@link JsonSerializable}
+	 * @param <T>  type
+	 * @return codec
+	 * @throws IllegalArgumentException if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> JsonCodec<T> of(@NotNull final Class<T> type) {
+		return (JsonCodec<T>) GENERATED.get(type);
+	}
+
+	private static <T> List<T> readList(final JsonReader reader, final JsonCodec<T> element) throws IOException {
+		final List<T> list = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) list.add(element.read(reader));
+		reader.endArray();
+		return list;
+	}
+
+	private static <T> void writeArray(final JsonWriter writer, final Iterable<T> values, final JsonCodec<T> element) throws IOException {
+		writer.beginArray();
+		for (T value : values) element.write(writer, value);
+		writer.endArray();
+	}
+}
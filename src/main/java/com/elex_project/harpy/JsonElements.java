@@ -0,0 +1,230 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Elements of a JSON array, or the values of NDJSON, one at a time as they are parsed.
+ * <p>
+ * Only one element is held at a time; in parallel mode, the raw bytes of a few more are split off
+ * and parsed on a fork-join pool, and handed out in their order.
+ * <pre>
+ * try (JsonElements&lt;Object&gt; elements = JsonElements.array(new JsonReader(is), JsonElements.VALUE)) {
+ *     elements.stream().forEach(...);
+ * }
+ * </pre>
+ * Failures to read are thrown as {@link UncheckedIOException}.
+ *
+ * @param <T> type of an element
+ * @author Elex
+ */
+public final class JsonElements<T> implements Iterator<T>, Closeable {
+	/**
+	 * Reads one element
+	 *
+	 * @param <T> type of an element
+	 */
+	@FunctionalInterface
+	public interface ElementReader<T> {
+		/**
+		 * @param reader reader at the start of the element, to be read to its end
+		 * @return element
+		 * @throws IOException on read failure or malformed JSON
+		 */
+		T read(JsonReader reader) throws IOException;
+	}
+
+	/**
+	 * Elements as org.json values
+	 */
+	public static final ElementReader<Object> VALUE = JsonReader::readValue;
+
+	private final JsonReader reader;
+	private final ElementReader<T> elementReader;
+	private final boolean array;
+	private boolean started = false;
+	private boolean ended = false;
+	private ForkJoinPool pool = null;
+	private int window;
+	private final ArrayDeque<ForkJoinTask<T>> tasks = new ArrayDeque<>();
+
+	private JsonElements(final JsonReader reader, final ElementReader<T> elementReader, final boolean array) {
+		this.reader = reader;
+		this.elementReader = elementReader;
+		this.array = array;
+	}
+
+	/**
+	 * @param reader        reader at the start of an array
+	 * @param elementReader reads an element
+	 * @param <T>           type of an element
+	 * @return elements of the array
+	 */
+	public static <T> JsonElements<T> array(@NotNull final JsonReader reader, @NotNull final ElementReader<T> elementReader) {
+		return new JsonElements<>(reader, elementReader, true);
+	}
+
+	/**
+	 * @param reader        reader at the start of a document
+	 * @param pointer       JSON Pointer of the array, like "/data/items"
+	 * @param elementReader reads an element
+	 * @param <T>           type of an element
+	 * @return elements of the array, none if it is not there
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public static <T> JsonElements<T> array(@NotNull final JsonReader reader, @NotNull final String pointer,
+	                                        @NotNull final ElementReader<T> elementReader) throws IOException {
+		final JsonElements<T> elements = new JsonElements<>(reader, elementReader, true);
+		if (!reader.seek(pointer) || reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+			elements.ended = true;
+		}
+		return elements;
+	}
+
+	/**
+	 * @param reader        reader at the start of a document
+	 * @param elementReader reads a value
+	 * @param <T>           type of an element
+	 * @return top-level values, one after another, as in NDJSON
+	 */
+	public static <T> JsonElements<T> lines(@NotNull final JsonReader reader, @NotNull final ElementReader<T> elementReader) {
+		reader.setMultipleValues(true);
+		return new JsonElements<>(reader, elementReader, false);
+	}
+
+	/**
+	 * Parse on a pool, keeping the order. The reading stays on the calling thread.
+	 *
+	 * @param pool   pool to parse on
+	 * @param window elements split off ahead of the one handed out
+	 * @return this
+	 */
+	public JsonElements<T> parallel(@NotNull final ForkJoinPool pool, final int window) {
+		if (window <= 0) throw new IllegalArgumentException("window: " + window);
+		this.pool = pool;
+		this.window = window;
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			if (null != pool) {
+				while (tasks.size() < window && more()) {
+					final byte[] raw = reader.readRawValue();
+					tasks.add(pool.submit(() -> elementReader.read(new JsonReader(new ByteArrayInputStream(raw)))));
+				}
+				return !tasks.isEmpty();
+			}
+			return more();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		try {
+			if (null == pool) return elementReader.read(reader);
+			return tasks.poll().get();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw new UncheckedIOException((IOException) e.getCause());
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return sequential, ordered stream of the elements, closing this when closed
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * Stop, cancelling the elements being parsed, and close the reader
+	 */
+	@Override
+	public void close() {
+		ended = true;
+		for (ForkJoinTask<T> task : tasks) task.cancel(false);
+		tasks.clear();
+		try {
+			reader.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return whether there is another element to read
+	 */
+	private boolean more() throws IOException {
+		if (ended) return false;
+		if (array) {
+			if (!started) {
+				reader.beginArray();
+				started = true;
+			}
+			if (reader.hasNext()) return true;
+			reader.endArray();
+		} else if (reader.peek() != JsonReader.Token.END_DOCUMENT) {
+			return true;
+		}
+		ended = true;
+		return false;
+	}
+}
@@ -0,0 +1,788 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pull parser of UTF-8 JSON, reading straight from a byte stream.
+ * <p>
+ * Values are read one token at a time; names and strings are the only allocations,
+ * and {@link #skipValue()} allocates nothing. {@link #readValue()} builds org.json values
+ * of the parts that are wanted, and {@link #readPointers(Collection)} picks values by JSON Pointer.
+ * For streams of values, like NDJSON, see {@link #setMultipleValues(boolean)} and {@link JsonElements}.
+ * <pre>
+ * JsonReader reader = new JsonReader(is);
+ * reader.beginArray();
+ * while (reader.hasNext()) {
+ *     reader.beginObject();
+ *     while (reader.hasNext()) {
+ *         if (reader.nextName().equals("id")) id = reader.nextLong();
+ *         else reader.skipValue();
+ *     }
+ *     reader.endObject();
+ * }
+ * reader.endArray();
+ * </pre>
+ * Not thread safe.
+ *
+ * @author Elex
+ */
+public final class JsonReader implements Closeable {
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int pos = 0;
+	private int limit = 0;
+	private long offset = 0;
+
+	private int[] stack = new int[32];
+	private String[] names = new String[32];
+	private int[] indices = new int[32];
+	private int depth = 0;
+	private Token peeked = null;
+	private final StringBuilder text = new StringBuilder();
+	private boolean multipleValues = false;
+	private ByteArrayOutputStream capture = null;
+	private int captureFrom;
+
+	/**
+	 * @param in UTF-8 JSON
+	 */
+	public JsonReader(@NotNull final InputStream in) {
+		this(in, 8192);
+	}
+
+	/**
+	 * @param in         UTF-8 JSON
+	 * @param bufferSize bytes read from the stream at a time
+	 */
+	public JsonReader(@NotNull final InputStream in, final int bufferSize) {
+		if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+		this.in = in;
+		this.buffer = new byte[bufferSize];
+		push(EMPTY_DOCUMENT);
+	}
+
+	/**
+	 * @param multipleValues whether to read several top-level values one after another, as in NDJSON
+	 */
+	public void setMultipleValues(final boolean multipleValues) {
+		this.multipleValues = multipleValues;
+	}
+
+	/**
+	 * @return type of the next token, without consuming it
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public Token peek() throws IOException {
+		if (null == peeked) peeked = doPeek();
+		return peeked;
+	}
+
+	/**
+	 * @return true if the current object or array has more elements
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public boolean hasNext() throws IOException {
+		final Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		peeked = null;
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		peeked = null;
+		depth--;
+		afterValue();
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		peeked = null;
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		peeked = null;
+		depth--;
+		afterValue();
+	}
+
+	/**
+	 * @return name of the next member of the current object
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		peeked = null;
+		final String name = readString();
+		names[depth - 1] = name;
+		return name;
+	}
+
+	/**
+	 * @return string, or the text of a number
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public String nextString() throws IOException {
+		final Token token = peek();
+		final String value;
+		if (token == Token.STRING) {
+			value = readString();
+		} else if (token == Token.NUMBER) {
+			value = readNumber();
+		} else {
+			throw syntax("Expected STRING but was " + token);
+		}
+		peeked = null;
+		afterValue();
+		return value;
+	}
+
+	public boolean nextBoolean() throws IOException {
+		expect(Token.BOOLEAN);
+		final boolean value = buffer[pos] == 't';
+		literal(value ? "true" : "false");
+		peeked = null;
+		afterValue();
+		return value;
+	}
+
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+		literal("null");
+		peeked = null;
+		afterValue();
+	}
+
+	public long nextLong() throws IOException {
+		expect(Token.NUMBER);
+		final String number = readNumber();
+		long value;
+		try {
+			value = Long.parseLong(number);
+		} catch (NumberFormatException e) {
+			try {
+				value = new BigDecimal(number).longValueExact();
+			} catch (NumberFormatException | ArithmeticException e1) {
+				throw syntax("Expected a long but was " + number);
+			}
+		}
+		peeked = null;
+		afterValue();
+		return value;
+	}
+
+	public int nextInt() throws IOException {
+		final long value = nextLong();
+		if (value != (int) value) throw syntax("Expected an int but was " + value);
+		return (int) value;
+	}
+
+	public double nextDouble() throws IOException {
+		expect(Token.NUMBER);
+		final String number = readNumber();
+		final double value;
+		try {
+			value = Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			throw syntax("Malformed number " + number);
+		}
+		peeked = null;
+		afterValue();
+		return value;
+	}
+
+	/**
+	 * Skip the next value, with all of its children, without allocating
+	 *
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public void skipValue() throws IOException {
+		int count = 0;
+		do {
+			final Token token = peek();
+			switch (token) {
+				case BEGIN_OBJECT:
+					push(EMPTY_OBJECT);
+					count++;
+					break;
+				case BEGIN_ARRAY:
+					push(EMPTY_ARRAY);
+					count++;
+					break;
+				case END_OBJECT:
+				case END_ARRAY:
+					if (count == 0) throw syntax("Expected a value but was " + token);
+					depth--;
+					count--;
+					break;
+				case NAME:
+					if (count == 0) throw syntax("Expected a value but was " + token);
+					readString(null);
+					break;
+				case STRING:
+					readString(null);
+					break;
+				case NUMBER:
+					while (pos < limit || fill()) {
+						if (!isNumberByte(buffer[pos])) break;
+						pos++;
+					}
+					break;
+				case BOOLEAN:
+					literal(buffer[pos] == 't' ? "true" : "false");
+					break;
+				case NULL:
+					literal("null");
+					break;
+				default:
+					throw syntax("Expected a value but was " + token);
+			}
+			peeked = null;
+		} while (count > 0);
+		afterValue();
+	}
+
+	/**
+	 * Skip the next value, returning its bytes as they are, for parsing elsewhere
+	 *
+	 * @return UTF-8 JSON of the value
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public byte[] readRawValue() throws IOException {
+		final Token token = peek();
+		// the opening byte of these has been consumed by peek()
+		captureFrom = token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY || token == Token.STRING ? pos - 1 : pos;
+		capture = new ByteArrayOutputStream();
+		try {
+			skipValue();
+			capture.write(buffer, captureFrom, pos - captureFrom);
+			return capture.toByteArray();
+		} finally {
+			capture = null;
+		}
+	}
+
+	/**
+	 * Move to the value at a JSON Pointer, skipping what comes before it.
+	 * The containers on the way are left open.
+	 *
+	 * @param pointer JSON Pointer (RFC 6901), relative to the next value
+	 * @return true if found, false if not, with the reader somewhere in the document
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public boolean seek(@NotNull final String pointer) throws IOException {
+		if (pointer.isEmpty()) return true;
+		if (pointer.charAt(0) != '/') throw new IllegalArgumentException("Not a JSON Pointer: " + pointer);
+		for (String token : pointer.substring(1).split("/", -1)) {
+			token = token.replace("~1", "/").replace("~0", "~");
+			final Token next = peek();
+			if (next == Token.BEGIN_OBJECT) {
+				beginObject();
+				while (true) {
+					if (!hasNext()) return false;
+					if (nextName().equals(token)) break;
+					skipValue();
+				}
+			} else if (next == Token.BEGIN_ARRAY) {
+				final int index;
+				try {
+					index = Integer.parseInt(token);
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				if (index < 0) return false;
+				beginArray();
+				for (int i = 0; i < index; i++) {
+					if (!hasNext()) return false;
+					skipValue();
+				}
+				if (!hasNext()) return false;
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next value as org.json
+	 *
+	 * @return {@link JSONObject}, {@link JSONArray}, String, Integer, Long, BigInteger, Double, BigDecimal, Boolean, or {@link JSONObject#NULL}
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public Object readValue() throws IOException {
+		final Token token = peek();
+		switch (token) {
+			case BEGIN_OBJECT: {
+				final JSONObject object = new JSONObject();
+				beginObject();
+				while (hasNext()) {
+					final String name = nextName();
+					object.put(name, readValue());
+				}
+				endObject();
+				return object;
+			}
+			case BEGIN_ARRAY: {
+				final JSONArray array = new JSONArray();
+				beginArray();
+				while (hasNext()) {
+					array.put(readValue());
+				}
+				endArray();
+				return array;
+			}
+			case STRING:
+				return nextString();
+			case NUMBER: {
+				final String number = readNumber();
+				final Object value = toNumber(number);
+				peeked = null;
+				afterValue();
+				return value;
+			}
+			case BOOLEAN:
+				return nextBoolean();
+			case NULL:
+				nextNull();
+				return JSONObject.NULL;
+			default:
+				throw syntax("Expected a value but was " + token);
+		}
+	}
+
+	/**
+	 * Read the next value, keeping only the parts at the given pointers, like "/items/0/name".
+	 * The rest is skipped, not built.
+	 *
+	 * @param pointers JSON Pointers (RFC 6901), relative to the next value; "" for the whole of it
+	 * @return values by pointer, in document order, for the pointers found
+	 * @throws IOException on read failure or malformed JSON
+	 */
+	public Map<String, Object> readPointers(@NotNull final Collection<String> pointers) throws IOException {
+		final Set<String> wanted = new HashSet<>();
+		for (String pointer : pointers) {
+			if (!pointer.isEmpty() && pointer.charAt(0) != '/') {
+				throw new IllegalArgumentException("Not a JSON Pointer: " + pointer);
+			}
+			wanted.add(pointer);
+		}
+		final Map<String, Object> found = new LinkedHashMap<>();
+		readPointers("", wanted, found);
+		return found;
+	}
+
+	private void readPointers(final String path, final Set<String> wanted, final Map<String, Object> found) throws IOException {
+		if (wanted.contains(path)) {
+			found.put(path, readValue());
+			return;
+		}
+		if (!isPrefix(path, wanted)) {
+			skipValue();
+			return;
+		}
+		final Token token = peek();
+		if (token == Token.BEGIN_OBJECT) {
+			beginObject();
+			while (hasNext()) {
+				final String name = nextName();
+				readPointers(path + '/' + escape(name), wanted, found);
+			}
+			endObject();
+		} else if (token == Token.BEGIN_ARRAY) {
+			beginArray();
+			for (int i = 0; hasNext(); i++) {
+				readPointers(path + '/' + i, wanted, found);
+			}
+			endArray();
+		} else {
+			skipValue();
+		}
+	}
+
+	private static boolean isPrefix(final String path, final Set<String> wanted) {
+		for (String pointer : wanted) {
+			if (pointer.length() > path.length() && pointer.startsWith(path)
+					&& pointer.charAt(path.length()) == '/') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return JSON Pointer of the current position, "" at the top
+	 */
+	public String getPath() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < depth; i++) {
+			switch (stack[i]) {
+				case EMPTY_ARRAY:
+				case NONEMPTY_ARRAY:
+					sb.append('/').append(indices[i]);
+					break;
+				default:
+					if (null != names[i]) sb.append('/').append(escape(names[i]));
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		peeked = null;
+		depth = 0;
+		in.close();
+	}
+
+	private Token doPeek() throws IOException {
+		final int scope = stack[depth - 1];
+		int c;
+		switch (scope) {
+			case EMPTY_ARRAY:
+				stack[depth - 1] = NONEMPTY_ARRAY;
+				if (peekByte() == ']') {
+					pos++;
+					return Token.END_ARRAY;
+				}
+				break;
+			case NONEMPTY_ARRAY:
+				c = nextByte();
+				if (c == ']') return Token.END_ARRAY;
+				if (c != ',') throw syntax("Expected ',' or ']'");
+				break;
+			case EMPTY_OBJECT:
+			case NONEMPTY_OBJECT:
+				c = nextByte();
+				if (c == '}') return Token.END_OBJECT;
+				if (scope == NONEMPTY_OBJECT) {
+					if (c != ',') throw syntax("Expected ',' or '}'");
+					c = nextByte();
+				}
+				if (c != '"') throw syntax("Expected a name");
+				stack[depth - 1] = DANGLING_NAME;
+				return Token.NAME;
+			case DANGLING_NAME:
+				if (nextByte() != ':') throw syntax("Expected ':'");
+				stack[depth - 1] = NONEMPTY_OBJECT;
+				break;
+			case EMPTY_DOCUMENT:
+				stack[depth - 1] = NONEMPTY_DOCUMENT;
+				skipByteOrderMark();
+				break;
+			default:
+				if (peekByte() < 0) return Token.END_DOCUMENT;
+				if (!multipleValues) throw syntax("Data after the end of the document");
+		}
+		c = peekByte();
+		switch (c) {
+			case '{':
+				pos++;
+				return Token.BEGIN_OBJECT;
+			case '[':
+				pos++;
+				return Token.BEGIN_ARRAY;
+			case '"':
+				pos++;
+				return Token.STRING;
+			case 't':
+			case 'f':
+				return Token.BOOLEAN;
+			case 'n':
+				return Token.NULL;
+			case -1:
+				throw new EOFException("End of input at " + getPath());
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) return Token.NUMBER;
+				throw syntax("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	private void expect(final Token token) throws IOException {
+		final Token actual = peek();
+		if (actual != token) throw syntax("Expected " + token + " but was " + actual);
+	}
+
+	private void push(final int scope) {
+		if (depth == stack.length) {
+			stack = Arrays.copyOf(stack, depth * 2);
+			names = Arrays.copyOf(names, depth * 2);
+			indices = Arrays.copyOf(indices, depth * 2);
+		}
+		stack[depth] = scope;
+		names[depth] = null;
+		indices[depth] = 0;
+		depth++;
+	}
+
+	private void afterValue() {
+		if (depth > 0) indices[depth - 1]++;
+	}
+
+	private boolean fill() throws IOException {
+		if (null != capture) {
+			capture.write(buffer, captureFrom, limit - captureFrom);
+			captureFrom = 0;
+		}
+		offset += limit;
+		pos = 0;
+		limit = 0;
+		int n;
+		do {
+			n = in.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		if (n < 0) return false;
+		limit = n;
+		return true;
+	}
+
+	/**
+	 * @return next byte other than white space, not consumed, or -1 at the end
+	 */
+	private int peekByte() throws IOException {
+		while (pos < limit || fill()) {
+			final byte b = buffer[pos];
+			if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+				pos++;
+			} else {
+				return b & 0xff;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return next byte other than white space, consumed
+	 */
+	private int nextByte() throws IOException {
+		final int c = peekByte();
+		if (c < 0) throw new EOFException("End of input at " + getPath());
+		pos++;
+		return c;
+	}
+
+	private int readByte() throws IOException {
+		if (pos >= limit && !fill()) throw new EOFException("End of input at " + getPath());
+		return buffer[pos++] & 0xff;
+	}
+
+	private void skipByteOrderMark() throws IOException {
+		if (peekByte() == 0xef) {
+			pos++;
+			if (readByte() != 0xbb || readByte() != 0xbf) throw syntax("Malformed byte order mark");
+		}
+	}
+
+	private void literal(final String literal) throws IOException {
+		for (int i = 0; i < literal.length(); i++) {
+			if (readByte() != literal.charAt(i)) throw syntax("Expected " + literal);
+		}
+	}
+
+	private String readString() throws IOException {
+		text.setLength(0);
+		readString(text);
+		return text.toString();
+	}
+
+	/**
+	 * Read the rest of a string, after the opening quote
+	 *
+	 * @param sb where to decode it, or null to skip it
+	 */
+	private void readString(final StringBuilder sb) throws IOException {
+		while (true) {
+			// plain ascii in bulk
+			int start = pos;
+			while (pos < limit) {
+				final byte b = buffer[pos];
+				if (b == '"' || b == '\\' || b < 0x20) break;
+				pos++;
+			}
+			if (null != sb) {
+				for (int i = start; i < pos; i++) sb.append((char) buffer[i]);
+			}
+			final int c = readByte();
+			if (c == '"') return;
+			if (c == '\\') {
+				final char escaped = readEscape();
+				if (null != sb) sb.append(escaped);
+			} else if (c < 0x20) {
+				throw syntax("Control character in a string");
+			} else if (c < 0x80) {
+				if (null != sb) sb.append((char) c);
+			} else if (null != sb) {
+				sb.appendCodePoint(readUtf8(c));
+			} else {
+				readUtf8(c);
+			}
+		}
+	}
+
+	private char readEscape() throws IOException {
+		final int c = readByte();
+		switch (c) {
+			case '"':
+			case '\\':
+			case '/':
+				return (char) c;
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++) {
+					final int digit = Character.digit(readByte(), 16);
+					if (digit < 0) throw syntax("Malformed \\u escape");
+					value = (value << 4) | digit;
+				}
+				return (char) value;
+			default:
+				throw syntax("Malformed escape \\" + (char) c);
+		}
+	}
+
+	/**
+	 * @param first first byte of a multi-byte sequence
+	 * @return code point, or U+FFFD if malformed
+	 */
+	private int readUtf8(final int first) throws IOException {
+		final int more;
+		int cp;
+		if ((first & 0xe0) == 0xc0) {
+			more = 1;
+			cp = first & 0x1f;
+		} else if ((first & 0xf0) == 0xe0) {
+			more = 2;
+			cp = first & 0x0f;
+		} else if ((first & 0xf8) == 0xf0) {
+			more = 3;
+			cp = first & 0x07;
+		} else {
+			return 0xfffd;
+		}
+		for (int i = 0; i < more; i++) {
+			if (pos >= limit && !fill()) throw new EOFException("End of input at " + getPath());
+			final int b = buffer[pos] & 0xff;
+			if ((b & 0xc0) != 0x80) return 0xfffd;
+			pos++;
+			cp = (cp << 6) | (b & 0x3f);
+		}
+		return Character.isValidCodePoint(cp) ? cp : 0xfffd;
+	}
+
+	private String readNumber() throws IOException {
+		text.setLength(0);
+		while (pos < limit || fill()) {
+			final byte b = buffer[pos];
+			if (!isNumberByte(b)) break;
+			text.append((char) b);
+			pos++;
+		}
+		return text.toString();
+	}
+
+	private static boolean isNumberByte(final byte b) {
+		return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+	}
+
+	private Object toNumber(final String number) throws IOException {
+		try {
+			if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+				if (number.length() < 19) {
+					final long value = Long.parseLong(number);
+					if (value == (int) value) return (int) value;
+					return value;
+				}
+				return new BigInteger(number);
+			}
+			final double value = Double.parseDouble(number);
+			if (Double.isInfinite(value)) return new BigDecimal(number);
+			return value;
+		} catch (NumberFormatException e) {
+			throw syntax("Malformed number " + number);
+		}
+	}
+
+	private static String escape(final String name) {
+		if (name.indexOf('~') < 0 && name.indexOf('/') < 0) return name;
+		return name.replace("~", "~0").replace("/", "~1");
+	}
+
+	private IOException syntax(final String message) {
+		return new IOException(message + " at " + getPath() + ", byte " + (offset + pos));
+	}
+}
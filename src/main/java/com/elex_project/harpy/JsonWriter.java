@@ -0,0 +1,371 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes UTF-8 JSON straight to a byte stream, the counterpart of {@link JsonReader}.
+ * <pre>
+ * JsonWriter writer = new JsonWriter(os);
+ * writer.beginObject()
+ *         .name("id").value(42)
+ *         .name("tags").beginArray().value("a").value("b").endArray()
+ *         .endObject()
+ *         .flush();
+ * </pre>
+ * Not thread safe.
+ *
+ * @author Elex
+ */
+public final class JsonWriter implements Closeable, Flushable {
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int pos = 0;
+	private long count = 0;
+	private int[] stack = new int[32];
+	private int depth = 0;
+	private boolean multipleValues = false;
+
+	/**
+	 * @param out where to write
+	 */
+	public JsonWriter(@NotNull final OutputStream out) {
+		this(out, 8192);
+	}
+
+	/**
+	 * @param out        where to write
+	 * @param bufferSize bytes written to the stream at a time
+	 */
+	public JsonWriter(@NotNull final OutputStream out, final int bufferSize) {
+		if (bufferSize < 8) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+		this.out = out;
+		this.buffer = new byte[bufferSize];
+		push(EMPTY_DOCUMENT);
+	}
+
+	/**
+	 * @param multipleValues whether to write several top-level values, one per line, as in NDJSON
+	 */
+	public void setMultipleValues(final boolean multipleValues) {
+		this.multipleValues = multipleValues;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		beforeValue();
+		push(EMPTY_OBJECT);
+		write('{');
+		return this;
+	}
+
+	public JsonWriter endObject() throws IOException {
+		final int scope = stack[depth - 1];
+		if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) throw new IllegalStateException("Not in an object");
+		depth--;
+		write('}');
+		return this;
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		beforeValue();
+		push(EMPTY_ARRAY);
+		write('[');
+		return this;
+	}
+
+	public JsonWriter endArray() throws IOException {
+		final int scope = stack[depth - 1];
+		if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY) throw new IllegalStateException("Not in an array");
+		depth--;
+		write(']');
+		return this;
+	}
+
+	/**
+	 * @param name name of the next member of the current object
+	 * @return this
+	 * @throws IOException on write failure
+	 */
+	public JsonWriter name(@NotNull final String name) throws IOException {
+		final int scope = stack[depth - 1];
+		if (scope == NONEMPTY_OBJECT) {
+			write(',');
+		} else if (scope != EMPTY_OBJECT) {
+			throw new IllegalStateException("Not expecting a name");
+		}
+		string(name);
+		write(':');
+		stack[depth - 1] = DANGLING_NAME;
+		return this;
+	}
+
+	public JsonWriter value(@Nullable final String value) throws IOException {
+		if (null == value) return nullValue();
+		beforeValue();
+		string(value);
+		return this;
+	}
+
+	public JsonWriter value(final long value) throws IOException {
+		beforeValue();
+		ascii(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * @param value finite number
+	 * @return this
+	 * @throws IOException on write failure
+	 */
+	public JsonWriter value(final double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) throw new IllegalArgumentException("Not a JSON number: " + value);
+		beforeValue();
+		if (value == (long) value && Math.abs(value) < 1e15) {
+			ascii(Long.toString((long) value));
+		} else {
+			ascii(Double.toString(value));
+		}
+		return this;
+	}
+
+	public JsonWriter value(final boolean value) throws IOException {
+		beforeValue();
+		ascii(value ? "true" : "false");
+		return this;
+	}
+
+	public JsonWriter value(@Nullable final Number value) throws IOException {
+		if (null == value) return nullValue();
+		if (value instanceof Double || value instanceof Float) return value(value.doubleValue());
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return value(value.longValue());
+		}
+		beforeValue();
+		ascii(value.toString());
+		return this;
+	}
+
+	public JsonWriter nullValue() throws IOException {
+		beforeValue();
+		ascii("null");
+		return this;
+	}
+
+	/**
+	 * Write a value of any of the usual kinds: org.json values, maps, iterables, arrays of objects,
+	 * strings, numbers, booleans, or others by their toString()
+	 *
+	 * @param value value
+	 * @return this
+	 * @throws IOException on write failure
+	 */
+	public JsonWriter value(@Nullable final Object value) throws IOException {
+		if (null == value || JSONObject.NULL.equals(value)) return nullValue();
+		if (value instanceof String) return value((String) value);
+		if (value instanceof Number) return value((Number) value);
+		if (value instanceof Boolean) return value(((Boolean) value).booleanValue());
+		if (value instanceof JSONObject) {
+			final JSONObject object = (JSONObject) value;
+			beginObject();
+			for (String key : object.keySet()) {
+				name(key).value(object.opt(key));
+			}
+			return endObject();
+		}
+		if (value instanceof Map) {
+			beginObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				name(String.valueOf(entry.getKey())).value(entry.getValue());
+			}
+			return endObject();
+		}
+		if (value instanceof JSONArray || value instanceof Iterable) {
+			beginArray();
+			for (Object element : (Iterable<?>) value) {
+				value(element);
+			}
+			return endArray();
+		}
+		if (value instanceof Object[]) {
+			return value(Arrays.asList((Object[]) value));
+		}
+		if (value instanceof Enum) return value(((Enum<?>) value).name());
+		return value(value.toString());
+	}
+
+	/**
+	 * @return bytes written so far, flushed or not
+	 */
+	public long getCount() {
+		return count + pos;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		out.close();
+	}
+
+	private void beforeValue() throws IOException {
+		switch (stack[depth - 1]) {
+			case EMPTY_DOCUMENT:
+				stack[depth - 1] = NONEMPTY_DOCUMENT;
+				break;
+			case EMPTY_ARRAY:
+				stack[depth - 1] = NONEMPTY_ARRAY;
+				break;
+			case NONEMPTY_ARRAY:
+				write(',');
+				break;
+			case DANGLING_NAME:
+				stack[depth - 1] = NONEMPTY_OBJECT;
+				break;
+			case NONEMPTY_DOCUMENT:
+				if (!multipleValues) throw new IllegalStateException("JSON must have only one top-level value");
+				write('\n');
+				break;
+			default:
+				throw new IllegalStateException("Expecting a name");
+		}
+	}
+
+	private void push(final int scope) {
+		if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+		stack[depth++] = scope;
+	}
+
+	private void write(final int b) throws IOException {
+		if (pos >= buffer.length - 1) flushBuffer();
+		buffer[pos++] = (byte) b;
+	}
+
+	private void ascii(final String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) write(s.charAt(i));
+	}
+
+	private void string(final String s) throws IOException {
+		write('"');
+		final int length = s.length();
+		for (int i = 0; i < length; i++) {
+			final char c = s.charAt(i);
+			if (pos >= buffer.length - 6) flushBuffer();
+			if (c < 0x80) {
+				if (c == '"' || c == '\\') {
+					buffer[pos++] = '\\';
+					buffer[pos++] = (byte) c;
+				} else if (c >= 0x20) {
+					buffer[pos++] = (byte) c;
+				} else {
+					escapeControl(c);
+				}
+			} else if (c < 0x800) {
+				buffer[pos++] = (byte) (0xc0 | (c >> 6));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				buffer[pos++] = '?';
+			} else {
+				buffer[pos++] = (byte) (0xe0 | (c >> 12));
+				buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		write('"');
+	}
+
+	private void escapeControl(final char c) {
+		buffer[pos++] = '\\';
+		switch (c) {
+			case '\b':
+				buffer[pos++] = 'b';
+				break;
+			case '\f':
+				buffer[pos++] = 'f';
+				break;
+			case '\n':
+				buffer[pos++] = 'n';
+				break;
+			case '\r':
+				buffer[pos++] = 'r';
+				break;
+			case '\t':
+				buffer[pos++] = 't';
+				break;
+			default:
+				buffer[pos++] = 'u';
+				buffer[pos++] = '0';
+				buffer[pos++] = '0';
+				buffer[pos++] = HEX[c >> 4];
+				buffer[pos++] = HEX[c & 0xf];
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (pos > 0) {
+			out.write(buffer, 0, pos);
+			count += pos;
+			pos = 0;
+		}
+	}
+}
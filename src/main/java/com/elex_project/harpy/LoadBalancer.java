@@ -0,0 +1,361 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side load balancing of a logical service over several base uris.
+ * <pre>
+ * LoadBalancer users = LoadBalancer.builder()
+ *         .endpoint("http://10.0.0.1:8080/api")
+ *         .endpoint("http://10.0.0.2:8080/api")
+ *         .strategy(LoadBalancer.Strategy.PEAK_EWMA)
+ *         .build();
+ * HttpRequest&lt;String&gt; request = users.create(HttpMethod.GET, "users/42");
+ * request.send(handler);
+ * </pre>
+ * An endpoint is ejected for a while after consecutive failures, an exception or a 5xx status.
+ * Once back, a single failure ejects it again. If every endpoint is ejected, all of them are used.
+ *
+ * @author Elex
+ */
+public final class LoadBalancer {
+	public enum Strategy {
+		/**
+		 * In turn
+		 */
+		ROUND_ROBIN,
+		/**
+		 * The one with fewer requests in flight, of two picked at random
+		 */
+		POWER_OF_TWO_CHOICES,
+		/**
+		 * The one with lower peak EWMA latency times requests in flight, of two picked at random
+		 */
+		PEAK_EWMA
+	}
+
+	private final List<Endpoint> endpoints;
+	private final Strategy strategy;
+	private final int maxFailures;
+	private final long ejectionTime;
+	private final double decayTime;
+	private final AtomicInteger next = new AtomicInteger();
+
+	private LoadBalancer(final Builder builder) {
+		if (builder.endpoints.isEmpty()) throw new IllegalArgumentException("No endpoints");
+		final List<Endpoint> endpoints = new ArrayList<>();
+		for (String base : builder.endpoints) endpoints.add(new Endpoint(base));
+		this.endpoints = Collections.unmodifiableList(endpoints);
+		this.strategy = builder.strategy;
+		this.maxFailures = builder.maxFailures;
+		this.ejectionTime = TimeUnit.MILLISECONDS.toNanos(builder.ejectionTime);
+		this.decayTime = TimeUnit.MILLISECONDS.toNanos(builder.decayTime);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Create a request to the selected endpoint
+	 *
+	 * @param method GET, HEAD, POST, PUT or DELETE
+	 * @param path   path relative to the base uri, with the query if any
+	 * @param <T>    type of a response
+	 * @return request
+	 * @throws IOException on failure
+	 */
+	public <T> HttpRequest<T> create(@NotNull final HttpMethod method, @NotNull final String path) throws IOException {
+		final Endpoint endpoint = select();
+		final URL url = endpoint.resolve(path);
+		final HttpRequest<T> request;
+		switch (method) {
+			case GET:
+				request = new HttpGetRequest<>(url);
+				break;
+			case HEAD:
+				request = new HttpHeadRequest<>(url);
+				break;
+			case POST:
+				request = new HttpPostRequest<>(url);
+				break;
+			case PUT:
+				request = new HttpPutRequest<>(url);
+				break;
+			case DELETE:
+				request = new HttpDeleteRequest<>(url);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported method: " + method);
+		}
+		request.setEndpoint(endpoint);
+		return request;
+	}
+
+	/**
+	 * Select an endpoint, pass it to {@link HttpRequest#setEndpoint(Endpoint)} of the request to it.
+	 *
+	 * @return endpoint
+	 */
+	public Endpoint select() {
+		final long now = System.nanoTime();
+		List<Endpoint> candidates = endpoints;
+		int available = 0;
+		for (Endpoint endpoint : endpoints) {
+			if (!endpoint.isEjected(now)) available++;
+		}
+		if (available > 0 && available < endpoints.size()) {
+			candidates = new ArrayList<>(available);
+			for (Endpoint endpoint : endpoints) {
+				if (!endpoint.isEjected(now)) candidates.add(endpoint);
+			}
+		}
+		final int size = candidates.size();
+		if (size == 1) return candidates.get(0);
+
+		if (strategy == Strategy.ROUND_ROBIN) {
+			return candidates.get((next.getAndIncrement() & Integer.MAX_VALUE) % size);
+		}
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final int i = random.nextInt(size);
+		int j = random.nextInt(size - 1);
+		if (j >= i) j++;
+		final Endpoint a = candidates.get(i);
+		final Endpoint b = candidates.get(j);
+		if (strategy == Strategy.POWER_OF_TWO_CHOICES) {
+			return a.inFlight.get() <= b.inFlight.get() ? a : b;
+		}
+		return a.getCost(now) <= b.getCost(now) ? a : b;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadBalancer{" + strategy + ", " + endpoints + "}";
+	}
+
+	/**
+	 * Base uri of one instance of the service, with its statistics
+	 */
+	public final class Endpoint {
+		private final String base;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicInteger failures = new AtomicInteger();
+		private volatile long ejectedUntil = 0;
+		private volatile boolean ejected = false;
+		// peak EWMA of the latency, in nanoseconds
+		private double latency = 0;
+		private long stamp = System.nanoTime();
+
+		private Endpoint(final String base) {
+			this.base = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+		}
+
+		/**
+		 * @param path path relative to the base uri, with the query if any
+		 * @return url
+		 * @throws MalformedURLException if not a valid url
+		 */
+		public URL resolve(@NotNull final String path) throws MalformedURLException {
+			if (path.isEmpty()) return new URL(base + "/");
+			return new URL(path.charAt(0) == '/' ? base + path : base + "/" + path);
+		}
+
+		public String getBase() {
+			return base;
+		}
+
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * @return consecutive failures
+		 */
+		public int getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * @return peak EWMA latency in milliseconds
+		 */
+		public synchronized double getLatency() {
+			return latency / 1000000.0;
+		}
+
+		public boolean isEjected() {
+			return isEjected(System.nanoTime());
+		}
+
+		void started() {
+			inFlight.incrementAndGet();
+		}
+
+		/**
+		 * A failure is one before the status arrived, or a 5xx.
+		 * A 4xx is the answer of a healthy endpoint, even though {@link java.net.HttpURLConnection#getInputStream()} throws on it.
+		 */
+		void finished(final HttpTrace trace) {
+			finished(trace.duration, trace.status <= 0 ? null != trace.failure : trace.status >= 500);
+		}
+
+		void finished(final long rtt, final boolean failed) {
+			inFlight.decrementAndGet();
+			observe(rtt);
+			if (!failed) {
+				failures.set(0);
+				ejected = false;
+			} else if (failures.incrementAndGet() >= maxFailures) {
+				ejectedUntil = System.nanoTime() + ejectionTime;
+				ejected = true;
+				// a single failure ejects it again once back
+				failures.set(maxFailures - 1);
+			}
+		}
+
+		private boolean isEjected(final long now) {
+			return ejected && now - ejectedUntil < 0;
+		}
+
+		private synchronized void observe(final long rtt) {
+			final long now = System.nanoTime();
+			if (rtt > latency) {
+				latency = rtt;
+			} else {
+				final double weight = Math.exp(-(now - stamp) / decayTime);
+				latency = latency * weight + rtt * (1 - weight);
+			}
+			stamp = now;
+		}
+
+		private synchronized double getCost(final long now) {
+			// decays toward zero while idle, so a slow endpoint gets a chance again
+			final double decayed = latency * Math.exp(-Math.max(0, now - stamp) / decayTime);
+			final int n = inFlight.get();
+			return decayed * (n + 1) + n;
+		}
+
+		@Override
+		public String toString() {
+			return base;
+		}
+	}
+
+	public static class Builder {
+		private final List<String> endpoints = new ArrayList<>();
+		private Strategy strategy = Strategy.POWER_OF_TWO_CHOICES;
+		private int maxFailures = 5;
+		private long ejectionTime = 30000;
+		private long decayTime = 10000;
+
+		public Builder endpoint(@NotNull final Uri base) {
+			return endpoint(base.toString());
+		}
+
+		/**
+		 * @param base base uri, like http://10.0.0.1:8080/api
+		 * @return builder
+		 */
+		public Builder endpoint(@NotNull final String base) {
+			try {
+				new URL(base);
+			} catch (MalformedURLException e) {
+				throw new IllegalArgumentException("Invalid endpoint: " + base, e);
+			}
+			endpoints.add(base);
+			return this;
+		}
+
+		/**
+		 * @param strategy power of two choices by default
+		 * @return builder
+		 */
+		public Builder strategy(@NotNull final Strategy strategy) {
+			this.strategy = strategy;
+			return this;
+		}
+
+		/**
+		 * @param maxFailures consecutive failures to eject an endpoint after, 5 by default
+		 * @return builder
+		 */
+		public Builder maxFailures(final int maxFailures) {
+			if (maxFailures < 1) throw new IllegalArgumentException("maxFailures: " + maxFailures);
+			this.maxFailures = maxFailures;
+			return this;
+		}
+
+		/**
+		 * @param ejectionTime milliseconds, 30 seconds by default
+		 * @return builder
+		 */
+		public Builder ejectionTime(final long ejectionTime) {
+			if (ejectionTime < 0) throw new IllegalArgumentException("ejectionTime: " + ejectionTime);
+			this.ejectionTime = ejectionTime;
+			return this;
+		}
+
+		/**
+		 * @param decayTime milliseconds for the latency of peak EWMA to decay by 1/e, 10 seconds by default
+		 * @return builder
+		 */
+		public Builder decayTime(final long decayTime) {
+			if (decayTime <= 0) throw new IllegalArgumentException("decayTime: " + decayTime);
+			this.decayTime = decayTime;
+			return this;
+		}
+
+		public LoadBalancer build() {
+			return new LoadBalancer(this);
+		}
+	}
+}
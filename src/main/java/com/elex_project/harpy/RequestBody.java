@@ -0,0 +1,199 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Body of a POST or PUT request, written straight to the connection.
+ *
+ * @author Elex
+ * @see HttpPostRequest#setBody(RequestBody)
+ */
+public interface RequestBody {
+
+	/**
+	 * Writes a JSON body, value by value
+	 */
+	@FunctionalInterface
+	public interface JsonGenerator {
+		/**
+		 * @param writer writer over the body, flushed afterwards
+		 * @throws IOException on write failure
+		 */
+		public void write(JsonWriter writer) throws IOException;
+	}
+
+	/**
+	 * @return value of Content-Type, or null to leave it
+	 */
+	@Nullable
+	public String getContentType();
+
+	/**
+	 * @return size in bytes, or -1 if not known before writing, to be sent chunked
+	 */
+	public default long getContentLength() {
+		return -1;
+	}
+
+	/**
+	 * @param os stream of the request body; do not close it
+	 * @throws IOException on write failure
+	 */
+	public void writeTo(OutputStream os) throws IOException;
+
+	/**
+	 * @param bytes       body
+	 * @param contentType value of Content-Type
+	 * @return body of the bytes
+	 */
+	public static RequestBody of(@NotNull final byte[] bytes, @Nullable final String contentType) {
+		return new RequestBody() {
+			@Override
+			public String getContentType() {
+				return contentType;
+			}
+
+			@Override
+			public long getContentLength() {
+				return bytes.length;
+			}
+
+			@Override
+			public void writeTo(final OutputStream os) throws IOException {
+				os.write(bytes);
+			}
+		};
+	}
+
+	/**
+	 * @param value value
+	 * @param codec codec of the value
+	 * @param <T>   type of the value
+	 * @return application/json body, written by the codec as it is sent
+	 */
+	public static <T> RequestBody json(@Nullable final T value, @NotNull final JsonCodec<T> codec) {
+		return json(writer -> codec.write(writer, value));
+	}
+
+	/**
+	 * @param value {@link org.json.JSONObject}, {@link org.json.JSONArray}, Map, Iterable, or any other value
+	 *              of {@link JsonWriter#value(Object)}
+	 * @return application/json body, encoded as it is sent, without a string in between
+	 */
+	public static RequestBody json(@Nullable final Object value) {
+		return json(writer -> writer.value(value));
+	}
+
+	/**
+	 * @param generator writes the body
+	 * @return application/json body, sent chunked as it is generated
+	 */
+	public static RequestBody json(@NotNull final JsonGenerator generator) {
+		return new RequestBody() {
+			@Override
+			public String getContentType() {
+				return Mime.JSON.getMimeType() + "; charset=UTF-8";
+			}
+
+			@Override
+			public void writeTo(final OutputStream os) throws IOException {
+				final JsonWriter writer = new JsonWriter(os);
+				generator.write(writer);
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * @param records records, iterated once as the body is sent
+	 * @param codec   codec of a record
+	 * @param <T>     type of a record
+	 * @return application/json array of the records
+	 */
+	public static <T> RequestBody jsonArray(@NotNull final Iterable<T> records, @NotNull final JsonCodec<T> codec) {
+		return json(writer -> {
+			writer.beginArray();
+			for (T record : records) codec.write(writer, record);
+			writer.endArray();
+		});
+	}
+
+	/**
+	 * @param records records, iterated once as the body is sent
+	 * @param codec   codec of a record
+	 * @param <T>     type of a record
+	 * @return application/x-ndjson body, a record per line
+	 */
+	public static <T> RequestBody ndjson(@NotNull final Iterable<T> records, @NotNull final JsonCodec<T> codec) {
+		return new RequestBody() {
+			@Override
+			public String getContentType() {
+				return "application/x-ndjson; charset=UTF-8";
+			}
+
+			@Override
+			public void writeTo(final OutputStream os) throws IOException {
+				final JsonWriter writer = new JsonWriter(os);
+				writer.setMultipleValues(true);
+				for (T record : records) codec.write(writer, record);
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * @param xml document or element
+	 * @return application/xml body, serialized as it is sent, chunked
+	 */
+	public static RequestBody xml(@NotNull final Node xml) {
+		return new RequestBody() {
+			@Override
+			public String getContentType() {
+				return Mime.XML.getMimeType() + "; charset=UTF-8";
+			}
+
+			@Override
+			public void writeTo(final OutputStream os) throws IOException {
+				Xmlz.write(xml, os);
+			}
+		};
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Response body held in memory up to a threshold, with the rest spilled to a temp file.
+ * <p>
+ * Memory is reserved from the global budget of {@link ResponseLimits} as the buffer grows.
+ * Close it when done, to delete the file and give the memory back.
+ *
+ * @author Elex
+ */
+@Slf4j
+public final class ResponseBuffer implements Closeable {
+	private static final int CHUNK = 8192;
+
+	private final ResponseLimits limits;
+	private byte[] memory = new byte[0];
+	private int memoryLength = 0;
+	private long reserved = 0;
+	@Nullable
+	private Path file = null;
+	private long length = 0;
+	private boolean closed = false;
+
+	private ResponseBuffer(final ResponseLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Read a body to the end
+	 *
+	 * @param is            body
+	 * @param contentLength expected length, or -1 if unknown
+	 * @param limits        limits
+	 * @return buffer
+	 * @throws IOException if failed to read, or the body is larger than the limit
+	 */
+	public static ResponseBuffer read(@NotNull final InputStream is, final long contentLength,
+	                                  @NotNull final ResponseLimits limits) throws IOException {
+		if (limits.getMaxBytes() >= 0 && contentLength > limits.getMaxBytes()) {
+			throw tooLarge(contentLength, limits);
+		}
+		final ResponseBuffer buffer = new ResponseBuffer(limits);
+		try {
+			buffer.fill(is, contentLength);
+			return buffer;
+		} catch (IOException | RuntimeException e) {
+			buffer.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return size of the body
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return whether a part of the body is in a temp file
+	 */
+	public boolean isSpilled() {
+		return null != file;
+	}
+
+	/**
+	 * @return new stream over the body, the memory part followed by the file part
+	 * @throws IOException if failed to open the file
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (closed) throw new IOException("Closed");
+		final InputStream head = new ByteArrayInputStream(memory, 0, memoryLength);
+		return null == file ? head : new SequenceInputStream(head, Files.newInputStream(file));
+	}
+
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		memory = new byte[0];
+		ResponseLimits.release(reserved);
+		reserved = 0;
+		if (null != file) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				log.warn("Failed to delete {}", file, e);
+			}
+		}
+	}
+
+	private void fill(final InputStream is, final long contentLength) throws IOException {
+		final int threshold = limits.getMemoryThreshold();
+		int capacity = (int) Math.min(threshold, contentLength >= 0 ? contentLength : CHUNK);
+		if (grow(capacity)) {
+			while (true) {
+				if (memoryLength == memory.length) {
+					if (memory.length >= threshold) break;
+					final int more = is.read();
+					if (more < 0) return;
+					if (!grow((int) Math.min(threshold, Math.max(CHUNK, memory.length * 2L)))) {
+						spill(is, more);
+						return;
+					}
+					memory[memoryLength++] = (byte) more;
+					count(1);
+				}
+				final int n = is.read(memory, memoryLength, memory.length - memoryLength);
+				if (n < 0) return;
+				memoryLength += n;
+				count(n);
+			}
+		}
+		final int next = is.read();
+		if (next >= 0) spill(is, next);
+	}
+
+	/**
+	 * @return false if the memory budget is not there
+	 */
+	private boolean grow(final int capacity) throws IOException {
+		if (capacity <= memory.length) return capacity > 0 || limits.getMemoryThreshold() > 0;
+		try {
+			if (!ResponseLimits.reserve(capacity - memory.length, limits.getBudgetWait())) return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for the memory budget");
+		}
+		reserved += capacity - memory.length;
+		memory = Arrays.copyOf(memory, capacity);
+		return true;
+	}
+
+	private void spill(final InputStream is, final int first) throws IOException {
+		file = null == limits.getTempDirectory()
+				? Files.createTempFile("harpy-", ".body")
+				: Files.createTempFile(limits.getTempDirectory(), "harpy-", ".body");
+		try (OutputStream os = Files.newOutputStream(file)) {
+			os.write(first);
+			count(1);
+			final byte[] chunk = new byte[CHUNK];
+			int n;
+			while ((n = is.read(chunk)) >= 0) {
+				os.write(chunk, 0, n);
+				count(n);
+			}
+		}
+	}
+
+	private void count(final int n) throws IOException {
+		length += n;
+		if (limits.getMaxBytes() >= 0 && length > limits.getMaxBytes()) throw tooLarge(length, limits);
+	}
+
+	private static IOException tooLarge(final long length, final ResponseLimits limits) {
+		return new IOException("Response body too large: " + length + " > " + limits.getMaxBytes());
+	}
+}
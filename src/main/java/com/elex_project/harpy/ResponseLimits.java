@@ -0,0 +1,254 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps on the response bytes buffered by a handler, and the process wide memory budget of the bodies held in memory.
+ * The budget covers {@link ResponseBuffer}s, the bodies read by the string and json handlers while they are read and decoded,
+ * and the buffers of {@link HttpByteBufferResponseHandler} until they are released.
+ * <pre>
+ * ResponseLimits.setGlobalMemoryLimit(256 * 1024 * 1024);
+ * ResponseLimits.setDefault(ResponseLimits.builder()
+ *         .maxBytes(100 * 1024 * 1024)
+ *         .build());
+ * </pre>
+ *
+ * @author Elex
+ */
+public final class ResponseLimits {
+	private static final ResponseLimits UNLIMITED = builder().build();
+	private static volatile ResponseLimits defaultLimits = UNLIMITED;
+
+	private static final ReentrantLock LOCK = new ReentrantLock();
+	private static final Condition RELEASED = LOCK.newCondition();
+	private static long globalLimit = 0;
+	private static long globalUsed = 0;
+
+	private final long maxBytes;
+	private final int memoryThreshold;
+	private final long budgetWait;
+	@Nullable
+	private final Path tempDirectory;
+
+	private ResponseLimits(final Builder builder) {
+		this.maxBytes = builder.maxBytes;
+		this.memoryThreshold = builder.memoryThreshold;
+		this.budgetWait = TimeUnit.MILLISECONDS.toNanos(builder.budgetWait);
+		this.tempDirectory = builder.tempDirectory;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return limits of the handlers created without ones, unlimited unless set
+	 */
+	public static ResponseLimits getDefault() {
+		return defaultLimits;
+	}
+
+	/**
+	 * @param limits limits of the handlers created from now on without ones
+	 */
+	public static void setDefault(@NotNull final ResponseLimits limits) {
+		defaultLimits = limits;
+	}
+
+	/**
+	 * Bytes that all response bodies together may hold in memory.
+	 * A body waits for its share while reading, which slows down the reading from the socket.
+	 * If the wait is too long, a {@link ResponseBuffer} spills to disk, and the other handlers fail.
+	 *
+	 * @param bytes limit, 0 for none (default)
+	 */
+	public static void setGlobalMemoryLimit(final long bytes) {
+		if (bytes < 0) throw new IllegalArgumentException("bytes: " + bytes);
+		LOCK.lock();
+		try {
+			globalLimit = bytes;
+			RELEASED.signalAll();
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	public static long getGlobalMemoryLimit() {
+		LOCK.lock();
+		try {
+			return globalLimit;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * @return bytes held in memory by response bodies
+	 */
+	public static long getGlobalMemoryUsed() {
+		LOCK.lock();
+		try {
+			return globalUsed;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * @return maximum size of a body, -1 for unlimited
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return bytes of a body kept in memory, before the rest spills to a temp file
+	 */
+	public int getMemoryThreshold() {
+		return memoryThreshold;
+	}
+
+	@Nullable
+	public Path getTempDirectory() {
+		return tempDirectory;
+	}
+
+	long getBudgetWait() {
+		return budgetWait;
+	}
+
+	/**
+	 * @return true if reserved, false if not within the wait
+	 */
+	static boolean reserve(final long bytes, long wait) throws InterruptedException {
+		LOCK.lock();
+		try {
+			while (globalLimit > 0 && globalUsed + bytes > globalLimit) {
+				if (bytes > globalLimit || wait <= 0) return false;
+				wait = RELEASED.awaitNanos(wait);
+			}
+			globalUsed += bytes;
+			return true;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * For a body that can not spill to disk
+	 *
+	 * @throws IOException if there is no room within the wait
+	 */
+	static void reserveOrFail(final long bytes, final long wait) throws IOException {
+		try {
+			if (!reserve(bytes, wait)) {
+				throw new IOException("Response memory limit exceeded: " + bytes + " more bytes, limit " + getGlobalMemoryLimit());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for the memory budget");
+		}
+	}
+
+	static void release(final long bytes) {
+		if (bytes <= 0) return;
+		LOCK.lock();
+		try {
+			globalUsed -= bytes;
+			RELEASED.signalAll();
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	public static class Builder {
+		private long maxBytes = -1;
+		private int memoryThreshold = 1 << 20;
+		private long budgetWait = 1000;
+		@Nullable
+		private Path tempDirectory = null;
+
+		/**
+		 * @param maxBytes maximum size of a body, in memory and on disk; larger ones fail. -1 for unlimited (default)
+		 * @return builder
+		 */
+		public Builder maxBytes(final long maxBytes) {
+			if (maxBytes < -1) throw new IllegalArgumentException("maxBytes: " + maxBytes);
+			this.maxBytes = maxBytes;
+			return this;
+		}
+
+		/**
+		 * @param bytes bytes of a body kept in memory before spilling to disk, 1MB by default
+		 * @return builder
+		 */
+		public Builder memoryThreshold(final int bytes) {
+			if (bytes < 0) throw new IllegalArgumentException("memoryThreshold: " + bytes);
+			this.memoryThreshold = bytes;
+			return this;
+		}
+
+		/**
+		 * @param wait milliseconds to wait for the global memory budget, before spilling to disk or failing. 1 second by default
+		 * @return builder
+		 */
+		public Builder budgetWait(final long wait) {
+			if (wait < 0) throw new IllegalArgumentException("budgetWait: " + wait);
+			this.budgetWait = wait;
+			return this;
+		}
+
+		/**
+		 * @param directory directory of the temp files, or null for the default temp directory
+		 * @return builder
+		 */
+		public Builder tempDirectory(@Nullable final Path directory) {
+			this.tempDirectory = directory;
+			return this;
+		}
+
+		public ResponseLimits build() {
+			return new ResponseLimits(this);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 응답 바디와 응답 헤더를 함께 전달,
+ * {@link HttpResponseHandler#transform(InputStream)}만 재정의한 핸들러도 길이나 문자셋을 참고할 수 있도록
+ * <p>
+ * A handler that reads the body after {@link HttpRequest#send(HttpResponseHandler)} has returned
+ * {@link #defer(InputStream) defers} it, and the request is finished when the body is closed.
+ *
+ * @author Elex
+ */
+final class ResponseStream extends FilterInputStream {
+	private static final Runnable CLOSED = () -> {
+	};
+
+	private final HttpHeaders headers;
+	private final AtomicReference<Runnable> onClose = new AtomicReference<>();
+	private volatile boolean deferred = false;
+	@Nullable
+	private volatile Throwable failure = null;
+
+	ResponseStream(@NotNull final InputStream is, @NotNull final HttpHeaders headers) {
+		super(is);
+		this.headers = headers;
+	}
+
+	/**
+	 * @param is 응답 바디
+	 * @return 응답 헤더, 헤더 없이 전달된 스트림이면 null
+	 */
+	@Nullable
+	static HttpHeaders headersOf(final InputStream is) {
+		return is instanceof ResponseStream ? ((ResponseStream) is).headers : null;
+	}
+
+	/**
+	 * @param is 응답 바디
+	 * @return Content-Length, 모르면 -1
+	 */
+	static long contentLengthOf(final InputStream is) {
+		return is instanceof ResponseStream ? ((ResponseStream) is).headers.getContentLength() : -1;
+	}
+
+	/**
+	 * The body is read after transform() has returned; finish the request when it is closed.
+	 *
+	 * @param is 응답 바디
+	 */
+	static void defer(final InputStream is) {
+		if (is instanceof ResponseStream) ((ResponseStream) is).deferred = true;
+	}
+
+	boolean isDeferred() {
+		return deferred;
+	}
+
+	/**
+	 * @return failure of a read, if any
+	 */
+	@Nullable
+	Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @param runnable run once, when closed
+	 * @return false if closed already, so that the caller runs it instead
+	 */
+	boolean onClose(@NotNull final Runnable runnable) {
+		return onClose.compareAndSet(null, runnable);
+	}
+
+	@Override
+	public int read() throws IOException {
+		try {
+			return super.read();
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+			throw e;
+		}
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		try {
+			return super.read(b, off, len);
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			final Runnable runnable = onClose.getAndSet(CLOSED);
+			if (null != runnable && CLOSED != runnable) runnable.run();
+		}
+	}
+}
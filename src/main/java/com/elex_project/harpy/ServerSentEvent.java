@@ -0,0 +1,86 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An event of a text/event-stream, as dispatched by {@link EventStreamReader}.
+ *
+ * @author Elex
+ */
+public final class ServerSentEvent {
+	private final String id;
+	private final String event;
+	private final String data;
+
+	/**
+	 * @param id    last event id, empty if none
+	 * @param event event type, message if none
+	 * @param data  data lines joined by line feeds
+	 */
+	public ServerSentEvent(@NotNull final String id, @NotNull final String event, @NotNull final String data) {
+		this.id = id;
+		this.event = event;
+		this.data = data;
+	}
+
+	/**
+	 * @return last event id, the one of this event or of a former one, empty if none
+	 */
+	@NotNull
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return event type, message unless named by the event field
+	 */
+	@NotNull
+	public String getEvent() {
+		return event;
+	}
+
+	/**
+	 * @return data lines joined by line feeds
+	 */
+	@NotNull
+	public String getData() {
+		return data;
+	}
+
+	@Override
+	public String toString() {
+		return "ServerSentEvent{id=" + id + ", event=" + event + ", data=" + data + "}";
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Hashed timer wheel.
+ * <p>
+ * A single daemon thread ticks over a ring of buckets, so scheduling and cancelling
+ * cost O(1) no matter how many timeouts are pending. New and cancelled timeouts are handed
+ * over through lock-free queues and only the worker thread touches the buckets.
+ * Timeouts fire up to one tick late, and tasks run on the worker thread, so they must not block.
+ *
+ * @author Elex
+ */
+@Slf4j
+final class TimerWheel {
+	private static final int MAX_TRANSFERS = 100000;
+
+	private static volatile TimerWheel defaultWheel;
+
+	private final long tickNanos;
+	private final Bucket[] buckets;
+	private final int mask;
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+	private final long startTime;
+	private final Thread worker;
+	private long tick = 0;
+
+	/**
+	 * @param tick       tick duration
+	 * @param unit       unit of tick
+	 * @param wheelSize  number of buckets, rounded up to a power of 2
+	 * @param threadName name of the worker thread
+	 */
+	TimerWheel(final long tick, @NotNull final TimeUnit unit, final int wheelSize, @NotNull final String threadName) {
+		if (tick <= 0) throw new IllegalArgumentException("tick: " + tick);
+		if (wheelSize <= 0 || wheelSize > (1 << 30)) throw new IllegalArgumentException("wheelSize: " + wheelSize);
+		int size = 1;
+		while (size < wheelSize) size <<= 1;
+		this.tickNanos = unit.toNanos(tick);
+		this.buckets = new Bucket[size];
+		for (int i = 0; i < size; i++) buckets[i] = new Bucket();
+		this.mask = size - 1;
+		this.startTime = System.nanoTime();
+		this.worker = new Thread(this::run, threadName);
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * @return shared wheel with 10ms ticks, started on first use
+	 */
+	static TimerWheel getDefault() {
+		TimerWheel wheel = defaultWheel;
+		if (null == wheel) {
+			synchronized (TimerWheel.class) {
+				wheel = defaultWheel;
+				if (null == wheel) {
+					defaultWheel = wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 512, "harpy-timer");
+				}
+			}
+		}
+		return wheel;
+	}
+
+	/**
+	 * @param delay delay
+	 * @param unit  unit of delay
+	 * @param task  task to run on the worker thread, must not block
+	 * @return timeout, to be cancelled
+	 */
+	Timeout schedule(final long delay, @NotNull final TimeUnit unit, @NotNull final Runnable task) {
+		final Timeout timeout = new Timeout(this, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)), task);
+		added.add(timeout);
+		return timeout;
+	}
+
+	private void run() {
+		while (true) {
+			final long deadline = tickNanos * (tick + 1);
+			long sleep;
+			while ((sleep = deadline - (System.nanoTime() - startTime)) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleep);
+				} catch (InterruptedException ignore) {
+					// the wheel lives as long as the class loader
+				}
+			}
+			removeCancelled();
+			transferAdded();
+			buckets[(int) (tick & mask)].expire();
+			tick++;
+		}
+	}
+
+	private void transferAdded() {
+		for (int i = 0; i < MAX_TRANSFERS; i++) {
+			final Timeout timeout = added.poll();
+			if (null == timeout) break;
+			if (timeout.state != Timeout.PENDING) continue;
+			// the current tick is expired right after this, so late timeouts go into it
+			final long ticks = Math.max(timeout.deadline / tickNanos, tick);
+			timeout.rounds = (ticks - tick) / buckets.length;
+			buckets[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while (null != (timeout = cancelled.poll())) {
+			if (null != timeout.bucket) timeout.bucket.remove(timeout);
+		}
+	}
+
+	private void run(final Timeout timeout) {
+		try {
+			timeout.task.run();
+		} catch (Throwable e) {
+			log.warn("Timer task failed.", e);
+		}
+	}
+
+	/**
+	 * Doubly linked list of timeouts, only touched by the worker thread.
+	 */
+	private final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(final Timeout timeout) {
+			timeout.bucket = this;
+			if (null == head) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void expire() {
+			Timeout timeout = head;
+			while (null != timeout) {
+				final Timeout next = timeout.next;
+				if (timeout.rounds <= 0) {
+					remove(timeout);
+					if (timeout.expire()) {
+						run(timeout);
+					}
+				} else {
+					timeout.rounds--;
+				}
+				timeout = next;
+			}
+		}
+
+		void remove(final Timeout timeout) {
+			if (timeout.bucket != this) return;
+			if (null != timeout.prev) timeout.prev.next = timeout.next;
+			if (null != timeout.next) timeout.next.prev = timeout.prev;
+			if (timeout == head) head = timeout.next;
+			if (timeout == tail) tail = timeout.prev;
+			timeout.prev = timeout.next = null;
+			timeout.bucket = null;
+		}
+	}
+
+	/**
+	 * Handle of a scheduled task
+	 */
+	static final class Timeout {
+		private static final int PENDING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final TimerWheel wheel;
+		/**
+		 * nanos since the start of the wheel
+		 */
+		private final long deadline;
+		private final Runnable task;
+		private volatile int state = PENDING;
+
+		// owned by the worker thread
+		private long rounds;
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(final TimerWheel wheel, final long deadline, final Runnable task) {
+			this.wheel = wheel;
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		/**
+		 * @return false if already expired or cancelled
+		 */
+		boolean cancel() {
+			if (!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+			wheel.cancelled.add(this);
+			return true;
+		}
+
+		boolean isExpired() {
+			return state == EXPIRED;
+		}
+
+		boolean isCancelled() {
+			return state == CANCELLED;
+		}
+
+		private boolean expire() {
+			return STATE.compareAndSet(this, PENDING, EXPIRED);
+		}
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TLS configuration shared by requests.
+ * <p>
+ * Sharing one context lets TLS sessions be resumed across connections to the same host,
+ * and kept-alive connections are only reused by requests with the same socket factory.
+ * <pre>
+ * HttpRequest.setDefaultTlsContext(TlsContext.builder()
+ *         .sessionCacheSize(1000)
+ *         .sessionTimeout(3600)
+ *         .build());
+ * </pre>
+ *
+ * @author Elex
+ */
+public final class TlsContext {
+	/**
+	 * Same as the JDK default
+	 */
+	public static final int DEFAULT_SESSION_CACHE_SIZE = 20480;
+	/**
+	 * Same as the JDK default, 24 hours
+	 */
+	public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+	/**
+	 * Bound to a session once its first handshake is recorded
+	 */
+	private static final String SEEN = TlsContext.class.getName() + ".seen";
+
+	private final SSLContext sslContext;
+	private final SSLSocketFactory socketFactory;
+	@Nullable
+	private final HostnameVerifier hostnameVerifier;
+	private final boolean recordHandshakes;
+	private final LongAdder fullHandshakes = new LongAdder();
+	private final LongAdder resumedHandshakes = new LongAdder();
+
+	private TlsContext(final Builder builder) throws GeneralSecurityException {
+		if (null != builder.sslContext) {
+			this.sslContext = builder.sslContext;
+		} else {
+			this.sslContext = SSLContext.getInstance(builder.protocol);
+			this.sslContext.init(builder.keyManagers, builder.trustManagers, builder.random);
+		}
+		final SSLSessionContext sessions = sslContext.getClientSessionContext();
+		sessions.setSessionCacheSize(builder.sessionCacheSize);
+		sessions.setSessionTimeout(builder.sessionTimeout);
+
+		this.hostnameVerifier = builder.hostnameVerifier;
+		this.recordHandshakes = builder.recordHandshakes;
+		this.socketFactory = new SocketFactory(sslContext.getSocketFactory());
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Use this context for the connection
+	 *
+	 * @param connection connection
+	 */
+	public void apply(final @NotNull HttpsURLConnection connection) {
+		connection.setSSLSocketFactory(socketFactory);
+		if (null != hostnameVerifier) connection.setHostnameVerifier(hostnameVerifier);
+	}
+
+	public SSLContext getSslContext() {
+		return sslContext;
+	}
+
+	/**
+	 * @return socket factory, the same instance on every call
+	 */
+	public SSLSocketFactory getSocketFactory() {
+		return socketFactory;
+	}
+
+	/**
+	 * @return number of handshakes that created a new session
+	 */
+	public long getFullHandshakes() {
+		return fullHandshakes.sum();
+	}
+
+	/**
+	 * @return number of handshakes that resumed a cached session
+	 */
+	public long getResumedHandshakes() {
+		return resumedHandshakes.sum();
+	}
+
+	@Nullable
+	HostnameVerifier getHostnameVerifier() {
+		return hostnameVerifier;
+	}
+
+	/**
+	 * A resumed session shares the values bound to the session it resumes, on TLS 1.3 as well,
+	 * where it is a new session with an id of its own. So the first handshake of a session marks it,
+	 * and a handshake that finds the mark resumed it.
+	 *
+	 * @param session session of the completed handshake
+	 */
+	private void handshakeCompleted(final SSLSession session) {
+		final boolean resumed;
+		synchronized (fullHandshakes) {
+			resumed = null != session.getValue(SEEN);
+			if (!resumed) session.putValue(SEEN, Boolean.TRUE);
+		}
+		if (resumed) {
+			resumedHandshakes.increment();
+		} else {
+			fullHandshakes.increment();
+		}
+		HttpStatistics.handshakeCompleted(resumed);
+	}
+
+	public static final class Builder {
+		private String protocol = "TLS";
+		private KeyManager[] keyManagers = null;
+		private TrustManager[] trustManagers = null;
+		private SecureRandom random = null;
+		private SSLContext sslContext = null;
+		private HostnameVerifier hostnameVerifier = null;
+		private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+		private int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+		private boolean recordHandshakes = true;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param protocol SSLContext protocol, TLS by default
+		 * @return this
+		 */
+		public Builder protocol(final @NotNull String protocol) {
+			this.protocol = protocol;
+			return this;
+		}
+
+		public Builder keyManagers(final @Nullable KeyManager... keyManagers) {
+			this.keyManagers = keyManagers;
+			return this;
+		}
+
+		public Builder trustManagers(final @Nullable TrustManager... trustManagers) {
+			this.trustManagers = trustManagers;
+			return this;
+		}
+
+		public Builder secureRandom(final @Nullable SecureRandom random) {
+			this.random = random;
+			return this;
+		}
+
+		/**
+		 * Use an initialized context, instead of creating one
+		 *
+		 * @param sslContext ssl context
+		 * @return this
+		 */
+		public Builder sslContext(final @Nullable SSLContext sslContext) {
+			this.sslContext = sslContext;
+			return this;
+		}
+
+		public Builder hostnameVerifier(final @Nullable HostnameVerifier hostnameVerifier) {
+			this.hostnameVerifier = hostnameVerifier;
+			return this;
+		}
+
+		/**
+		 * @param size max number of cached client sessions, 0 for no limit
+		 * @return this
+		 */
+		public Builder sessionCacheSize(final int size) {
+			this.sessionCacheSize = size;
+			return this;
+		}
+
+		/**
+		 * @param seconds lifetime of cached client sessions, 0 for no limit
+		 * @return this
+		 */
+		public Builder sessionTimeout(final int seconds) {
+			this.sessionTimeout = seconds;
+			return this;
+		}
+
+		/**
+		 * Count full and resumed handshakes.
+		 * The JDK notifies handshake listeners on a new thread, so this can be turned off.
+		 *
+		 * @param record true by default
+		 * @return this
+		 */
+		public Builder recordHandshakes(final boolean record) {
+			this.recordHandshakes = record;
+			return this;
+		}
+
+		public TlsContext build() throws GeneralSecurityException {
+			return new TlsContext(this);
+		}
+	}
+
+	/**
+	 * Adds a handshake listener to the sockets.
+	 */
+	private final class SocketFactory extends SSLSocketFactory {
+		private final SSLSocketFactory delegate;
+
+		SocketFactory(final SSLSocketFactory delegate) {
+			this.delegate = delegate;
+		}
+
+		private Socket watch(final Socket socket) {
+			if (recordHandshakes && socket instanceof SSLSocket) {
+				((SSLSocket) socket).addHandshakeCompletedListener(event -> handshakeCompleted(event.getSession()));
+			}
+			return socket;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return delegate.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return delegate.getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return watch(delegate.createSocket());
+		}
+
+		@Override
+		public Socket createSocket(final Socket s, final String host, final int port, final boolean autoClose) throws IOException {
+			return watch(delegate.createSocket(s, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(final Socket s, final InputStream consumed, final boolean autoClose) throws IOException {
+			return watch(delegate.createSocket(s, consumed, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port) throws IOException {
+			return watch(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+			return watch(delegate.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress host, final int port) throws IOException {
+			return watch(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException {
+			return watch(delegate.createSocket(address, port, localAddress, localPort));
+		}
+	}
+}
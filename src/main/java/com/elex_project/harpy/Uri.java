@@ -42,13 +42,14 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * URI = scheme:[//authority]path[?query][#fragment]
  * <p>
  * authority = [userinfo@]host[:port]
+ * <p>
+ * Components are kept as they are, percent-encoded or not. The path is a list of segments,
+ * and the query a list of parameters in order, which may repeat a name or have no value.
  *
  * @author Elex
  * @see "https://en.wikipedia.org/wiki/URL"
@@ -57,20 +58,23 @@ import java.util.regex.Pattern;
 @Slf4j
 @Getter
 public final class Uri {
-	private static final Pattern URI_PATTERN = Pattern
-			.compile("(?<scheme>[^:/]+)://((?<user>[^@]+)@)?(?<host>[^:]+)(:(?<port>[0-9]+))?(/(?<path>[^?]+))?(\\?(?<query>[^#]+))?(#(?<fragment>.+))?");
-
 	private String scheme = "http";
 	private String user = null;
 	private String host = "localhost";
 	private int port = -1;
-	private final List<String> path;
-	private final Map<String, String> query;
+	/**
+	 * Segments, null until there is one
+	 */
+	@Nullable
+	private List<String> path = null;
+	/**
+	 * Names and values of the parameters one after the other, null until there is one
+	 */
+	@Nullable
+	private List<String> query = null;
 	private String fragment = null;
 
 	private Uri() {
-		path = new ArrayList<>();
-		query = new HashMap<>();
 	}
 
 	/**
@@ -162,28 +166,28 @@ public final class Uri {
 					path(seg);
 				}
 			} else {
-				uri.path.add(path);
+				uri.addPath(path);
 			}
 			return this;
 		}
 
 		public Builder path(final int path) {
-			uri.path.add(String.valueOf(path));
+			uri.addPath(String.valueOf(path));
 			return this;
 		}
 
 		public Builder path(final long path) {
-			uri.path.add(String.valueOf(path));
+			uri.addPath(String.valueOf(path));
 			return this;
 		}
 
 		public Builder path(final float path) {
-			uri.path.add(String.valueOf(path));
+			uri.addPath(String.valueOf(path));
 			return this;
 		}
 
 		public Builder path(final double path) {
-			uri.path.add(String.valueOf(path));
+			uri.addPath(String.valueOf(path));
 			return this;
 		}
 
@@ -193,68 +197,75 @@ public final class Uri {
 					encodedPath(seg);
 				}
 			} else {
-				uri.path.add(encodePath(path));
+				uri.addPath(encodePath(path));
 			}
 			return this;
 		}
 
+		/**
+		 * Append a query parameter. A name can be repeated.
+		 *
+		 * @param name  name
+		 * @param value value, or null for a parameter without '='
+		 * @return builder
+		 */
 		public Builder query(final @NotNull String name, final @Nullable String value) {
-			uri.query.put(name, value);
+			uri.addQuery(name, value);
 			return this;
 		}
 
 		public Builder query(final @NotNull String name, final int value) {
-			uri.query.put(name, String.valueOf(value));
+			uri.addQuery(name, String.valueOf(value));
 			return this;
 		}
 
 		public Builder query(final @NotNull String name, final long value) {
-			uri.query.put(name, String.valueOf(value));
+			uri.addQuery(name, String.valueOf(value));
 			return this;
 		}
 
 		public Builder query(final @NotNull String name, final float value) {
-			uri.query.put(name, String.valueOf(value));
+			uri.addQuery(name, String.valueOf(value));
 			return this;
 		}
 
 		public Builder query(final @NotNull String name, final double value) {
-			uri.query.put(name, String.valueOf(value));
+			uri.addQuery(name, String.valueOf(value));
 			return this;
 		}
 
 		public Builder query(final @NotNull String name, final boolean value) {
-			uri.query.put(name, String.valueOf(value));
+			uri.addQuery(name, String.valueOf(value));
 			return this;
 		}
 
 		public Builder encodedQuery(final @NotNull String name, final @Nullable String value) {
-			uri.query.put(encode(name), (null == value) ? null : encode(value));
+			uri.addQuery(encode(name), (null == value) ? null : encode(value));
 			return this;
 		}
 
 		public Builder encodedQuery(final @NotNull String name, final int value) {
-			uri.query.put(encode(name), String.valueOf(value));
+			uri.addQuery(encode(name), String.valueOf(value));
 			return this;
 		}
 
 		public Builder encodedQuery(final @NotNull String name, final long value) {
-			uri.query.put(encode(name), String.valueOf(value));
+			uri.addQuery(encode(name), String.valueOf(value));
 			return this;
 		}
 
 		public Builder encodedQuery(final @NotNull String name, final float value) {
-			uri.query.put(encode(name), String.valueOf(value));
+			uri.addQuery(encode(name), String.valueOf(value));
 			return this;
 		}
 
 		public Builder encodedQuery(final @NotNull String name, final double value) {
-			uri.query.put(encode(name), String.valueOf(value));
+			uri.addQuery(encode(name), String.valueOf(value));
 			return this;
 		}
 
 		public Builder encodedQuery(final @NotNull String name, final boolean value) {
-			uri.query.put(encode(name), String.valueOf(value));
+			uri.addQuery(encode(name), String.valueOf(value));
 			return this;
 		}
 
@@ -283,55 +294,193 @@ public final class Uri {
 	}
 
 	/**
-	 * parse uri string int uri object
+	 * Parse a uri with an authority, like http://host/path, in a single pass over the string.
+	 * IPv6 literals come in brackets, as in http://[::1]:8080/.
+	 * Characters which should have been percent-encoded are taken as they are.
 	 *
 	 * @param uri uri
 	 * @return uri
+	 * @throws IllegalArgumentException if it has no scheme or host, or the port is not a number up to 65535
 	 */
 	public static Uri parse(final @NotNull String uri) {
-		final Matcher matcher = URI_PATTERN.matcher(uri);
-		//log.info(matcher.toString());
-		if (!matcher.matches()) throw new IllegalArgumentException("URI pattern mismatches.");
+		final int length = uri.length();
+		final int colon = schemeEnd(uri);
+		if (!uri.startsWith("//", colon + 1)) throw new IllegalArgumentException("No authority: " + uri);
 
 		final Uri object = new Uri();
-		object.scheme = matcher.group("scheme");
-		object.user = matcher.group("user");
-		object.host = matcher.group("host");
-		if (null != matcher.group("port")) {
-			object.port = Integer.parseInt(matcher.group("port"));
-		}
-		if (null != matcher.group("path")) {
-			for (String seg : matcher.group("path").split("/")) {
-				object.path.add(seg);
+		object.scheme = uri.substring(0, colon);
+		int i = colon + 3;
+		int authorityEnd = i;
+		while (authorityEnd < length) {
+			final char c = uri.charAt(authorityEnd);
+			if (c == '/' || c == '?' || c == '#') break;
+			authorityEnd++;
+		}
+		final int at = uri.lastIndexOf('@', authorityEnd - 1);
+		if (at >= i) {
+			object.user = uri.substring(i, at);
+			i = at + 1;
+		}
+		final int hostEnd;
+		if (i < authorityEnd && uri.charAt(i) == '[') {
+			final int bracket = indexOf(uri, ']', i, authorityEnd);
+			if (bracket == authorityEnd) throw new IllegalArgumentException("Unclosed IP literal: " + uri);
+			hostEnd = bracket + 1;
+			if (hostEnd < authorityEnd && uri.charAt(hostEnd) != ':') throw new IllegalArgumentException("Invalid host: " + uri);
+		} else {
+			hostEnd = indexOf(uri, ':', i, authorityEnd);
+		}
+		if (hostEnd == i) throw new IllegalArgumentException("No host: " + uri);
+		object.host = uri.substring(i, hostEnd);
+		if (hostEnd + 1 < authorityEnd) object.port = port(uri, hostEnd + 1, authorityEnd);
+		i = authorityEnd;
+
+		if (i < length && uri.charAt(i) == '/') {
+			final int end = indexOf(uri, '?', i, indexOf(uri, '#', i, length));
+			object.path = new ArrayList<>();
+			int start = i + 1;
+			while (true) {
+				final int slash = indexOf(uri, '/', start, end);
+				object.path.add(uri.substring(start, slash));
+				if (slash == end) break;
+				start = slash + 1;
 			}
-		}
-		if (null != matcher.group("query")) {
-			for (String q : matcher.group("query").split("&")) {
-				String[] pair = q.split("=");
-				object.query.put(pair[0], pair[1]);
+			i = end;
+		}
+		if (i < length && uri.charAt(i) == '?') {
+			final int end = indexOf(uri, '#', i, length);
+			int start = i + 1;
+			while (start < end) {
+				final int amp = indexOf(uri, '&', start, end);
+				if (amp > start) {
+					final int equals = indexOf(uri, '=', start, amp);
+					object.addQuery(uri.substring(start, equals), equals == amp ? null : uri.substring(equals + 1, amp));
+				}
+				start = amp + 1;
 			}
+			i = end;
 		}
-		object.fragment = matcher.group("fragment");
+		if (i < length) object.fragment = uri.substring(i + 1);
 		return object;
 	}
 
+	/**
+	 * @return index of the colon after the scheme, ALPHA *( ALPHA / DIGIT / "+" / "-" / "." )
+	 */
+	private static int schemeEnd(final String uri) {
+		for (int i = 0; i < uri.length(); i++) {
+			final char c = uri.charAt(i);
+			if (c == ':' && i > 0) return i;
+			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
+					|| i > 0 && (c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.'))) break;
+		}
+		throw new IllegalArgumentException("No scheme: " + uri);
+	}
+
+	private static int port(final String uri, final int start, final int end) {
+		int port = 0;
+		for (int i = start; i < end; i++) {
+			final char c = uri.charAt(i);
+			if (c < '0' || c > '9') throw new IllegalArgumentException("Invalid port: " + uri);
+			port = port * 10 + (c - '0');
+			if (port > 65535) throw new IllegalArgumentException("Invalid port: " + uri);
+		}
+		return port;
+	}
+
+	/**
+	 * @return index of the char between from and end, or end if none
+	 */
+	private static int indexOf(final String str, final char c, final int from, final int end) {
+		for (int i = from; i < end; i++) {
+			if (str.charAt(i) == c) return i;
+		}
+		return end;
+	}
+
+	private void addPath(final String segment) {
+		if (null == path) path = new ArrayList<>();
+		// in place of the empty segment after a trailing slash
+		final int last = path.size() - 1;
+		if (last >= 0 && path.get(last).isEmpty()) {
+			path.set(last, segment);
+		} else {
+			path.add(segment);
+		}
+	}
+
+	private void addQuery(final String name, @Nullable final String value) {
+		if (null == query) query = new ArrayList<>();
+		query.add(name);
+		query.add(value);
+	}
+
+	/**
+	 * @return path segments, without the slashes; a trailing slash makes an empty last one
+	 */
+	public List<String> getPath() {
+		return null == path ? Collections.emptyList() : Collections.unmodifiableList(path);
+	}
+
+	/**
+	 * @return the first value of each query parameter name, in order; null for a parameter without '='
+	 */
+	public Map<String, String> getQuery() {
+		if (null == query) return Collections.emptyMap();
+		final Map<String, String> map = new LinkedHashMap<>();
+		for (int i = 0; i < query.size(); i += 2) {
+			if (!map.containsKey(query.get(i))) map.put(query.get(i), query.get(i + 1));
+		}
+		return map;
+	}
+
+	/**
+	 * @param name parameter name
+	 * @return the first value, or null if none or without '='
+	 */
+	@Nullable
+	public String getQueryValue(final @NotNull String name) {
+		if (null == query) return null;
+		for (int i = 0; i < query.size(); i += 2) {
+			if (query.get(i).equals(name)) return query.get(i + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * @param name parameter name
+	 * @return all the values of the name, in order
+	 */
+	public List<String> getQueryValues(final @NotNull String name) {
+		if (null == query) return Collections.emptyList();
+		final List<String> values = new ArrayList<>(2);
+		for (int i = 0; i < query.size(); i += 2) {
+			if (query.get(i).equals(name)) values.add(query.get(i + 1));
+		}
+		return values;
+	}
+
 	@Override
 	public String toString() {
-		final StringBuilder sb = new StringBuilder();
+		final StringBuilder sb = new StringBuilder(64);
 		sb.append(scheme).append("://");
 		if (null != user) sb.append(user).append("@");
-		sb.append(host);
+		if (host.indexOf(':') >= 0 && host.charAt(0) != '[') {
+			sb.append('[').append(host).append(']');
+		} else {
+			sb.append(host);
+		}
 		if (port > 0) sb.append(":").append(port);
-		for (final String seg : this.path) {
-			sb.append("/").append(seg);
-		}
-		if (query.size() > 0) {
-			sb.append("?");
-			final StringJoiner joiner = new StringJoiner("&");
-			for (String key : query.keySet()) {
-				joiner.add(key + "=" + query.get(key));
+		if (null != path) {
+			for (final String seg : path) {
+				sb.append("/").append(seg);
+			}
+		}
+		if (null != query) {
+			for (int i = 0; i < query.size(); i += 2) {
+				sb.append(i == 0 ? '?' : '&').append(query.get(i));
+				if (null != query.get(i + 1)) sb.append('=').append(query.get(i + 1));
 			}
-			sb.append(joiner);
 		}
 		if (null != fragment) sb.append("#").append(fragment);
 		return sb.toString();
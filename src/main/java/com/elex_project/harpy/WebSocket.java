@@ -0,0 +1,1116 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * RFC 6455 WebSocket client, with the permessage-deflate extension of RFC 7692.
+ * <pre>
+ * WebSocket socket = WebSocket.builder("wss://example.com/feed")
+ *         .listener(new WebSocket.Listener() {
+ *             public void onText(WebSocket webSocket, String text) {
+ *                 ...
+ *             }
+ *         })
+ *         .compression(true)
+ *         .build();
+ * socket.connect();
+ * socket.sendText("{\"subscribe\": \"ticker\"}");
+ * ...
+ * socket.close();
+ * </pre>
+ * {@link java.net.HttpURLConnection} can't hand its socket over after 101 Switching Protocols,
+ * so the upgrade is sent on a socket of its own, with the TLS context and user agent of {@link HttpRequest}.
+ * Proxies are not supported.
+ * <p>
+ * Messages are read on a thread of their own and handed to the listener one at a time,
+ * from buffers reused across messages; the reading waits for the listener, which slows the server down
+ * instead of queueing. Sends block until the frame has been written, so a slow server slows the senders down too.
+ * Frames can be sent from any thread.
+ * <p>
+ * When idle for the ping interval, it sends a ping, and fails if nothing comes back within another interval.
+ *
+ * @author Elex
+ */
+@Slf4j
+public final class WebSocket implements Closeable {
+	public static final int NORMAL_CLOSURE = 1000;
+	public static final int GOING_AWAY = 1001;
+	public static final int PROTOCOL_ERROR = 1002;
+	/**
+	 * Reported by {@link Listener#onClose} for a close frame without a status code
+	 */
+	public static final int NO_STATUS = 1005;
+	/**
+	 * Reported by {@link Listener#onClose} when the server did not answer the close frame in time
+	 */
+	public static final int ABNORMAL_CLOSURE = 1006;
+	public static final int INVALID_PAYLOAD = 1007;
+	public static final int MESSAGE_TOO_BIG = 1009;
+
+	private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+	private static final String DEFLATE = "permessage-deflate";
+	private static final int CONTINUATION = 0x0;
+	private static final int TEXT = 0x1;
+	private static final int BINARY = 0x2;
+	private static final int CLOSE = 0x8;
+	private static final int PING = 0x9;
+	private static final int PONG = 0xA;
+	private static final int RSV1 = 0x40;
+	private static final int MAX_CONTROL_PAYLOAD = 125;
+	private static final int BUFFER_SIZE = 16384;
+	/**
+	 * Buffers grown beyond this by a large message are dropped after it
+	 */
+	private static final int KEPT_BUFFER_SIZE = 1 << 20;
+	private static final int MAX_HEADER_SIZE = 65536;
+	/**
+	 * Smaller messages are sent uncompressed, as the deflate block costs more than it saves
+	 */
+	private static final int MIN_DEFLATE_SIZE = 64;
+	private static final byte[] DEFLATE_TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final URI uri;
+	private final Listener listener;
+	private final Executor executor;
+	@Nullable
+	private final TlsContext tlsContext;
+	private final int connectTimeout;
+	private final int pingInterval;
+	private final long closeTimeout;
+	private final int maxMessageSize;
+	private final boolean compression;
+	private final List<String> subprotocols;
+	private final Map<String, String> headers;
+
+	@Nullable
+	private volatile Socket socket;
+	private InputStream in;
+	private OutputStream out;
+	@Nullable
+	private HttpHeaders responseHeaders;
+	@Nullable
+	private String subprotocol;
+	private volatile boolean open = false;
+	private volatile boolean closeSent = false;
+	private volatile boolean closeReceived = false;
+	private volatile boolean closedByUser = false;
+	@Nullable
+	private volatile Thread reader;
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private int closeCode = NO_STATUS;
+	private String closeReason = "";
+
+	// receiving, on the reading thread
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private int inputPosition = 0;
+	private int inputLimit = 0;
+	private byte[] message = new byte[BUFFER_SIZE];
+	private int messageLength = 0;
+	private int messageOpcode = -1;
+	private boolean messageCompressed = false;
+	private byte[] inflated = new byte[0];
+	private final byte[] control = new byte[MAX_CONTROL_PAYLOAD];
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+	private char[] chars = new char[0];
+	private boolean pingOutstanding = false;
+	@Nullable
+	private Inflater inflater;
+	private boolean serverNoContextTakeover = false;
+
+	// sending, under the lock
+	private final ReentrantLock sendLock = new ReentrantLock();
+	private final byte[] output = new byte[BUFFER_SIZE + 14];
+	private int sendingOpcode = -1;
+	private boolean sendingCompressed = false;
+	@Nullable
+	private Deflater deflater;
+	private boolean clientNoContextTakeover = false;
+	private byte[] deflated = new byte[0];
+	private byte[] scratch = new byte[0];
+
+	private WebSocket(final Builder builder) {
+		this.uri = builder.uri;
+		this.listener = builder.listener;
+		this.executor = builder.executor;
+		this.tlsContext = builder.tlsContext;
+		this.connectTimeout = builder.connectTimeout;
+		this.pingInterval = builder.pingInterval;
+		this.closeTimeout = builder.closeTimeout;
+		this.maxMessageSize = builder.maxMessageSize;
+		this.compression = builder.compression;
+		this.subprotocols = new ArrayList<>(builder.subprotocols);
+		this.headers = new LinkedHashMap<>(builder.headers);
+	}
+
+	/**
+	 * @param uri ws or wss uri, or http and https ones for the same
+	 * @return builder
+	 * @throws IllegalArgumentException if the uri is malformed or of another scheme
+	 */
+	public static Builder builder(@NotNull final String uri) {
+		try {
+			return new Builder(new URI(uri));
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid uri: " + uri, e);
+		}
+	}
+
+	public static Builder builder(@NotNull final Uri uri) {
+		return builder(uri.toString());
+	}
+
+	/**
+	 * Opens the connection and the upgrade handshake, then starts reading.
+	 *
+	 * @throws IOException if failed to connect, or the server refused the upgrade
+	 */
+	public void connect() throws IOException {
+		synchronized (this) {
+			if (null != socket) throw new IllegalStateException("Connected already");
+			socket = open();
+		}
+		try {
+			handshake();
+		} catch (IOException | RuntimeException e) {
+			closeSocket();
+			throw e;
+		}
+		socket.setSoTimeout(pingInterval);
+		open = true;
+		executor.execute(this::run);
+	}
+
+	/**
+	 * @return subprotocol chosen by the server, or null if none
+	 */
+	@Nullable
+	public String getSubprotocol() {
+		return subprotocol;
+	}
+
+	/**
+	 * @return headers of the 101 response, or null if not connected
+	 */
+	@Nullable
+	public HttpHeaders getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	/**
+	 * @return true if permessage-deflate has been agreed on
+	 */
+	public boolean isCompressed() {
+		return null != deflater;
+	}
+
+	/**
+	 * @return true once connected, until a close frame has been sent or the connection failed
+	 */
+	public boolean isOpen() {
+		return open && !closeSent;
+	}
+
+	public void sendText(@NotNull final String text) throws IOException {
+		sendText(text, true);
+	}
+
+	/**
+	 * Sends a fragment of a text message; the fragments must not split a surrogate pair.
+	 *
+	 * @param text text
+	 * @param last true for the last fragment
+	 * @throws IOException if failed to write, or closed
+	 */
+	public void sendText(@NotNull final String text, final boolean last) throws IOException {
+		send(TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), last);
+	}
+
+	public void sendBinary(@NotNull final ByteBuffer data) throws IOException {
+		sendBinary(data, true);
+	}
+
+	/**
+	 * Sends a fragment of a binary message. The remaining bytes of the buffer are consumed.
+	 *
+	 * @param data data
+	 * @param last true for the last fragment
+	 * @throws IOException if failed to write, or closed
+	 */
+	public void sendBinary(@NotNull final ByteBuffer data, final boolean last) throws IOException {
+		send(BINARY, data, last);
+	}
+
+	/**
+	 * @param data up to 125 bytes, echoed by the pong
+	 * @throws IOException if failed to write, or closed
+	 */
+	public void sendPing(@NotNull final ByteBuffer data) throws IOException {
+		sendControl(PING, data);
+	}
+
+	/**
+	 * Pongs are sent for the pings from the server already; this is for unsolicited ones.
+	 *
+	 * @param data up to 125 bytes
+	 * @throws IOException if failed to write, or closed
+	 */
+	public void sendPong(@NotNull final ByteBuffer data) throws IOException {
+		sendControl(PONG, data);
+	}
+
+	/**
+	 * Closes with {@link #NORMAL_CLOSURE}.
+	 */
+	@Override
+	public void close() throws IOException {
+		close(NORMAL_CLOSURE, "");
+	}
+
+	/**
+	 * Sends a close frame, and waits for the one of the server up to the close timeout.
+	 * Called by a listener, it does not wait; the reading goes on until the close frame of the server.
+	 *
+	 * @param code   1000, or 3000 to 4999 for the application
+	 * @param reason reason, up to 123 bytes in UTF-8
+	 * @throws IOException if failed to send the close frame; the connection is closed anyway
+	 */
+	public void close(final int code, @NotNull final String reason) throws IOException {
+		if (code != NORMAL_CLOSURE && (code < 3000 || code > 4999)) throw new IllegalArgumentException("code: " + code);
+		final byte[] bytes = reason.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_CONTROL_PAYLOAD - 2) throw new IllegalArgumentException("Reason too long: " + reason);
+		closedByUser = true;
+		if (!open) {
+			closeSocket();
+			return;
+		}
+		try {
+			sendClose(code, bytes);
+		} catch (IOException e) {
+			closeSocket();
+			throw e;
+		}
+		if (Thread.currentThread() == reader) return;
+		try {
+			if (!finished.await(closeTimeout, TimeUnit.MILLISECONDS)) closeSocket();
+		} catch (InterruptedException e) {
+			closeSocket();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Socket open() throws IOException {
+		final boolean secure = "wss".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+		final String host = host();
+		final int port = port(secure);
+		final Socket plain = new Socket();
+		try {
+			plain.setTcpNoDelay(true);
+			plain.connect(new InetSocketAddress(host, port), connectTimeout);
+			plain.setSoTimeout(connectTimeout);
+			if (!secure) return plain;
+
+			final TlsContext tlsContext = null != this.tlsContext ? this.tlsContext : HttpRequest.getDefaultTlsContext();
+			final SSLSocketFactory factory = null == tlsContext
+					? (SSLSocketFactory) SSLSocketFactory.getDefault() : tlsContext.getSocketFactory();
+			final SSLSocket ssl = (SSLSocket) factory.createSocket(plain, host, port, true);
+			final HostnameVerifier verifier = null == tlsContext ? null : tlsContext.getHostnameVerifier();
+			if (null == verifier) {
+				final SSLParameters parameters = ssl.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS");
+				ssl.setSSLParameters(parameters);
+			}
+			ssl.startHandshake();
+			if (null != verifier && !verifier.verify(host, ssl.getSession())) {
+				ssl.close();
+				throw new SSLPeerUnverifiedException("Host name not verified: " + host);
+			}
+			return ssl;
+		} catch (IOException | RuntimeException e) {
+			plain.close();
+			throw e;
+		}
+	}
+
+	private String host() {
+		final String host = uri.getHost();
+		if (null == host) throw new IllegalArgumentException("No host: " + uri);
+		// IPv6 literals come in brackets
+		return host.startsWith("[") ? host.substring(1, host.length() - 1) : host;
+	}
+
+	private int port(final boolean secure) {
+		return uri.getPort() < 0 ? (secure ? 443 : 80) : uri.getPort();
+	}
+
+	private void handshake() throws IOException {
+		in = socket.getInputStream();
+		out = socket.getOutputStream();
+		final byte[] nonce = new byte[16];
+		RANDOM.nextBytes(nonce);
+		final String key = Base64.getEncoder().encodeToString(nonce);
+
+		final String path = null == uri.getRawPath() || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		final StringBuilder request = new StringBuilder(256)
+				.append("GET ").append(path);
+		if (null != uri.getRawQuery()) request.append('?').append(uri.getRawQuery());
+		request.append(" HTTP/1.1\r\nHost: ").append(uri.getHost());
+		if (uri.getPort() >= 0) request.append(':').append(uri.getPort());
+		request.append("\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Version: 13\r\nSec-WebSocket-Key: ")
+				.append(key).append("\r\n");
+		if (!headers.containsKey("User-Agent")) request.append("User-Agent: Abraxas by Elex\r\n");
+		if (!subprotocols.isEmpty()) {
+			request.append("Sec-WebSocket-Protocol: ").append(String.join(", ", subprotocols)).append("\r\n");
+		}
+		if (compression) request.append("Sec-WebSocket-Extensions: ").append(DEFLATE).append("\r\n");
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		request.append("\r\n");
+		out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+
+		final HttpHeaders headers = readResponseHeaders();
+		final String statusLine = String.valueOf(headers.getStatusLine());
+		if (!statusLine.startsWith("HTTP/1.1 101")) throw new ProtocolException("Upgrade refused: " + statusLine);
+		if (!"websocket".equalsIgnoreCase(headers.getFirst("Upgrade")) || !containsIgnoreCase(headers.getTokens("Connection"), "upgrade")) {
+			throw new ProtocolException("Not upgraded to websocket: " + headers);
+		}
+		if (!accept(key).equals(headers.getFirst("Sec-WebSocket-Accept"))) {
+			throw new ProtocolException("Wrong Sec-WebSocket-Accept: " + headers.getFirst("Sec-WebSocket-Accept"));
+		}
+		subprotocol = headers.getFirst("Sec-WebSocket-Protocol");
+		if (null != subprotocol && !subprotocols.contains(subprotocol)) {
+			throw new ProtocolException("Subprotocol not asked for: " + subprotocol);
+		}
+		extensions(headers.getTokens("Sec-WebSocket-Extensions"));
+		responseHeaders = headers;
+	}
+
+	private HttpHeaders readResponseHeaders() throws IOException {
+		final HttpHeaders headers = new HttpHeaders();
+		final StringBuilder line = new StringBuilder(128);
+		int size = 0;
+		boolean first = true;
+		while (true) {
+			line.setLength(0);
+			while (true) {
+				if (inputPosition == inputLimit) fill();
+				final char c = (char) (input[inputPosition++] & 0xFF);
+				if (++size > MAX_HEADER_SIZE) throw new ProtocolException("Response headers too large");
+				if (c == '\n') break;
+				if (c != '\r') line.append(c);
+			}
+			if (line.length() == 0) return headers;
+			if (first) {
+				headers.setStatusLine(line.toString());
+				first = false;
+				continue;
+			}
+			final int colon = line.indexOf(":");
+			if (colon > 0) headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+		}
+	}
+
+	private void extensions(final List<String> extensions) throws ProtocolException {
+		for (String extension : extensions) {
+			final String[] parameters = extension.split(";");
+			if (!compression || !DEFLATE.equalsIgnoreCase(parameters[0].trim()) || null != deflater) {
+				throw new ProtocolException("Extension not asked for: " + extension);
+			}
+			for (int i = 1; i < parameters.length; i++) {
+				final String parameter = parameters[i].trim();
+				final int equals = parameter.indexOf('=');
+				final String name = equals < 0 ? parameter : parameter.substring(0, equals).trim();
+				if (name.equalsIgnoreCase("server_no_context_takeover")) {
+					serverNoContextTakeover = true;
+				} else if (name.equalsIgnoreCase("client_no_context_takeover")) {
+					clientNoContextTakeover = true;
+				} else if (!name.equalsIgnoreCase("server_max_window_bits")) {
+					// the window of Deflater is fixed at 15 bits, so client_max_window_bits is not offered
+					throw new ProtocolException("Unsupported " + DEFLATE + " parameter: " + parameter);
+				}
+			}
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			inflater = new Inflater(true);
+		}
+	}
+
+	private static boolean containsIgnoreCase(final List<String> tokens, final String token) {
+		for (String t : tokens) {
+			if (t.equalsIgnoreCase(token)) return true;
+		}
+		return false;
+	}
+
+	private static String accept(final String key) {
+		try {
+			final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			return Base64.getEncoder().encodeToString(sha1.digest((key + GUID).getBytes(StandardCharsets.ISO_8859_1)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void run() {
+		reader = Thread.currentThread();
+		Throwable failure = null;
+		try {
+			listener.onOpen(this);
+			while (!closeReceived) {
+				readFrame();
+			}
+		} catch (Throwable e) {
+			failure = e;
+		}
+		open = false;
+		closeSocket();
+		inflated = message = new byte[0];
+		if (null != inflater) inflater.end();
+		sendLock.lock();
+		try {
+			if (null != deflater) deflater.end();
+		} finally {
+			sendLock.unlock();
+		}
+		finished.countDown();
+		if (null == failure) {
+			listener.onClose(this, closeCode, closeReason);
+		} else if (closedByUser && failure instanceof IOException) {
+			// closed by the timeout, or the server closed the connection without a close frame
+			listener.onClose(this, ABNORMAL_CLOSURE, "");
+		} else {
+			listener.onError(this, failure);
+		}
+	}
+
+	private void readFrame() throws IOException {
+		require(2);
+		final int b0 = input[inputPosition] & 0xFF;
+		final int b1 = input[inputPosition + 1] & 0xFF;
+		final boolean fin = (b0 & 0x80) != 0;
+		final int rsv = b0 & 0x70;
+		final int opcode = b0 & 0x0F;
+		if ((b1 & 0x80) != 0) throw fail(PROTOCOL_ERROR, "Masked frame from the server");
+		long length = b1 & 0x7F;
+		final int headerLength = length == 126 ? 4 : length == 127 ? 10 : 2;
+		require(headerLength);
+		if (length == 126) {
+			length = ((input[inputPosition + 2] & 0xFF) << 8) | (input[inputPosition + 3] & 0xFF);
+		} else if (length == 127) {
+			length = 0;
+			for (int i = 2; i < 10; i++) {
+				length = (length << 8) | (input[inputPosition + i] & 0xFF);
+			}
+			if (length < 0) throw fail(PROTOCOL_ERROR, "Frame length out of range");
+		}
+		inputPosition += headerLength;
+
+		if (opcode >= CLOSE) {
+			if (!fin || rsv != 0 || length > MAX_CONTROL_PAYLOAD) throw fail(PROTOCOL_ERROR, "Invalid control frame");
+			read(control, 0, (int) length);
+			control(opcode, (int) length);
+			return;
+		}
+		if (opcode == CONTINUATION) {
+			if (messageOpcode < 0) throw fail(PROTOCOL_ERROR, "Continuation without a message");
+			if (rsv != 0) throw fail(PROTOCOL_ERROR, "Reserved bits on a continuation");
+		} else if (opcode == TEXT || opcode == BINARY) {
+			if (messageOpcode >= 0) throw fail(PROTOCOL_ERROR, "Message in the middle of another");
+			if (rsv == RSV1 && null != inflater) {
+				messageCompressed = true;
+			} else if (rsv != 0) {
+				throw fail(PROTOCOL_ERROR, "Reserved bits not agreed on");
+			}
+			messageOpcode = opcode;
+			messageLength = 0;
+		} else {
+			throw fail(PROTOCOL_ERROR, "Unknown opcode: " + opcode);
+		}
+		if (messageLength + length > maxMessageSize) throw fail(MESSAGE_TOO_BIG, "Message larger than " + maxMessageSize);
+		message = ensure(message, messageLength + (int) length + (messageCompressed ? DEFLATE_TAIL.length : 0));
+		read(message, messageLength, (int) length);
+		messageLength += (int) length;
+		if (fin) deliver();
+	}
+
+	private void control(final int opcode, final int length) throws IOException {
+		final ByteBuffer data = ByteBuffer.wrap(control, 0, length);
+		switch (opcode) {
+			case PING:
+				sendControl(PONG, ByteBuffer.wrap(control, 0, length));
+				try {
+					listener.onPing(this, data);
+				} catch (RuntimeException e) {
+					log.error("Listener failed on a ping", e);
+				}
+				break;
+			case PONG:
+				try {
+					listener.onPong(this, data);
+				} catch (RuntimeException e) {
+					log.error("Listener failed on a pong", e);
+				}
+				break;
+			case CLOSE:
+				if (length == 1) throw fail(PROTOCOL_ERROR, "Close frame of a byte");
+				if (length >= 2) {
+					closeCode = ((control[0] & 0xFF) << 8) | (control[1] & 0xFF);
+					if (!validCloseCode(closeCode)) throw fail(PROTOCOL_ERROR, "Invalid close code: " + closeCode);
+					closeReason = decode(control, 2, length - 2);
+				}
+				closeReceived = true;
+				if (!closeSent) sendClose(closeCode == NO_STATUS ? -1 : closeCode, new byte[0]);
+				break;
+			default:
+				throw fail(PROTOCOL_ERROR, "Unknown opcode: " + opcode);
+		}
+	}
+
+	private static boolean validCloseCode(final int code) {
+		return (code >= 1000 && code <= 1003) || (code >= 1007 && code <= 1011) || (code >= 3000 && code <= 4999);
+	}
+
+	private void deliver() throws IOException {
+		byte[] data = message;
+		int length = messageLength;
+		if (messageCompressed) {
+			length = inflate();
+			data = inflated;
+		}
+		final int opcode = messageOpcode;
+		messageOpcode = -1;
+		messageCompressed = false;
+		final String text = opcode == TEXT ? decode(data, 0, length) : null;
+		try {
+			if (null != text) {
+				listener.onText(this, text);
+			} else {
+				listener.onBinary(this, ByteBuffer.wrap(data, 0, length));
+			}
+		} catch (RuntimeException e) {
+			log.error("Listener failed on a message", e);
+		}
+		if (message.length > KEPT_BUFFER_SIZE) message = new byte[BUFFER_SIZE];
+		if (inflated.length > KEPT_BUFFER_SIZE) inflated = new byte[0];
+		if (chars.length > KEPT_BUFFER_SIZE) chars = new char[0];
+	}
+
+	private int inflate() throws IOException {
+		System.arraycopy(DEFLATE_TAIL, 0, message, messageLength, DEFLATE_TAIL.length);
+		inflater.setInput(message, 0, messageLength + DEFLATE_TAIL.length);
+		if (inflated.length == 0) inflated = new byte[BUFFER_SIZE];
+		int length = 0;
+		try {
+			while (true) {
+				if (length == inflated.length) {
+					if (length > maxMessageSize) throw fail(MESSAGE_TOO_BIG, "Message larger than " + maxMessageSize);
+					inflated = Arrays.copyOf(inflated, (int) Math.min(length * 2L, maxMessageSize + 1L));
+				}
+				final int n = inflater.inflate(inflated, length, inflated.length - length);
+				length += n;
+				if (n == 0 && (inflater.needsInput() || inflater.finished())) break;
+			}
+		} catch (DataFormatException e) {
+			throw fail(INVALID_PAYLOAD, "Invalid deflate data: " + e.getMessage());
+		}
+		if (length > maxMessageSize) throw fail(MESSAGE_TOO_BIG, "Message larger than " + maxMessageSize);
+		if (serverNoContextTakeover || inflater.finished()) inflater.reset();
+		return length;
+	}
+
+	private String decode(final byte[] bytes, final int offset, final int length) throws IOException {
+		chars = length > chars.length ? new char[length] : chars;
+		final CharBuffer buffer = CharBuffer.wrap(chars);
+		decoder.reset();
+		if (decoder.decode(ByteBuffer.wrap(bytes, offset, length), buffer, true).isError()
+				|| decoder.flush(buffer).isError()) {
+			throw fail(INVALID_PAYLOAD, "Invalid UTF-8 in a text message");
+		}
+		return new String(chars, 0, buffer.position());
+	}
+
+	/**
+	 * Sends a close frame with the code if it can, as the connection ends anyway.
+	 *
+	 * @return exception to throw
+	 */
+	private ProtocolException fail(final int code, final String message) {
+		try {
+			sendClose(code, new byte[0]);
+		} catch (IOException e) {
+			log.debug("Failed to send the close frame", e);
+		}
+		return new ProtocolException(message);
+	}
+
+	/**
+	 * Makes the next bytes of the frame header available in {@link #input}.
+	 */
+	private void require(final int bytes) throws IOException {
+		if (inputLimit - inputPosition >= bytes) return;
+		System.arraycopy(input, inputPosition, input, 0, inputLimit - inputPosition);
+		inputLimit -= inputPosition;
+		inputPosition = 0;
+		while (inputLimit < bytes) {
+			inputLimit += readSocket(input, inputLimit, input.length - inputLimit);
+		}
+	}
+
+	private void fill() throws IOException {
+		inputPosition = 0;
+		inputLimit = readSocket(input, 0, input.length);
+	}
+
+	/**
+	 * Reads a payload, the buffered bytes first, then the large rest straight from the socket.
+	 */
+	private void read(final byte[] bytes, int offset, int length) throws IOException {
+		final int buffered = Math.min(length, inputLimit - inputPosition);
+		System.arraycopy(input, inputPosition, bytes, offset, buffered);
+		inputPosition += buffered;
+		offset += buffered;
+		length -= buffered;
+		while (length > 0) {
+			if (length < input.length / 2) {
+				fill();
+				final int n = Math.min(length, inputLimit);
+				System.arraycopy(input, 0, bytes, offset, n);
+				inputPosition = n;
+				offset += n;
+				length -= n;
+			} else {
+				final int n = readSocket(bytes, offset, length);
+				offset += n;
+				length -= n;
+			}
+		}
+	}
+
+	/**
+	 * Reads from the socket, pinging the server when idle for the ping interval.
+	 */
+	private int readSocket(final byte[] bytes, final int offset, final int length) throws IOException {
+		while (true) {
+			try {
+				final int n = in.read(bytes, offset, length);
+				if (n < 0) throw new EOFException("Connection closed by the server");
+				pingOutstanding = false;
+				return n;
+			} catch (SocketTimeoutException e) {
+				if (!open || pingOutstanding || closeSent) {
+					throw new SocketTimeoutException(open ? "No answer from the server in " + pingInterval + "ms" : e.getMessage());
+				}
+				pingOutstanding = true;
+				sendControl(PING, EMPTY.duplicate());
+			}
+		}
+	}
+
+	private static byte[] ensure(final byte[] bytes, final int capacity) {
+		if (capacity <= bytes.length) return bytes;
+		return Arrays.copyOf(bytes, (int) Math.min(Math.max(bytes.length * 2L, capacity), Integer.MAX_VALUE - 8));
+	}
+
+	private void send(final int opcode, final ByteBuffer payload, final boolean last) throws IOException {
+		sendLock.lock();
+		try {
+			if (closeSent) throw new IOException("Closed");
+			if (!open) throw new IllegalStateException("Not connected");
+			int frameOpcode = opcode;
+			int rsv = 0;
+			if (sendingOpcode >= 0) {
+				if (sendingOpcode != opcode) throw new IllegalStateException("In the middle of a fragmented message");
+				frameOpcode = CONTINUATION;
+			} else {
+				sendingCompressed = null != deflater && payload.remaining() >= MIN_DEFLATE_SIZE;
+				if (sendingCompressed) rsv = RSV1;
+			}
+			writeFrame(last, rsv, frameOpcode, sendingCompressed ? deflate(payload, last) : payload);
+			sendingOpcode = last ? -1 : opcode;
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	private void sendControl(final int opcode, final ByteBuffer payload) throws IOException {
+		if (payload.remaining() > MAX_CONTROL_PAYLOAD) throw new IllegalArgumentException("Payload over 125 bytes");
+		sendLock.lock();
+		try {
+			// nothing but the close frame after it
+			if (closeSent) return;
+			if (!open) throw new IllegalStateException("Not connected");
+			writeFrame(true, 0, opcode, payload);
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * @param code code, or -1 for none
+	 */
+	private void sendClose(final int code, final byte[] reason) throws IOException {
+		sendLock.lock();
+		try {
+			if (closeSent || null == out) return;
+			closeSent = true;
+			final ByteBuffer payload = ByteBuffer.allocate(code < 0 ? 0 : 2 + reason.length);
+			if (code >= 0) payload.putShort((short) code).put(reason);
+			flip(payload);
+			writeFrame(true, 0, CLOSE, payload);
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes a masked frame through {@link #output}, the header along with the first bytes of the payload.
+	 */
+	private void writeFrame(final boolean fin, final int rsv, final int opcode, final ByteBuffer payload) throws IOException {
+		final int length = payload.remaining();
+		int i = 0;
+		output[i++] = (byte) ((fin ? 0x80 : 0) | rsv | opcode);
+		if (length < 126) {
+			output[i++] = (byte) (0x80 | length);
+		} else if (length < 65536) {
+			output[i++] = (byte) (0x80 | 126);
+			output[i++] = (byte) (length >>> 8);
+			output[i++] = (byte) length;
+		} else {
+			output[i++] = (byte) (0x80 | 127);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				output[i++] = (byte) ((long) length >>> shift);
+			}
+		}
+		final int mask = RANDOM.nextInt();
+		output[i++] = (byte) (mask >>> 24);
+		output[i++] = (byte) (mask >>> 16);
+		output[i++] = (byte) (mask >>> 8);
+		output[i++] = (byte) mask;
+		int masked = 0;
+		do {
+			final int n = Math.min(payload.remaining(), output.length - i);
+			payload.get(output, i, n);
+			for (int j = i; j < i + n; j++, masked++) {
+				output[j] ^= (byte) (mask >>> (24 - ((masked & 3) << 3)));
+			}
+			out.write(output, 0, i + n);
+			i = 0;
+		} while (payload.hasRemaining());
+		out.flush();
+	}
+
+	private ByteBuffer deflate(final ByteBuffer payload, final boolean last) {
+		final byte[] bytes;
+		final int offset;
+		final int length = payload.remaining();
+		if (payload.hasArray()) {
+			bytes = payload.array();
+			offset = payload.arrayOffset() + payload.position();
+			((Buffer) payload).position(payload.limit());
+		} else {
+			scratch = ensure(scratch, length);
+			payload.get(scratch, 0, length);
+			bytes = scratch;
+			offset = 0;
+		}
+		deflater.setInput(bytes, offset, length);
+		if (deflated.length == 0) deflated = new byte[BUFFER_SIZE];
+		int n = 0;
+		while (true) {
+			n += deflater.deflate(deflated, n, deflated.length - n, Deflater.SYNC_FLUSH);
+			if (n < deflated.length) break;
+			deflated = Arrays.copyOf(deflated, deflated.length * 2);
+		}
+		if (last) {
+			// the flush ends with the tail, which the peer adds back
+			n -= DEFLATE_TAIL.length;
+			if (clientNoContextTakeover) deflater.reset();
+		}
+		if (deflated.length > KEPT_BUFFER_SIZE && last) {
+			final ByteBuffer copy = ByteBuffer.wrap(Arrays.copyOf(deflated, n));
+			deflated = new byte[0];
+			return copy;
+		}
+		return ByteBuffer.wrap(deflated, 0, n);
+	}
+
+	private void closeSocket() {
+		final Socket socket = this.socket;
+		if (null == socket) return;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			log.debug("Failed to close the socket", e);
+		}
+	}
+
+	private static void flip(final ByteBuffer buffer) {
+		// through Buffer, as ByteBuffer overrides it only since Java 9
+		((Buffer) buffer).flip();
+	}
+
+	/**
+	 * Receives the messages on the reading thread, one at a time.
+	 * The buffers handed over are reused, so copy what is needed after the call.
+	 * An exception thrown by a listener method is logged, and the reading goes on.
+	 */
+	public interface Listener {
+		public default void onOpen(@NotNull WebSocket webSocket) {
+		}
+
+		public default void onText(@NotNull WebSocket webSocket, @NotNull String text) {
+		}
+
+		/**
+		 * @param data the message, valid only during the call
+		 */
+		public default void onBinary(@NotNull WebSocket webSocket, @NotNull ByteBuffer data) {
+		}
+
+		/**
+		 * The pong has been sent already.
+		 *
+		 * @param data payload, valid only during the call
+		 */
+		public default void onPing(@NotNull WebSocket webSocket, @NotNull ByteBuffer data) {
+		}
+
+		/**
+		 * @param data payload, valid only during the call
+		 */
+		public default void onPong(@NotNull WebSocket webSocket, @NotNull ByteBuffer data) {
+		}
+
+		/**
+		 * The closing handshake has completed, and the connection is closed.
+		 *
+		 * @param code   code of the close frame of the server, {@link #NO_STATUS} if none
+		 *               or {@link #ABNORMAL_CLOSURE} if it did not answer in time
+		 * @param reason reason, maybe empty
+		 */
+		public default void onClose(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+		}
+
+		/**
+		 * The connection failed, and is closed. Either this or {@link #onClose} is called, once.
+		 *
+		 * @param e failure, {@link ProtocolException} if the server broke the protocol
+		 */
+		public default void onError(@NotNull WebSocket webSocket, @NotNull Throwable e) {
+		}
+	}
+
+	public static class Builder {
+		private final URI uri;
+		@Nullable
+		private Listener listener = null;
+		private Executor executor = runnable -> {
+			final Thread thread = new Thread(runnable, "harpy-websocket");
+			thread.setDaemon(true);
+			thread.start();
+		};
+		@Nullable
+		private TlsContext tlsContext = null;
+		private int connectTimeout = 25000;
+		private int pingInterval = 30000;
+		private long closeTimeout = 5000;
+		private int maxMessageSize = 16 << 20;
+		private boolean compression = false;
+		private final List<String> subprotocols = new ArrayList<>();
+		private final Map<String, String> headers = new LinkedHashMap<>();
+
+		private Builder(@NotNull final URI uri) {
+			final String scheme = String.valueOf(uri.getScheme()).toLowerCase(Locale.ROOT);
+			if (!Arrays.asList("ws", "wss", "http", "https").contains(scheme)) {
+				throw new IllegalArgumentException("Not a websocket uri: " + uri);
+			}
+			if (null == uri.getHost()) throw new IllegalArgumentException("No host: " + uri);
+			this.uri = uri;
+		}
+
+		/**
+		 * @param listener receives the messages
+		 * @return builder
+		 */
+		public Builder listener(@NotNull final Listener listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		/**
+		 * @param executor runs the blocking reads; a new daemon thread by default
+		 * @return builder
+		 */
+		public Builder executor(@NotNull final Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * @param tlsContext for wss, the default one of {@link HttpRequest} if not set
+		 * @return builder
+		 */
+		public Builder tlsContext(@NotNull final TlsContext tlsContext) {
+			this.tlsContext = tlsContext;
+			return this;
+		}
+
+		/**
+		 * @param connectTimeout milliseconds to connect and to get the upgrade response, 25 seconds by default
+		 * @return builder
+		 */
+		public Builder connectTimeout(final int connectTimeout) {
+			if (connectTimeout < 0) throw new IllegalArgumentException("connectTimeout: " + connectTimeout);
+			this.connectTimeout = connectTimeout;
+			return this;
+		}
+
+		/**
+		 * @param pingInterval milliseconds of silence before a ping, 30 seconds by default, 0 for none
+		 * @return builder
+		 */
+		public Builder pingInterval(final int pingInterval) {
+			if (pingInterval < 0) throw new IllegalArgumentException("pingInterval: " + pingInterval);
+			this.pingInterval = pingInterval;
+			return this;
+		}
+
+		/**
+		 * @param closeTimeout milliseconds to wait for the close frame of the server, 5 seconds by default
+		 * @return builder
+		 */
+		public Builder closeTimeout(final long closeTimeout) {
+			if (closeTimeout < 0) throw new IllegalArgumentException("closeTimeout: " + closeTimeout);
+			this.closeTimeout = closeTimeout;
+			return this;
+		}
+
+		/**
+		 * @param maxMessageSize bytes of a received message, after inflating; larger ones fail with 1009. 16MB by default
+		 * @return builder
+		 */
+		public Builder maxMessageSize(final int maxMessageSize) {
+			if (maxMessageSize < 0 || maxMessageSize > Integer.MAX_VALUE - 16) {
+				throw new IllegalArgumentException("maxMessageSize: " + maxMessageSize);
+			}
+			this.maxMessageSize = maxMessageSize;
+			return this;
+		}
+
+		/**
+		 * @param compression true to offer permessage-deflate, false by default
+		 * @return builder
+		 */
+		public Builder compression(final boolean compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * @param subprotocol subprotocol to offer, in the order of preference
+		 * @return builder
+		 */
+		public Builder subprotocol(@NotNull final String subprotocol) {
+			this.subprotocols.add(subprotocol);
+			return this;
+		}
+
+		/**
+		 * @param name  name of a header of the upgrade request, like Authorization or Origin
+		 * @param value value
+		 * @return builder
+		 */
+		public Builder header(@NotNull final String name, @NotNull final String value) {
+			this.headers.put(name, value);
+			return this;
+		}
+
+		/**
+		 * @return websocket, not connected yet
+		 * @throws IllegalStateException if no listener is set
+		 */
+		public WebSocket build() {
+			if (null == listener) throw new IllegalStateException("No listener");
+			return new WebSocket(this);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * XML Utilities
+ * <p>
+ * Parsers and serializers are made once per thread, from factories made once,
+ * with DTDs and external entities turned off.
+ *
+ * @author Elex
+ */
+@Slf4j
+public final class Xmlz {
+	private static final DocumentBuilderFactory BUILDER_FACTORY = builderFactory();
+	private static final TransformerFactory TRANSFORMER_FACTORY = transformerFactory();
+	/**
+	 * Serialization buffers up to this size are kept for the next use
+	 */
+	private static final int MAX_POOLED = 1 << 20;
+	private static final ThreadLocal<DocumentBuilder> BUILDER = ThreadLocal.withInitial(() -> {
+		try {
+			return BUILDER_FACTORY.newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+	private static final ThreadLocal<Transformer> TRANSFORMER = ThreadLocal.withInitial(() -> {
+		try {
+			return TRANSFORMER_FACTORY.newTransformer();
+		} catch (TransformerConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+	private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+	private Xmlz() {
+	}
+
+	/**
+	 * @return document builder of the current thread; do not share it with other threads
+	 */
+	public static DocumentBuilder documentBuilder() {
+		final DocumentBuilder builder = BUILDER.get();
+		builder.reset();
+		return builder;
+	}
+
+	/**
+	 * @return identity transformer of the current thread, writing UTF-8; do not share it with other threads
+	 */
+	public static Transformer transformer() {
+		final Transformer transformer = TRANSFORMER.get();
+		transformer.reset();
+		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+		return transformer;
+	}
+
+	/**
+	 * @param is XML
+	 * @return document
+	 * @throws IOException on read failure, or malformed XML
+	 */
+	public static Document parse(@NotNull final InputStream is) throws IOException {
+		try {
+			return documentBuilder().parse(is);
+		} catch (SAXException e) {
+			throw new IOException("Malformed XML", e);
+		}
+	}
+
+	/**
+	 * @param node document or element
+	 * @param os   where to write it, as UTF-8
+	 * @throws IOException on write failure
+	 */
+	public static void write(@NotNull final Node node, @NotNull final OutputStream os) throws IOException {
+		try {
+			transformer().transform(new DOMSource(node), new StreamResult(os));
+		} catch (TransformerException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException("Failed to write XML", e);
+		}
+	}
+
+	/**
+	 * @param node document or element
+	 * @return UTF-8 bytes, serialized into a buffer of the current thread and copied out once
+	 * @throws TransformerException on failure
+	 */
+	public static byte[] toBytes(@NotNull final Node node) throws TransformerException {
+		final Buffer buffer = BUFFER.get();
+		buffer.reset();
+		try {
+			transformer().transform(new DOMSource(node), new StreamResult(buffer));
+			return buffer.toByteArray();
+		} finally {
+			buffer.trim();
+		}
+	}
+
+	private static DocumentBuilderFactory builderFactory() {
+		final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setXIncludeAware(false);
+		factory.setExpandEntityReferences(false);
+		feature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		feature(factory, "http://xml.org/sax/features/external-general-entities", false);
+		feature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+		feature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		try {
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+		} catch (IllegalArgumentException e) {
+			log.debug("Not supported by {}", factory.getClass().getName(), e);
+		}
+		return factory;
+	}
+
+	private static void feature(final DocumentBuilderFactory factory, final String feature, final boolean value) {
+		try {
+			factory.setFeature(feature, value);
+		} catch (ParserConfigurationException e) {
+			log.debug("{} not supported by {}", feature, factory.getClass().getName());
+		}
+	}
+
+	private static TransformerFactory transformerFactory() {
+		final TransformerFactory factory = TransformerFactory.newInstance();
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (TransformerConfigurationException e) {
+			log.debug("Secure processing not supported by {}", factory.getClass().getName());
+		}
+		try {
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+		} catch (IllegalArgumentException e) {
+			log.debug("Not supported by {}", factory.getClass().getName(), e);
+		}
+		return factory;
+	}
+
+	private static final class Buffer extends ByteArrayOutputStream {
+		private static final int INITIAL = 8192;
+
+		Buffer() {
+			super(INITIAL);
+		}
+
+		/**
+		 * Drop the array if a large document grew it beyond 1MB
+		 */
+		void trim() {
+			if (buf.length > MAX_POOLED) buf = new byte[INITIAL];
+		}
+	}
+}
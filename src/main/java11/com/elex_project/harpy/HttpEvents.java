@@ -0,0 +1,85 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Event recorder, emits JFR events.
+ * <p>
+ * Does nothing when the runtime was linked without the jdk.jfr module.
+ *
+ * @author Elex
+ */
+final class HttpEvents {
+	private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+	static {
+		if (AVAILABLE) {
+			FlightRecorder.addPeriodicEvent(HttpStatisticsEvent.class, HttpStatisticsEvent::emit);
+		}
+	}
+
+	private HttpEvents() {
+	}
+
+	static void begin(final HttpTrace trace) {
+		if (!AVAILABLE) return;
+		final HttpRequestEvent event = new HttpRequestEvent();
+		if (event.isEnabled()) {
+			event.begin();
+			trace.event = event;
+		}
+	}
+
+	static void commit(final HttpTrace trace) {
+		if (!(trace.event instanceof HttpRequestEvent)) return;
+		final HttpRequestEvent event = (HttpRequestEvent) trace.event;
+		event.end();
+		if (event.shouldCommit()) {
+			event.method = trace.method;
+			event.host = trace.host;
+			event.port = trace.port;
+			event.status = trace.status;
+			event.bytesIn = trace.bytesIn;
+			event.bytesOut = trace.bytesOut;
+			event.connectTime = trace.connectTime;
+			event.writeTime = trace.writeTime;
+			event.waitTime = trace.waitTime;
+			event.readTime = trace.readTime;
+			event.failure = null == trace.failure ? null : trace.failure.toString();
+			event.commit();
+		}
+		trace.event = null;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic JFR event with the counters of {@link HttpStatistics}.
+ *
+ * @author Elex
+ */
+@Name("com.elex_project.harpy.HttpStatistics")
+@Label("HTTP Statistics")
+@Category({"Harpy", "HTTP"})
+@Period("1 s")
+@StackTrace(false)
+final class HttpStatisticsEvent extends Event {
+	@Label("Active Requests")
+	long activeRequests;
+
+	@Label("Total Requests")
+	long totalRequests;
+
+	@Label("Failed Requests")
+	long failedRequests;
+
+	@Label("Bytes In")
+	@DataAmount
+	long bytesIn;
+
+	@Label("Bytes Out")
+	@DataAmount
+	long bytesOut;
+
+	@Label("Full TLS Handshakes")
+	long fullHandshakes;
+
+	@Label("Resumed TLS Handshakes")
+	long resumedHandshakes;
+
+	@Label("Prewarmed Connections")
+	long prewarmedConnections;
+
+	@Label("Limited Requests")
+	long limitedRequests;
+
+	static void emit() {
+		final HttpStatisticsEvent event = new HttpStatisticsEvent();
+		event.activeRequests = HttpStatistics.getActiveRequests();
+		event.totalRequests = HttpStatistics.getTotalRequests();
+		event.failedRequests = HttpStatistics.getFailedRequests();
+		event.bytesIn = HttpStatistics.getBytesIn();
+		event.bytesOut = HttpStatistics.getBytesOut();
+		event.fullHandshakes = HttpStatistics.getFullHandshakes();
+		event.resumedHandshakes = HttpStatistics.getResumedHandshakes();
+		event.prewarmedConnections = HttpStatistics.getPrewarmedConnections();
+		event.limitedRequests = HttpStatistics.getLimitedRequests();
+		event.commit();
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BodyReaderTest {
+
+	@Test
+	void charset() {
+		assertEquals(StandardCharsets.UTF_8, BodyReader.charsetOf(null, StandardCharsets.UTF_8));
+		assertEquals(StandardCharsets.UTF_8, BodyReader.charsetOf("application/json", StandardCharsets.UTF_8));
+		assertEquals(Charset.forName("EUC-KR"), BodyReader.charsetOf("text/html; Charset=\"euc-kr\"", StandardCharsets.UTF_8));
+		assertEquals(StandardCharsets.ISO_8859_1, BodyReader.charsetOf("text/plain;charset=ISO-8859-1;format=flowed", StandardCharsets.UTF_8));
+		assertEquals(StandardCharsets.UTF_8, BodyReader.charsetOf("text/plain; charset=no-such-charset", StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void readString() throws IOException {
+		final String text = "안녕하세요, harpy";
+		final byte[] euckr = text.getBytes("EUC-KR");
+		final HttpHeaders headers = new HttpHeaders();
+		headers.add("Content-Type", "text/plain; charset=EUC-KR");
+		headers.add("Content-Length", String.valueOf(euckr.length));
+		assertEquals(text, BodyReader.readString(new ByteArrayInputStream(euckr), headers));
+
+		final byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+		assertEquals(text, BodyReader.readString(new ByteArrayInputStream(utf8), null));
+		// shorter and longer than said
+		assertEquals(text, BodyReader.readString(new ByteArrayInputStream(utf8), utf8.length + 10, StandardCharsets.UTF_8));
+		assertEquals(text, BodyReader.readString(new ByteArrayInputStream(utf8), 3, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void readLarge() throws IOException {
+		// beyond the pooled buffer, length unknown
+		final byte[] body = LoopbackServer.body(0, 3 << 20);
+		assertArrayEquals(body, BodyReader.readBytes(new ByteArrayInputStream(body), -1));
+		assertArrayEquals(body, BodyReader.readBytes(new ByteArrayInputStream(body), body.length));
+		assertEquals(new String(body, StandardCharsets.US_ASCII),
+				BodyReader.readString(new ByteArrayInputStream(body), -1, StandardCharsets.US_ASCII));
+		// the pooled buffer still works afterwards
+		assertEquals("abc", BodyReader.readString(new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8)), -1, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void maxBytes() throws IOException {
+		final byte[] body = LoopbackServer.body(0, 100_000);
+		assertThrows(IOException.class, () -> BodyReader.readString(new ByteArrayInputStream(body), -1, StandardCharsets.US_ASCII, 99_999));
+		assertThrows(IOException.class, () -> BodyReader.readString(new ByteArrayInputStream(body), body.length, StandardCharsets.US_ASCII, 1000));
+		assertThrows(IOException.class, () -> BodyReader.readString(new ByteArrayInputStream(body, 0, 1001), -1, StandardCharsets.US_ASCII, 1000));
+		assertEquals(100_000, BodyReader.readString(new ByteArrayInputStream(body), -1, StandardCharsets.US_ASCII, 100_000).length());
+	}
+
+	@Test
+	void globalMemoryLimit() throws IOException {
+		final byte[] body = LoopbackServer.body(0, 100_000);
+		final ResponseLimits limits = ResponseLimits.builder().budgetWait(50).build();
+		ResponseLimits.setGlobalMemoryLimit(50_000);
+		try {
+			assertThrows(IOException.class, () -> BodyReader.readString(new ByteArrayInputStream(body), null, limits));
+			final HttpHeaders headers = new HttpHeaders();
+			headers.add("Content-Length", String.valueOf(body.length));
+			assertThrows(IOException.class, () -> BodyReader.readString(new ByteArrayInputStream(body), headers, limits));
+			assertEquals(20_000, BodyReader.readString(new ByteArrayInputStream(body, 0, 20_000), null, limits).length());
+			// given back once decoded
+			assertEquals(0, ResponseLimits.getGlobalMemoryUsed());
+		} finally {
+			ResponseLimits.setGlobalMemoryLimit(0);
+		}
+	}
+
+	@Test
+	void handlerTransform() throws Throwable {
+		final String text = "안녕하세요, harpy";
+		final byte[] euckr = text.getBytes("EUC-KR");
+		final HttpHeaders headers = new HttpHeaders();
+		headers.add("Content-Type", "text/plain; charset=EUC-KR");
+		headers.add("Content-Length", String.valueOf(euckr.length));
+		final HttpStringResponseHandler handler = new HttpStringResponseHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, final String message) {
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+			}
+		};
+		assertEquals(text, handler.transform(new ByteArrayInputStream(euckr), headers));
+
+		// overriding only the one-argument form still gets called, with the headers along
+		final HttpStringResponseHandler trimming = new HttpStringResponseHandler() {
+			@Override
+			public String transform(final InputStream is) throws IOException {
+				return super.transform(is).trim();
+			}
+
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, final String message) {
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+			}
+		};
+		final byte[] padded = ("  " + text + "\n").getBytes("EUC-KR");
+		final HttpHeaders paddedHeaders = new HttpHeaders();
+		paddedHeaders.add("Content-Type", "text/plain; charset=EUC-KR");
+		paddedHeaders.add("Content-Length", String.valueOf(padded.length));
+		assertEquals(text, trimming.transform(new ByteArrayInputStream(padded), paddedHeaders));
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	void aimd() {
+		final AimdLimit limit = new AimdLimit(10, 1, 100, 0.5, 1000);
+		for (int i = 0; i < 100; i++) limit.onSample(10 * MS, 10, false);
+		assertTrue(limit.getLimit() > 10);
+		final int grown = limit.getLimit();
+		limit.onSample(10 * MS, 10, true);
+		assertEquals(grown / 2, limit.getLimit(), 1);
+		// too slow counts as a drop
+		limit.onSample(2000 * MS, 10, false);
+		assertEquals(grown / 4, limit.getLimit(), 1);
+		// not grown while mostly unused
+		final int current = limit.getLimit();
+		for (int i = 0; i < 100; i++) limit.onSample(10 * MS, 1, false);
+		assertEquals(current, limit.getLimit());
+	}
+
+	@Test
+	void gradient() {
+		final GradientLimit limit = new GradientLimit(20, 1, 200, 1.5, 0.2);
+		for (int i = 0; i < 50; i++) limit.onSample(10 * MS, limit.getLimit(), false);
+		final int grown = limit.getLimit();
+		assertTrue(grown > 20);
+		// the upstream slows down
+		for (int i = 0; i < 50; i++) limit.onSample(50 * MS, limit.getLimit(), false);
+		assertTrue(limit.getLimit() < grown / 2);
+	}
+
+	@Test
+	void queue() throws Exception {
+		final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+				.algorithm(() -> new AimdLimit(2, 2, 2, 0.9, 1000))
+				.maxQueue(1)
+				.queueTimeout(5000)
+				.build();
+		final URL url = new URL("http://example.com/");
+		final ConcurrencyLimiter.Permit a = limiter.acquire(url);
+		final ConcurrencyLimiter.Permit b = limiter.acquire(url);
+		assertEquals(2, limiter.getInFlight("example.com"));
+
+		final CompletableFuture<ConcurrencyLimiter.Permit> queued = CompletableFuture.supplyAsync(() -> {
+			try {
+				return limiter.acquire(url);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		while (limiter.getQueued("example.com") == 0) Thread.sleep(1);
+		// the queue is full
+		assertThrows(ConcurrencyLimiter.LimitExceededException.class, () -> limiter.acquire(url));
+		assertEquals(1, limiter.getRejected());
+
+		a.release(false);
+		final ConcurrencyLimiter.Permit c = queued.get(1, TimeUnit.SECONDS);
+		assertEquals(0, limiter.getQueued("example.com"));
+		assertEquals(2, limiter.getInFlight("example.com"));
+		b.release(false);
+		c.release(false);
+		c.release(false);
+		assertEquals(0, limiter.getInFlight("example.com"));
+	}
+
+	@Test
+	void send() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+					.algorithm(GradientLimit::new)
+					.build();
+			for (int i = 0; i < 10; i++) {
+				final HttpGetRequest<String> request = new HttpGetRequest<>(server.uri("/bytes/16").build());
+				request.setConcurrencyLimiter(limiter);
+				request.send(null);
+			}
+			final String host = "127.0.0.1:" + server.getPort();
+			assertEquals(0, limiter.getInFlight(host));
+			assertTrue(limiter.getLimit(host) >= 1);
+			assertTrue(limiter.getLimits().containsKey(host));
+		}
+	}
+
+	@Test
+	void notFoundIsNotADrop() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+					.algorithm(() -> new AimdLimit(10, 1, 100, 0.5, 1000))
+					.build();
+			final String host = "127.0.0.1:" + server.getPort();
+			for (int i = 0; i < 20; i++) {
+				send(limiter, server, "/status/404");
+			}
+			assertEquals(10, limiter.getLimit(host));
+			send(limiter, server, "/status/503");
+			assertEquals(5, limiter.getLimit(host));
+		}
+	}
+
+	private static void send(final ConcurrencyLimiter limiter, final LoopbackServer server, final String path) throws IOException {
+		final HttpGetRequest<String> request = new HttpGetRequest<>(server.uri(path).build());
+		request.setConcurrencyLimiter(limiter);
+		request.send(new HttpStringResponseHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+			}
+		});
+	}
+}
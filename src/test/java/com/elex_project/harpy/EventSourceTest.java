@@ -0,0 +1,232 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventSourceTest {
+
+	private static List<ServerSentEvent> parse(final InputStream is) throws IOException {
+		final List<ServerSentEvent> events = new ArrayList<>();
+		try (EventStreamReader reader = new EventStreamReader(is)) {
+			ServerSentEvent event;
+			while (null != (event = reader.next())) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * @return stream handing over a byte at a time, to split lines and line ends across reads
+	 */
+	private static InputStream trickle(final byte[] bytes) {
+		return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+			@Override
+			public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+				return super.read(b, off, Math.min(1, len));
+			}
+		};
+	}
+
+	@Test
+	void parse() throws IOException {
+		final String stream = "\uFEFF: comment\r\n"
+				+ "data: first\r\n"
+				+ "data:second\r\n\r\n"
+				+ "event: update\rid: 7\rdata: {\"n\": 1}\r\r"
+				+ "id: 8\n\n"
+				+ "data\n"
+				+ "unknown: field\n\n"
+				+ "retry: 1500\n"
+				+ "retry: soon\n"
+				+ "data: 한글\n\n"
+				+ "data: unfinished";
+		final byte[] bytes = stream.getBytes(StandardCharsets.UTF_8);
+		for (InputStream is : new InputStream[]{new ByteArrayInputStream(bytes), trickle(bytes)}) {
+			final List<ServerSentEvent> events = parse(is);
+			assertEquals(4, events.size());
+			assertEquals("first\nsecond", events.get(0).getData());
+			assertEquals("message", events.get(0).getEvent());
+			assertEquals("", events.get(0).getId());
+			assertEquals("update", events.get(1).getEvent());
+			assertEquals("7", events.get(1).getId());
+			assertEquals("{\"n\": 1}", events.get(1).getData());
+			// the id of a dispatch without data carries on
+			assertEquals("", events.get(2).getData());
+			assertEquals("8", events.get(2).getId());
+			assertEquals("한글", events.get(3).getData());
+		}
+		final EventStreamReader reader = new EventStreamReader(new ByteArrayInputStream(bytes));
+		while (null != reader.next()) ;
+		assertEquals(1500, reader.getRetry());
+	}
+
+	@Test
+	void reconnect() throws Exception {
+		final AtomicInteger connections = new AtomicInteger();
+		final List<String> lastEventIds = new CopyOnWriteArrayList<>();
+		final List<String> received = new CopyOnWriteArrayList<>();
+		final CountDownLatch closed = new CountDownLatch(1);
+		try (LoopbackServer server = new LoopbackServer()) {
+			server.handle("/events", exchange -> {
+				final int n = connections.incrementAndGet();
+				lastEventIds.add(String.valueOf(exchange.getRequestHeaders().getFirst("Last-Event-ID")));
+				if (n == 3) {
+					exchange.sendResponseHeaders(204, -1);
+					exchange.close();
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream os = exchange.getResponseBody()) {
+					final String events = n == 1
+							? "retry: 50\nid: 1\ndata: a\n\nid: 2\ndata: b\n\n"
+							: "data: c\n\n";
+					os.write(events.getBytes(StandardCharsets.UTF_8));
+				}
+			});
+			final EventSource source = EventSource.builder(server.uri("/events").build())
+					.retry(10_000)
+					.listener(new EventSource.Listener() {
+						@Override
+						public void onEvent(@NotNull final ServerSentEvent event) {
+							received.add(event.getId() + ":" + event.getData());
+						}
+
+						@Override
+						public void onClosed() {
+							closed.countDown();
+						}
+					})
+					.build();
+			source.start();
+			// reconnected after the retry set by the server, not the 10 seconds
+			assertTrue(closed.await(5, TimeUnit.SECONDS));
+			assertTrue(source.isClosed());
+			assertEquals(50, source.getRetry());
+		}
+		assertEquals(3, connections.get());
+		assertEquals("[null, 2, 2]", lastEventIds.toString());
+		assertEquals("[1:a, 2:b, 2:c]", received.toString());
+	}
+
+	@Test
+	void close() throws Exception {
+		final CountDownLatch opened = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+		try (LoopbackServer server = new LoopbackServer()) {
+			server.handle("/forever", exchange -> {
+				exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+				exchange.sendResponseHeaders(200, 0);
+				final OutputStream os = exchange.getResponseBody();
+				try {
+					while (true) {
+						os.write(": heartbeat\n".getBytes(StandardCharsets.UTF_8));
+						os.flush();
+						Thread.sleep(20);
+					}
+				} catch (IOException | InterruptedException e) {
+					exchange.close();
+				}
+			});
+			final EventSource source = EventSource.builder(server.uri("/forever").build())
+					.listener(new EventSource.Listener() {
+						@Override
+						public void onEvent(@NotNull final ServerSentEvent event) {
+						}
+
+						@Override
+						public void onOpen(@NotNull final HttpHeaders headers) {
+							opened.countDown();
+						}
+
+						@Override
+						public void onClosed() {
+							closed.countDown();
+						}
+					})
+					.build();
+			source.start();
+			assertTrue(opened.await(5, TimeUnit.SECONDS));
+			source.close();
+			assertTrue(closed.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void notAnEventStream() throws Exception {
+		final List<Throwable> errors = new CopyOnWriteArrayList<>();
+		final CountDownLatch closed = new CountDownLatch(1);
+		try (LoopbackServer server = new LoopbackServer()) {
+			final EventSource source = EventSource.builder(server.uri("/status/404").build())
+					.retry(0)
+					.listener(new EventSource.Listener() {
+						@Override
+						public void onEvent(@NotNull final ServerSentEvent event) {
+						}
+
+						@Override
+						public void onError(@NotNull final Throwable e) {
+							errors.add(e);
+						}
+
+						@Override
+						public void onClosed() {
+							closed.countDown();
+						}
+					})
+					.build();
+			source.start();
+			assertTrue(closed.await(5, TimeUnit.SECONDS));
+		}
+		// not retried
+		assertEquals(1, errors.size());
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpByteBufferResponseHandlerTest {
+
+	/**
+	 * @return bytes of the body, or the failure
+	 */
+	private static Object get(final LoopbackServer server, final String path,
+	                          @Nullable final ByteBufferPool pool, final ResponseLimits limits) throws IOException {
+		final HttpGetRequest<ByteBuffer> request = new HttpGetRequest<>(server.uri(path).build());
+		final AtomicReference<Object> result = new AtomicReference<>();
+		request.send(new HttpByteBufferResponseHandler(pool, limits) {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final ByteBuffer message) {
+				assertNotNull(message);
+				final byte[] bytes = new byte[message.remaining()];
+				message.get(bytes);
+				result.set(bytes);
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+				result.set(e);
+			}
+		});
+		return result.get();
+	}
+
+	@Test
+	void pooled() throws IOException {
+		final ByteBufferPool pool = new ByteBufferPool(true, 1 << 20, 1 << 20);
+		try (LoopbackServer server = new LoopbackServer()) {
+			for (int i = 0; i < 2; i++) {
+				assertArrayEquals(LoopbackServer.body(0, 100_000), (byte[]) get(server, "/bytes/100000", pool, ResponseLimits.getDefault()));
+				// released after onResponse, and reused by the next one
+				assertEquals(128 * 1024, pool.getPooledBytes());
+			}
+		}
+	}
+
+	@Test
+	void unknownLength() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			assertArrayEquals(LoopbackServer.body(0, 100_000), (byte[]) get(server, "/chunked/100000", null, ResponseLimits.getDefault()));
+			assertArrayEquals(new byte[0], (byte[]) get(server, "/bytes/0", null, ResponseLimits.getDefault()));
+		}
+	}
+
+	@Test
+	void tooLarge() throws IOException {
+		final ByteBufferPool pool = new ByteBufferPool(true, 1 << 20, 1 << 20);
+		final ResponseLimits limits = ResponseLimits.builder().maxBytes(10_000).build();
+		try (LoopbackServer server = new LoopbackServer()) {
+			assertTrue(get(server, "/bytes/100000", pool, limits) instanceof IOException);
+			assertTrue(get(server, "/chunked/100000", pool, limits) instanceof IOException);
+			assertArrayEquals(LoopbackServer.body(0, 10_000), (byte[]) get(server, "/chunked/10000", pool, limits));
+		}
+		// the buffers of the failed ones went back too
+		assertTrue(pool.getPooledBytes() > 0);
+	}
+
+	@Test
+	void globalMemoryLimit() throws IOException {
+		final ResponseLimits limits = ResponseLimits.builder().budgetWait(50).build();
+		ResponseLimits.setGlobalMemoryLimit(50_000);
+		try (LoopbackServer server = new LoopbackServer()) {
+			assertTrue(get(server, "/bytes/100000", null, limits) instanceof IOException);
+			assertTrue(get(server, "/chunked/100000", null, limits) instanceof IOException);
+			assertArrayEquals(LoopbackServer.body(0, 10_000), (byte[]) get(server, "/bytes/10000", null, limits));
+			// given back by release(), and by the failed ones
+			assertEquals(0, ResponseLimits.getGlobalMemoryUsed());
+		} finally {
+			ResponseLimits.setGlobalMemoryLimit(0);
+		}
+	}
+
+	@Test
+	void sizeClasses() {
+		final ByteBufferPool pool = new ByteBufferPool(false, 64 * 1024, 16 * 1024);
+		final ByteBuffer buffer = pool.acquire(5000);
+		assertEquals(8192, buffer.capacity());
+		assertEquals(5000, buffer.limit());
+		pool.release(buffer);
+		assertSame(buffer, pool.acquire(8000));
+		// over the pooled capacity, or not from a size class
+		pool.release(ByteBuffer.allocate(16 * 1024));
+		pool.release(ByteBuffer.allocate(16 * 1024));
+		assertEquals(16 * 1024, pool.getPooledBytes());
+		pool.release(ByteBuffer.allocate(1000));
+		pool.release(ByteBuffer.allocateDirect(8192));
+		assertEquals(16 * 1024, pool.getPooledBytes());
+		assertEquals(100_000, pool.acquire(100_000).capacity());
+	}
+}
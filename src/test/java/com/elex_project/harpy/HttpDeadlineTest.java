@@ -0,0 +1,165 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpDeadlineTest {
+	private static LoopbackServer server;
+
+	@BeforeAll
+	static void start() throws IOException {
+		server = new LoopbackServer();
+	}
+
+	@AfterAll
+	static void stop() {
+		server.close();
+	}
+
+	@Test
+	void withinDeadline() throws IOException {
+		final AtomicReference<String> body = new AtomicReference<>();
+		final HttpGetRequest<String> request = new HttpGetRequest<>(server.uri("/bytes/16").build());
+		request.setDeadline(5000);
+		request.send(new HttpStringResponseHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+				body.set(message);
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+				fail(e);
+			}
+		});
+		assertEquals("abcdefghijklmnop", body.get());
+	}
+
+	@Test
+	void waitingForResponse() throws IOException {
+		final long start = System.nanoTime();
+		assertTrue(get("/delay/5000", 300) instanceof SocketTimeoutException);
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+	}
+
+	@Test
+	void tricklingBody() throws IOException {
+		// 100 bytes, one every 50ms, each read well within the read timeout
+		final long start = System.nanoTime();
+		assertTrue(get("/trickle/100/50", 500) instanceof SocketTimeoutException);
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+	}
+
+	@Test
+	void stalledBody() throws IOException {
+		// 8 bytes over 400ms, then nothing; the read timeout clamped when connecting is still ~500ms
+		server.handle("/stall", exchange -> {
+			exchange.sendResponseHeaders(200, 100);
+			try (OutputStream os = exchange.getResponseBody()) {
+				for (int i = 0; i < 8; i++) {
+					os.write('a');
+					os.flush();
+					LoopbackServer.sleep(50);
+				}
+				LoopbackServer.sleep(5000);
+			} catch (IOException ignore) {
+				// client went away
+			}
+		});
+		final long start = System.nanoTime();
+		assertTrue(get("/stall", 500) instanceof SocketTimeoutException);
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(750));
+	}
+
+	@Test
+	void timerWheel() throws InterruptedException {
+		final TimerWheel wheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 64, "timer-test");
+		final int count = 20000;
+		final CountDownLatch expired = new CountDownLatch(count / 2);
+		final List<TimerWheel.Timeout> timeouts = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			// far enough to be cancelled in time, spanning many rounds of the wheel
+			timeouts.add(wheel.schedule(1000 + i % 200, TimeUnit.MILLISECONDS, expired::countDown));
+		}
+		for (int i = 0; i < count; i += 2) {
+			assertTrue(timeouts.get(i).cancel());
+		}
+		assertTrue(expired.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		for (int i = 0; i < count; i++) {
+			final TimerWheel.Timeout timeout = timeouts.get(i);
+			assertEquals(i % 2 == 0, timeout.isCancelled());
+			assertEquals(i % 2 == 1, timeout.isExpired());
+		}
+	}
+
+	@Nullable
+	private static Throwable get(final String path, final long deadline) throws IOException {
+		final AtomicReference<Throwable> exception = new AtomicReference<>();
+		final HttpGetRequest<String> request = new HttpGetRequest<>(server.uri(path).build());
+		request.setRequestTimeout(10000);
+		request.setDeadline(deadline);
+		try {
+			request.send(new HttpStringResponseHandler() {
+				@Override
+				public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+					fail("Deadline should have been exceeded");
+				}
+
+				@Override
+				public void onException(final Throwable e) {
+					exception.set(e);
+				}
+			});
+		} catch (SocketTimeoutException e) {
+			exception.set(e);
+		}
+		return exception.get();
+	}
+}
@@ -34,45 +34,181 @@ package com.elex_project.harpy;
 
 import com.elex_project.abraxas.Console;
 import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class HttpGetRequestTest {
+	private static LoopbackServer server;
+
+	@BeforeAll
+	static void start() throws IOException {
+		server = new LoopbackServer();
+	}
+
+	@AfterAll
+	static void stop() {
+		server.close();
+	}
+
 	@Test
-	void send() {
-
-		try {
-			HttpGetRequest<String> request = new HttpGetRequest<>(
-					Uri.builder()
-					.scheme("https").host("www.elex-project.com")
-					.build());
-			request.setFollowRedirect(true);
-			request.send(new HttpStringResponseHandler() {
-				@Override
-				public void onResponse(final int status, final Map<String, List<String>> headers,
-				                       @Nullable final String message) {
-					Console.writeLine("Status: {}",status);
-					for (String key : headers.keySet()) {
-						try {
-							Console.writeLine("Header: {} = {}", key, headers.get(key));
-						} catch (Throwable ignore) {
-						}
-					}
-					Console.writeLine(message);
+	void send() throws IOException {
+		HttpGetRequest<String> request = new HttpGetRequest<>(server.uri("/bytes/1024").build());
+		request.setFollowRedirect(true);
+		request.send(new StringHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers,
+			                       @Nullable final String message) {
+				Console.writeLine("Status: {}", status);
+				for (String key : headers.keySet()) {
+					Console.writeLine("Header: {} = {}", key, headers.get(key));
 				}
+				assertEquals(200, status);
+				assertEquals(new String(LoopbackServer.body(0, 1024), StandardCharsets.UTF_8), message);
+			}
+		});
+	}
+
+	@Test
+	void chunked() throws IOException {
+		final String message = get("/chunked/10000");
+		assertEquals(new String(LoopbackServer.body(0, 10000), StandardCharsets.UTF_8), message);
+	}
+
+	@Test
+	void gzip() throws IOException {
+		final AtomicReference<byte[]> body = new AtomicReference<>();
+		new HttpGetRequest<byte[]>(server.uri("/gzip/5000").build()).send(new HttpResponseHandler<byte[]>() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final byte[] message) {
+				body.set(message);
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+				fail(e);
+			}
+
+			@Override
+			public byte[] transform(final InputStream is) throws IOException {
+				return readAll(new GZIPInputStream(is));
+			}
+		});
+		assertArrayEquals(LoopbackServer.body(0, 5000), body.get());
+	}
+
+	@Test
+	void range() throws IOException {
+		HttpGetRequest<String> request = new HttpGetRequest<>(server.uri("/bytes/100").build());
+		request.setRequestHeaderProperty("Range", "bytes=10-19");
+		request.send(new StringHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+				assertEquals(206, status);
+				assertEquals("bytes 10-19/100", headers.get("Content-range").get(0));
+				assertEquals("klmnopqrst", message);
+			}
+		});
+	}
+
+	@Test
+	void redirect() throws IOException {
+		HttpGetRequest<String> request = new HttpGetRequest<>(server.uri("/redirect/3").build());
+		request.setFollowRedirect(true);
+		request.send(new StringHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+				assertEquals(200, status);
+				assertEquals("abcdefghijklmnop", message);
+			}
+		});
+	}
+
+	@Test
+	void delay() throws IOException {
+		final long start = System.nanoTime();
+		assertEquals("abcdefghijklmnop", get("/delay/200"));
+		assertTrue(System.nanoTime() - start >= 200_000_000L);
+	}
+
+	@Test
+	void drop() throws IOException {
+		final AtomicReference<Throwable> exception = new AtomicReference<>();
+		new HttpGetRequest<String>(server.uri("/drop").build()).send(new StringHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+				fail("Connection should have been dropped");
+			}
 
+			@Override
+			public void onException(final Throwable e) {
+				exception.set(e);
+			}
+		});
+		assertTrue(exception.get() instanceof IOException);
+	}
+
+	@Test
+	void disconnect() throws IOException {
+		final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+		server.handle("/connection", exchange -> {
+			sent.add(exchange.getRequestHeaders().getFirst("Connection"));
+			LoopbackServer.readAll(exchange.getRequestBody());
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		});
+		for (final boolean disconnect : new boolean[]{true, false}) {
+			final HttpGetRequest<String> request = new HttpGetRequest<>(server.uri("/connection").build());
+			request.setDisconnect(disconnect);
+			request.send(new StringHandler() {
 				@Override
-				public void onException(final Throwable e) {
-					e.printStackTrace();
+				public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+					assertEquals(204, status);
 				}
 			});
+		}
+		assertEquals(Arrays.asList("close", "keep-alive"), sent);
+	}
 
+	private static String get(final String path) throws IOException {
+		final AtomicReference<String> body = new AtomicReference<>();
+		new HttpGetRequest<String>(server.uri(path).build()).send(new StringHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+				body.set(message);
+			}
+		});
+		return body.get();
+	}
+
+	private static byte[] readAll(final InputStream is) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final byte[] chunk = new byte[8192];
+		int n;
+		while ((n = is.read(chunk)) > 0) {
+			buffer.write(chunk, 0, n);
+		}
+		return buffer.toByteArray();
+	}
 
-		} catch (IOException e) {
-			e.printStackTrace();
+	private static abstract class StringHandler extends HttpStringResponseHandler {
+		@Override
+		public void onException(final Throwable e) {
+			fail(e);
 		}
 	}
-}
\ No newline at end of file
+}
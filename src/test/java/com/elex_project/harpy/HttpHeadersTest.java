@@ -0,0 +1,105 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpHeadersTest {
+
+	@Test
+	void lookup() {
+		final HttpHeaders headers = new HttpHeaders(2);
+		headers.add("content-type", "text/plain; charset=UTF-8");
+		headers.add("Cache-Control", "no-cache, max-age=\"0, 1\"");
+		headers.add("X-Custom", "a");
+		headers.add("cache-control", "private");
+		headers.add("x-custom", "b");
+
+		assertEquals(5, headers.count());
+		assertEquals("text/plain; charset=UTF-8", headers.getContentType());
+		assertEquals("text/plain; charset=UTF-8", headers.getFirst("CONTENT-TYPE"));
+		// well-known names are canonical
+		assertEquals("Content-Type", headers.getName(0));
+		assertEquals(Arrays.asList("a", "b"), headers.getValues("X-CUSTOM"));
+		assertEquals(Arrays.asList("no-cache", "max-age=\"0, 1\"", "private"), headers.getTokens("cache-control"));
+		assertNull(headers.getFirst("Location"));
+		assertEquals(Collections.emptyList(), headers.getValues("X-Missing"));
+		assertEquals(-1, headers.getContentLength());
+	}
+
+	@Test
+	void mapView() {
+		final HttpHeaders headers = new HttpHeaders();
+		headers.add("Content-Length", "16");
+		headers.add("X-Custom", "a");
+		headers.add("X-CUSTOM", "b");
+
+		final Map<String, List<String>> map = headers;
+		assertEquals(2, map.size());
+		assertEquals(Arrays.asList("Content-Length", "X-Custom"), new ArrayList<>(map.keySet()));
+		assertEquals(Arrays.asList("a", "b"), map.get("x-custom"));
+		assertTrue(map.containsKey("content-length"));
+		assertNull(map.get(null));
+		assertThrows(UnsupportedOperationException.class, () -> map.put("A", Collections.singletonList("b")));
+		assertEquals(16, headers.getContentLength());
+	}
+
+	@Test
+	void connection() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final HttpURLConnection connection = (HttpURLConnection) new URL(server.uri("/bytes/16").build().toString()).openConnection();
+			try {
+				final HttpHeaders headers = HttpHeaders.of(connection);
+				assertEquals("HTTP/1.1 200 OK", headers.getStatusLine());
+				assertEquals(Collections.singletonList("HTTP/1.1 200 OK"), headers.get(null));
+				assertEquals(16, headers.getContentLength());
+				for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+					assertTrue(headers.containsKey(entry.getKey()));
+				}
+			} finally {
+				connection.disconnect();
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Expect: 100-continue, against a raw socket, as HttpServer always answers 100 Continue.
+ */
+class HttpPostRequestTest {
+	private static final String BODY = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+	@Test
+	void expectContinue() throws Exception {
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			final CompletableFuture<String> received = serve(server, "HTTP/1.1 100 Continue\r\n\r\n");
+			final AtomicInteger status = new AtomicInteger();
+			final AtomicReference<String> message = new AtomicReference<>();
+			post(server, 0, status, message);
+
+			assertEquals(200, status.get());
+			assertEquals("ok", message.get());
+			assertEquals(BODY, received.get(1, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void rejected() throws Exception {
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			final CompletableFuture<String> received = serve(server, "HTTP/1.1 413 Payload Too Large\r\nContent-Length: 0\r\n\r\n");
+			final AtomicInteger status = new AtomicInteger();
+			final AtomicReference<String> message = new AtomicReference<>("not null");
+			post(server, 0, status, message);
+
+			assertEquals(413, status.get());
+			assertNull(message.get());
+			// the connection was closed without sending the body
+			assertEquals("", received.get(1, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void belowThreshold() throws Exception {
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			final CompletableFuture<String> received = serve(server, null);
+			final AtomicInteger status = new AtomicInteger();
+			final AtomicReference<String> message = new AtomicReference<>();
+			post(server, 1024, status, message);
+
+			assertEquals(200, status.get());
+			assertEquals(BODY, received.get(1, TimeUnit.SECONDS));
+		}
+	}
+
+	private static void post(final ServerSocket server, final long threshold,
+	                         final AtomicInteger status, final AtomicReference<String> message) throws IOException {
+		final HttpPostRequest<String> request = new HttpPostRequest<>(Uri.builder()
+				.scheme("http").host("127.0.0.1").port(server.getLocalPort()).path("/upload").build());
+		request.setBody(BODY, Mime.TEXT.getMimeType());
+		request.setExpectContinue(threshold);
+		request.setRequestTimeout(3000);
+		request.send(new HttpStringResponseHandler() {
+			@Override
+			public void onResponse(final int s, final Map<String, List<String>> headers, @Nullable final String m) {
+				status.set(s);
+				message.set(m);
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+				fail(e);
+			}
+		});
+	}
+
+	/**
+	 * Accept one request, answer the headers with the interim response,
+	 * then read the body, if the client sends it, and answer 200 ok.
+	 *
+	 * @return the body received
+	 */
+	private static CompletableFuture<String> serve(final ServerSocket server, @Nullable final String interim) {
+		final CompletableFuture<String> received = new CompletableFuture<>();
+		final Thread thread = new Thread(() -> {
+			try (Socket socket = server.accept()) {
+				final InputStream is = socket.getInputStream();
+				final OutputStream os = socket.getOutputStream();
+				int length = 0;
+				boolean expect = false;
+				String line;
+				while (!(line = readLine(is)).isEmpty()) {
+					final String lower = line.toLowerCase(Locale.ROOT);
+					if (lower.startsWith("content-length:")) length = Integer.parseInt(line.substring(15).trim());
+					if (lower.startsWith("expect:")) expect = true;
+				}
+				if (expect && null != interim) {
+					os.write(interim.getBytes(StandardCharsets.US_ASCII));
+					os.flush();
+					if (!interim.startsWith("HTTP/1.1 100")) {
+						final ByteArrayOutputStream rest = new ByteArrayOutputStream();
+						int b;
+						while ((b = is.read()) >= 0) rest.write(b);
+						received.complete(rest.toString("UTF-8"));
+						return;
+					}
+				}
+				final byte[] body = new byte[length];
+				int n = 0;
+				while (n < length) {
+					final int read = is.read(body, n, length - n);
+					if (read < 0) break;
+					n += read;
+				}
+				received.complete(new String(body, 0, n, StandardCharsets.UTF_8));
+				os.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.US_ASCII));
+				os.flush();
+			} catch (IOException e) {
+				received.completeExceptionally(e);
+			}
+		}, "raw-server");
+		thread.setDaemon(true);
+		thread.start();
+		return received;
+	}
+
+	private static String readLine(final InputStream is) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		int b;
+		while ((b = is.read()) >= 0 && b != '\n') {
+			if (b != '\r') sb.append((char) b);
+		}
+		return sb.toString();
+	}
+}
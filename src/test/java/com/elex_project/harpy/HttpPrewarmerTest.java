@@ -0,0 +1,93 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpPrewarmerTest {
+
+	@Test
+	void prewarm() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final Set<Integer> connections = Collections.synchronizedSet(new HashSet<>());
+			server.handle("/", exchange -> {
+				connections.add(exchange.getRemoteAddress().getPort());
+				// the server closes the connection if the request was not read
+				LoopbackServer.readAll(exchange.getRequestBody());
+				exchange.getResponseHeaders().set("Content-Length", "0");
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+			});
+
+			final Uri origin = server.uri("/").build();
+			assertEquals(3, HttpPrewarmer.prewarm(origin, 3));
+			assertEquals(3, connections.size());
+
+			// taken from the keep-alive cache
+			for (int i = 0; i < 3; i++) {
+				new HttpGetRequest<String>(origin).send(new HttpStringResponseHandler() {
+					@Override
+					public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+						assertEquals(200, status);
+					}
+
+					@Override
+					public void onException(final Throwable e) {
+						fail(e);
+					}
+				});
+			}
+			assertEquals(3, connections.size());
+
+			final Path file = Files.createTempFile("origins", ".txt");
+			try {
+				HttpPrewarmer.save(file);
+				assertTrue(Files.readAllLines(file).contains("http://" + origin.getHost() + ":" + origin.getPort()));
+			} finally {
+				Files.delete(file);
+			}
+		}
+	}
+}
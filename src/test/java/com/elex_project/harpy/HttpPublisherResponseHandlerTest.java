@@ -0,0 +1,338 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpPublisherResponseHandlerTest {
+	private static LoopbackServer server;
+
+	@BeforeAll
+	static void start() throws IOException {
+		server = new LoopbackServer();
+	}
+
+	@AfterAll
+	static void stop() {
+		server.close();
+	}
+
+	@Test
+	void readAll() throws Exception {
+		final CompletableFuture<byte[]> body = new CompletableFuture<>();
+		publisher("/chunked/100000").subscribe(new Subscriber<ByteBuffer>() {
+			private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			private Subscription subscription;
+
+			@Override
+			public void onSubscribe(final Subscription s) {
+				subscription = s;
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+				buffer.write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+				subscription.request(1);
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+				body.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				body.complete(buffer.toByteArray());
+			}
+		});
+		assertArrayEquals(LoopbackServer.body(0, 100000), body.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void demand() throws Exception {
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicReference<Subscription> subscription = new AtomicReference<>();
+		final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+		publisher("/bytes/100000").subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(final Subscription s) {
+				subscription.set(s);
+				s.request(2);
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+				received.incrementAndGet();
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+				cancelled.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				cancelled.completeExceptionally(new AssertionError("Should not complete"));
+			}
+		});
+		Thread.sleep(300);
+		// nothing read beyond the demand
+		assertEquals(2, received.get());
+		subscription.get().cancel();
+		Thread.sleep(100);
+		assertEquals(2, received.get());
+		assertFalse(cancelled.isDone());
+	}
+
+	@Test
+	void singleSubscriber() throws Exception {
+		final Publisher<ByteBuffer> publisher = publisher("/bytes/16");
+		publisher.subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(final Subscription s) {
+				s.cancel();
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+		final CompletableFuture<Throwable> error = new CompletableFuture<>();
+		publisher.subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(final Subscription s) {
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+				error.complete(t);
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+		assertTrue(error.get(1, TimeUnit.SECONDS) instanceof IllegalStateException);
+	}
+
+	@Test
+	void permitHeldUntilRead() throws Exception {
+		final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().build();
+		final String host = new URL(server.uri("/").build().toString()).getAuthority();
+
+		final Publisher<ByteBuffer> read = publisher("/bytes/100000", limiter);
+		assertEquals(1, limiter.getInFlight(host));
+		final CompletableFuture<Void> completed = new CompletableFuture<>();
+		read.subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(final Subscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+				completed.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				completed.complete(null);
+			}
+		});
+		completed.get(5, TimeUnit.SECONDS);
+		assertEquals(0, limiter.getInFlight(host));
+
+		final Publisher<ByteBuffer> cancelled = publisher("/bytes/100000", limiter);
+		assertEquals(1, limiter.getInFlight(host));
+		cancelled.subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(final Subscription s) {
+				s.cancel();
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+		// closed on the reading thread
+		awaitReleased(limiter, host, 1000);
+		assertEquals(0, limiter.getInFlight(host));
+	}
+
+	@Test
+	void throwingSubscriber() throws Exception {
+		final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().build();
+		final String host = new URL(server.uri("/").build().toString()).getAuthority();
+
+		final AtomicInteger received = new AtomicInteger();
+		publisher("/bytes/100000", limiter).subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(final Subscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+				received.incrementAndGet();
+				throw new IllegalStateException("Subscriber failure");
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+		awaitReleased(limiter, host, 1000);
+		assertEquals(0, limiter.getInFlight(host));
+		// cancelled after the first failure
+		assertEquals(1, received.get());
+	}
+
+	@Test
+	void neverSubscribed() throws Exception {
+		final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().build();
+		final String host = new URL(server.uri("/").build().toString()).getAuthority();
+
+		final Publisher<ByteBuffer> abandoned = publisher("/bytes/100000", limiter, 200);
+		assertEquals(1, limiter.getInFlight(host));
+		awaitReleased(limiter, host, 2000);
+		assertEquals(0, limiter.getInFlight(host));
+
+		final CompletableFuture<Throwable> error = new CompletableFuture<>();
+		abandoned.subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(final Subscription s) {
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(final ByteBuffer byteBuffer) {
+			}
+
+			@Override
+			public void onError(final Throwable t) {
+				error.complete(t);
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+		assertTrue(error.get(1, TimeUnit.SECONDS) instanceof IllegalStateException);
+	}
+
+	private static void awaitReleased(final ConcurrencyLimiter limiter, final String host, final long millis)
+			throws InterruptedException {
+		final long until = System.currentTimeMillis() + millis;
+		while (limiter.getInFlight(host) > 0 && System.currentTimeMillis() < until) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static Publisher<ByteBuffer> publisher(final String path) throws IOException {
+		return publisher(path, null);
+	}
+
+	private static Publisher<ByteBuffer> publisher(final String path, @Nullable final ConcurrencyLimiter limiter) throws IOException {
+		return publisher(path, limiter, 30_000L);
+	}
+
+	private static Publisher<ByteBuffer> publisher(final String path, @Nullable final ConcurrencyLimiter limiter,
+	                                               final long subscribeTimeout) throws IOException {
+		final AtomicReference<Publisher<ByteBuffer>> publisher = new AtomicReference<>();
+		final HttpGetRequest<Publisher<ByteBuffer>> request = new HttpGetRequest<>(server.uri(path).build());
+		if (null != limiter) request.setConcurrencyLimiter(limiter);
+		request.send(new HttpPublisherResponseHandler(ForkJoinPool.commonPool(), 8192, subscribeTimeout) {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final Publisher<ByteBuffer> message) {
+				assertEquals(200, status);
+				publisher.set(message);
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+				fail(e);
+			}
+		});
+		return publisher.get();
+	}
+}
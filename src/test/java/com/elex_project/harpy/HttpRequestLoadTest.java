@@ -0,0 +1,158 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import com.elex_project.abraxas.Console;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Throughput and latency of each request class against the loopback server.
+ *
+ * @author Elex
+ */
+class HttpRequestLoadTest {
+	private static final int THREADS = 16;
+	private static final int REQUESTS_PER_THREAD = 100;
+	private static final int BODY_SIZE = 4096;
+
+	private static LoopbackServer server;
+
+	@BeforeAll
+	static void start() throws IOException {
+		server = new LoopbackServer();
+	}
+
+	@AfterAll
+	static void stop() {
+		server.close();
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = HttpMethod.class, names = {"GET", "HEAD", "DELETE", "POST", "PUT"})
+	void concurrent(final HttpMethod method) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		final AtomicInteger failures = new AtomicInteger();
+		final long[][] latencies = new long[THREADS][REQUESTS_PER_THREAD];
+
+		final long start = System.nanoTime();
+		for (int t = 0; t < THREADS; t++) {
+			final long[] samples = latencies[t];
+			executor.execute(() -> {
+				try {
+					for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+						final long begin = System.nanoTime();
+						if (!send(method)) failures.incrementAndGet();
+						samples[i] = System.nanoTime() - begin;
+					}
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(2, TimeUnit.MINUTES));
+		final long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+
+		final long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+		Console.writeLine("{}: {} requests/s, p50 {} us, p99 {} us, max {} us",
+				method,
+				all.length * 1_000_000_000L / elapsed,
+				percentile(all, 0.50) / 1000,
+				percentile(all, 0.99) / 1000,
+				all[all.length - 1] / 1000);
+
+		assertEquals(0, failures.get());
+	}
+
+	private static boolean send(final HttpMethod method) {
+		final List<Boolean> result = new ArrayList<>(1);
+		try {
+			final HttpRequest<String> request;
+			switch (method) {
+				case HEAD:
+					request = new HttpHeadRequest<>(server.uri("/bytes/" + BODY_SIZE).build());
+					break;
+				case DELETE:
+					request = new HttpDeleteRequest<>(server.uri("/bytes/" + BODY_SIZE).build());
+					break;
+				case POST:
+					request = new HttpPostRequest<>(server.uri("/echo").build());
+					((HttpPostRequest<String>) request).setBody(new String(LoopbackServer.body(0, BODY_SIZE)), Mime.TEXT.getMimeType());
+					break;
+				case PUT:
+					request = new HttpPutRequest<>(server.uri("/echo").build());
+					((HttpPutRequest<String>) request).setBody(new String(LoopbackServer.body(0, BODY_SIZE)), Mime.TEXT.getMimeType());
+					break;
+				default:
+					request = new HttpGetRequest<>(server.uri("/bytes/" + BODY_SIZE).build());
+			}
+			request.send(new HttpStringResponseHandler() {
+				@Override
+				public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+					result.add(status == 200 && null != message
+							&& message.length() == (method == HttpMethod.HEAD ? 0 : BODY_SIZE));
+				}
+
+				@Override
+				public void onException(final Throwable e) {
+					result.add(false);
+				}
+			});
+		} catch (IOException e) {
+			return false;
+		}
+		return !result.isEmpty() && result.get(0);
+	}
+
+	private static long percentile(final long[] sorted, final double p) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpRequestTemplateTest {
+
+	@Test
+	void expand() throws IOException {
+		final HttpRequestTemplate template = HttpRequestTemplate
+				.builder(HttpMethod.GET, "https://example.com:8443/users/{id}/items?q={q}&owner={id}")
+				.build();
+		assertArrayEquals(new String[]{"id", "q"}, template.getVariables());
+
+		final URL url = template.expand("42", "a b/c&d=한");
+		assertEquals("https", url.getProtocol());
+		assertEquals("example.com", url.getHost());
+		assertEquals(8443, url.getPort());
+		assertEquals("/users/42/items", url.getPath());
+		assertEquals("q=a%20b%2Fc%26d%3D%ED%95%9C&owner=42", url.getQuery());
+
+		final Map<String, Object> values = new HashMap<>();
+		values.put("q", "a b/c&d=한");
+		values.put("id", 42);
+		assertEquals(url, template.expand(values));
+		assertThrows(IllegalArgumentException.class, () -> template.expand("42"));
+	}
+
+	@Test
+	void invalid() {
+		assertThrows(IllegalArgumentException.class, () -> HttpRequestTemplate
+				.builder(HttpMethod.GET, "https://{host}/users").build());
+		assertThrows(IllegalArgumentException.class, () -> HttpRequestTemplate
+				.builder(HttpMethod.GET, "ftp://example.com/").build());
+		assertThrows(IllegalArgumentException.class, () -> HttpRequestTemplate
+				.builder(HttpMethod.GET, "https://example.com/a b").build());
+		assertThrows(IllegalArgumentException.class, () -> HttpRequestTemplate
+				.builder(HttpMethod.GET, "https://example.com/").header("X-A", "b\r\nX-Injected: c"));
+		assertThrows(IllegalArgumentException.class, () -> HttpRequestTemplate
+				.builder(HttpMethod.GET, "https://example.com/").header("X A", "b"));
+		assertThrows(IllegalArgumentException.class, () -> HttpRequestTemplate
+				.builder(HttpMethod.CONNECT, "https://example.com/"));
+	}
+
+	@Test
+	void send() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final HttpRequestTemplate template = HttpRequestTemplate
+					.builder(HttpMethod.POST, "http://127.0.0.1:" + server.getPort() + "/echo?n={n}")
+					.contentType(Mime.TEXT.getMimeType())
+					.header("X-Template", "yes")
+					.build();
+			for (int i = 0; i < 3; i++) {
+				final HttpPostRequest<String> request = (HttpPostRequest<String>) template.<String>create(String.valueOf(i));
+				request.setBody("body " + i, Mime.TEXT.getMimeType());
+				final AtomicReference<String> body = new AtomicReference<>();
+				final AtomicReference<String> method = new AtomicReference<>();
+				request.send(new HttpStringResponseHandler() {
+					@Override
+					public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+						// HttpServer normalizes the case of header names
+						for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+							if ("X-Method".equalsIgnoreCase(header.getKey())) method.set(header.getValue().get(0));
+						}
+						body.set(message);
+					}
+
+					@Override
+					public void onException(final Throwable e) {
+						fail(e);
+					}
+				});
+				assertEquals("POST", method.get());
+				assertEquals("body " + i, body.get());
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpXmlStreamResponseHandlerTest {
+
+	private static <T> List<T> collect(final String path, final HttpXmlStreamResponseHandler.ElementReader<T> elementReader,
+	                                   final String xml) throws IOException {
+		final List<T> elements = new ArrayList<>();
+		final HttpXmlStreamResponseHandler<T> handler = new HttpXmlStreamResponseHandler<T>(path, elementReader) {
+			@Override
+			protected void onElement(final T element) {
+				elements.add(element);
+			}
+
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final Long message) {
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+			}
+		};
+		final long count = handler.transform(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(elements.size(), count);
+		return elements;
+	}
+
+	private static String feed(final int items) {
+		final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<rss xmlns:atom=\"http://www.w3.org/2005/Atom\"><channel><title>Feed</title>"
+				+ "<atom:link href=\"https://example.com/feed\"/>");
+		for (int i = 0; i < items; i++) {
+			sb.append("<item id=\"").append(i).append("\"><title>항목 ").append(i).append("</title>")
+					.append("<description><![CDATA[<b>").append(i).append("</b>]]></description></item>");
+		}
+		return sb.append("</channel></rss>").toString();
+	}
+
+	@Test
+	void elements() throws IOException {
+		final List<Element> items = collect("/rss/channel/item", HttpXmlStreamResponseHandler.ELEMENT, feed(1000));
+		assertEquals(1000, items.size());
+		assertEquals("999", items.get(999).getAttribute("id"));
+		assertEquals("항목 999", items.get(999).getElementsByTagName("title").item(0).getTextContent());
+		assertEquals("<b>999</b>", items.get(999).getElementsByTagName("description").item(0).getTextContent());
+	}
+
+	@Test
+	void paths() throws IOException {
+		final String feed = feed(3);
+		assertEquals(4, collect("title", HttpXmlStreamResponseHandler.TEXT, feed).size());
+		assertEquals(3, collect("item/title", HttpXmlStreamResponseHandler.TEXT, feed).size());
+		assertEquals("Feed", collect("/rss/*/title", HttpXmlStreamResponseHandler.TEXT, feed).get(0));
+		assertEquals(0, collect("/channel/item", HttpXmlStreamResponseHandler.TEXT, feed).size());
+		final List<Element> links = collect("atom:link", HttpXmlStreamResponseHandler.ELEMENT, feed);
+		assertEquals("https://example.com/feed", links.get(0).getAttribute("href"));
+	}
+
+	@Test
+	void malformed() {
+		final IOException e = assertThrows(IOException.class,
+				() -> collect("item", HttpXmlStreamResponseHandler.ELEMENT, "<rss><item></rss>"));
+		assertTrue(e.getCause() instanceof XMLStreamException);
+		// no external entities
+		assertThrows(IOException.class, () -> collect("item", HttpXmlStreamResponseHandler.TEXT,
+				"<?xml version=\"1.0\"?><!DOCTYPE rss [<!ENTITY x SYSTEM \"file:///etc/passwd\">]><rss><item>&x;</item></rss>"));
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The codecs are generated by harpy-processor, run on the tests.
+ */
+class JsonCodecTest {
+	enum Role {
+		ADMIN, USER
+	}
+
+	@JsonSerializable
+	static class Address {
+		String city;
+		@JsonName("zip_code")
+		String zip;
+	}
+
+	@JsonSerializable
+	static class User {
+		long id;
+		String name;
+		boolean active;
+		double score;
+		char grade;
+		Integer age;
+		Role role;
+		List<String> tags;
+		Collection<String> labels;
+		Iterable<Integer> scores;
+		Map<String, Integer> counts;
+		Address address;
+		List<User> friends;
+		transient int ignored;
+		private String secret;
+
+		public String getSecret() {
+			return secret;
+		}
+
+		public void setSecret(final String secret) {
+			this.secret = secret;
+		}
+	}
+
+	private static User user() {
+		final User user = new User();
+		user.id = 42;
+		user.name = "엘렉스 \"harpy\"";
+		user.active = true;
+		user.score = 1.5;
+		user.grade = 'A';
+		user.role = Role.ADMIN;
+		user.tags = Arrays.asList("a", "b");
+		user.labels = new LinkedHashSet<>(Arrays.asList("x", "y"));
+		user.scores = Arrays.asList(3, 1, 2);
+		user.counts = Collections.singletonMap("x", 1);
+		user.address = new Address();
+		user.address.city = "Seoul";
+		user.address.zip = "04524";
+		final User friend = new User();
+		friend.id = 7;
+		user.friends = Collections.singletonList(friend);
+		user.ignored = 99;
+		user.setSecret("s");
+		return user;
+	}
+
+	private static <T> byte[] write(final JsonCodec<T> codec, final T value) throws IOException {
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final JsonWriter writer = new JsonWriter(os);
+		codec.write(writer, value);
+		writer.flush();
+		return os.toByteArray();
+	}
+
+	@Test
+	void roundTrip() throws IOException {
+		final JsonCodec<User> codec = JsonCodecs.of(User.class);
+		final byte[] json = write(codec, user());
+		final String text = new String(json, StandardCharsets.UTF_8);
+		assertTrue(text.contains("\"zip_code\":\"04524\""), text);
+		assertFalse(text.contains("ignored"));
+
+		final User user = codec.read(new JsonReader(new ByteArrayInputStream(json)));
+		assertEquals(42, user.id);
+		assertEquals("엘렉스 \"harpy\"", user.name);
+		assertTrue(user.active);
+		assertEquals(1.5, user.score);
+		assertEquals('A', user.grade);
+		assertNull(user.age);
+		assertEquals(Role.ADMIN, user.role);
+		assertEquals(Arrays.asList("a", "b"), user.tags);
+		assertEquals(Arrays.asList("x", "y"), user.labels);
+		assertEquals(Arrays.asList(3, 1, 2), user.scores);
+		assertEquals(Integer.valueOf(1), user.counts.get("x"));
+		assertEquals("Seoul", user.address.city);
+		assertEquals("04524", user.address.zip);
+		assertEquals(7, user.friends.get(0).id);
+		assertNull(user.friends.get(0).friends);
+		assertEquals(0, user.ignored);
+		assertEquals("s", user.getSecret());
+	}
+
+	@Test
+	void unknownMembers() throws IOException {
+		final User user = JsonCodecs.of(User.class).read(new JsonReader(new ByteArrayInputStream(
+				"{\"extra\": {\"a\": [1, 2]}, \"id\": 3, \"active\": null}".getBytes(StandardCharsets.UTF_8))));
+		assertEquals(3, user.id);
+		assertFalse(user.active);
+	}
+
+	@Test
+	void notGenerated() {
+		assertThrows(IllegalArgumentException.class, () -> JsonCodecs.of(Role.class));
+	}
+
+	@Test
+	void send() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final HttpPostRequest<User> request = new HttpPostRequest<>(server.uri("/echo").build());
+			request.setBody(user(), JsonCodecs.of(User.class));
+			final AtomicReference<User> echoed = new AtomicReference<>();
+			request.send(new HttpJsonCodecResponseHandler<User>(User.class) {
+				@Override
+				public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final User message) {
+					echoed.set(message);
+				}
+
+				@Override
+				public void onException(final Throwable e) {
+					fail(e);
+				}
+			});
+			assertEquals("엘렉스 \"harpy\"", echoed.get().name);
+			assertEquals("Seoul", echoed.get().address.city);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonElementsTest {
+
+	private static JsonReader reader(final String json) {
+		return new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 5);
+	}
+
+	private static String records(final int count, final String separator) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) sb.append(separator);
+			sb.append("{\"id\": ").append(i).append(", \"name\": \"항목 ").append(i).append("\"}");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	void array() {
+		try (JsonElements<Object> elements = JsonElements.array(reader("[1, \"two\", [3], {\"four\": 4}]"), JsonElements.VALUE)) {
+			final List<Object> list = elements.stream().collect(Collectors.toList());
+			assertEquals(4, list.size());
+			assertEquals(1, list.get(0));
+			assertEquals("two", list.get(1));
+			assertEquals(4, ((JSONObject) list.get(3)).getInt("four"));
+		}
+	}
+
+	@Test
+	void pointer() throws IOException {
+		final String json = "{\"meta\": {\"skip\": [1, 2]}, \"data\": {\"items\": [" + records(10, ",") + "]}}";
+		try (JsonElements<Integer> elements = JsonElements.array(reader(json), "/data/items", 
+				reader -> ((JSONObject) reader.readValue()).getInt("id"))) {
+			assertEquals(45, elements.stream().mapToInt(Integer::intValue).sum());
+		}
+		try (JsonElements<Object> elements = JsonElements.array(reader(json), "/data/none", JsonElements.VALUE)) {
+			assertFalse(elements.hasNext());
+		}
+	}
+
+	@Test
+	void lines() {
+		try (JsonElements<Object> elements = JsonElements.lines(reader(records(100, "\n") + "\n"), JsonElements.VALUE)) {
+			int i = 0;
+			while (elements.hasNext()) {
+				assertEquals("항목 " + i, ((JSONObject) elements.next()).getString("name"));
+				i++;
+			}
+			assertEquals(100, i);
+		}
+	}
+
+	@Test
+	void parallel() {
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try (JsonElements<Object> elements = JsonElements.array(reader("[" + records(1000, ",\n") + "]"), JsonElements.VALUE)
+				.parallel(pool, 8)) {
+			final List<Object> list = new ArrayList<>();
+			elements.forEachRemaining(list::add);
+			assertEquals(1000, list.size());
+			for (int i = 0; i < list.size(); i++) {
+				assertEquals(i, ((JSONObject) list.get(i)).getInt("id"));
+				assertEquals("항목 " + i, ((JSONObject) list.get(i)).getString("name"));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void malformed() {
+		try (JsonElements<Object> elements = JsonElements.array(reader("[1, 2 3]"), JsonElements.VALUE)) {
+			assertThrows(UncheckedIOException.class, () -> elements.forEachRemaining(e -> {
+			}));
+		}
+	}
+}
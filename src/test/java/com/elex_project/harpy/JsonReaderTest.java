@@ -0,0 +1,134 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonReaderTest {
+
+	private static JsonReader reader(final String json) {
+		// a small buffer, so that tokens cross its end
+		return new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 3);
+	}
+
+	@Test
+	void tokens() throws IOException {
+		final JsonReader reader = reader("\ufeff{\"a\": [1, -2.5e1, true, false, null, \"x\"], \"b\": {}}");
+		reader.beginObject();
+		assertEquals("a", reader.nextName());
+		reader.beginArray();
+		assertEquals("/a/0", reader.getPath());
+		assertEquals(1, reader.nextInt());
+		assertEquals(-25.0, reader.nextDouble());
+		assertTrue(reader.nextBoolean());
+		assertFalse(reader.nextBoolean());
+		assertEquals(JsonReader.Token.NULL, reader.peek());
+		reader.nextNull();
+		assertEquals("/a/5", reader.getPath());
+		assertEquals("x", reader.nextString());
+		assertFalse(reader.hasNext());
+		reader.endArray();
+		assertEquals("b", reader.nextName());
+		reader.beginObject();
+		reader.endObject();
+		reader.endObject();
+		assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+	}
+
+	@Test
+	void strings() throws IOException {
+		final JsonReader reader = reader("[\"안녕 \\\"harpy\\\"\\n\", \"\\u00e9\\/😀\"]");
+		reader.beginArray();
+		assertEquals("안녕 \"harpy\"\n", reader.nextString());
+		assertEquals("é/😀", reader.nextString());
+		reader.endArray();
+	}
+
+	@Test
+	void skipValue() throws IOException {
+		final JsonReader reader = reader("{\"skip\": {\"a\": [1, {\"b\": \"]}\"}], \"c\": null}, \"keep\": 42}");
+		reader.beginObject();
+		assertEquals("skip", reader.nextName());
+		reader.skipValue();
+		assertEquals("keep", reader.nextName());
+		assertEquals(42L, reader.nextLong());
+		reader.endObject();
+	}
+
+	@Test
+	void readValue() throws IOException {
+		final Object value = reader("[{\"n\": 12345678901, \"big\": 123456789012345678901234567890, \"s\": \"t\"}, [], null]").readValue();
+		final JSONArray array = (JSONArray) value;
+		assertEquals(3, array.length());
+		final JSONObject object = array.getJSONObject(0);
+		assertEquals(12345678901L, object.get("n"));
+		assertEquals(new BigInteger("123456789012345678901234567890"), object.get("big"));
+		assertEquals("t", object.getString("s"));
+		assertEquals(0, array.getJSONArray(1).length());
+		assertEquals(JSONObject.NULL, array.get(2));
+	}
+
+	@Test
+	void readPointers() throws IOException {
+		final Map<String, Object> values = reader("[{\"id\": 1, \"a/b\": {\"c\": \"x\"}}, {\"id\": 2, \"tags\": [\"p\", \"q\"]}]")
+				.readPointers(Arrays.asList("/1/tags/1", "/0/a~1b/c", "/0/id", "/9"));
+		assertEquals(3, values.size());
+		assertEquals(1, values.get("/0/id"));
+		assertEquals("x", values.get("/0/a~1b/c"));
+		assertEquals("q", values.get("/1/tags/1"));
+		assertFalse(values.containsKey("/9"));
+	}
+
+	@Test
+	void malformed() {
+		assertThrows(IOException.class, () -> reader("{\"a\" 1}").readValue());
+		assertThrows(IOException.class, () -> reader("[1, 2").readValue());
+		assertThrows(IOException.class, () -> reader("[tru]").readValue());
+		assertThrows(IOException.class, () -> {
+			final JsonReader reader = reader("{} {}");
+			reader.readValue();
+			reader.peek();
+		});
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadBalancerTest {
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	void roundRobin() {
+		final LoadBalancer balancer = balancer(LoadBalancer.Strategy.ROUND_ROBIN);
+		final Map<String, Integer> counts = count(balancer, 300);
+		assertEquals(3, counts.size());
+		for (int count : counts.values()) assertEquals(100, count);
+	}
+
+	@Test
+	void powerOfTwoChoices() {
+		final LoadBalancer balancer = balancer(LoadBalancer.Strategy.POWER_OF_TWO_CHOICES);
+		final LoadBalancer.Endpoint busy = balancer.getEndpoints().get(0);
+		for (int i = 0; i < 10; i++) busy.started();
+		// the busy one loses every comparison
+		assertFalse(count(balancer, 100).containsKey(busy.getBase()));
+	}
+
+	@Test
+	void peakEwma() {
+		final LoadBalancer balancer = balancer(LoadBalancer.Strategy.PEAK_EWMA);
+		for (LoadBalancer.Endpoint endpoint : balancer.getEndpoints()) {
+			endpoint.started();
+			endpoint.finished(10 * MS, false);
+		}
+		final LoadBalancer.Endpoint slow = balancer.getEndpoints().get(1);
+		slow.started();
+		slow.finished(500 * MS, false);
+		assertEquals(500, slow.getLatency(), 1);
+		assertFalse(count(balancer, 100).containsKey(slow.getBase()));
+	}
+
+	@Test
+	void ejection() throws InterruptedException {
+		final LoadBalancer balancer = LoadBalancer.builder()
+				.endpoint("http://a.example.com").endpoint("http://b.example.com")
+				.strategy(LoadBalancer.Strategy.ROUND_ROBIN)
+				.maxFailures(3)
+				.ejectionTime(200)
+				.build();
+		final LoadBalancer.Endpoint a = balancer.getEndpoints().get(0);
+		for (int i = 0; i < 3; i++) {
+			a.started();
+			a.finished(MS, true);
+		}
+		assertTrue(a.isEjected());
+		assertEquals(10, (int) count(balancer, 10).get("http://b.example.com"));
+
+		Thread.sleep(300);
+		assertFalse(a.isEjected());
+		// one more failure ejects it again
+		a.started();
+		a.finished(MS, true);
+		assertTrue(a.isEjected());
+	}
+
+	@Test
+	void send() throws IOException {
+		try (LoopbackServer one = new LoopbackServer(); LoopbackServer two = new LoopbackServer()) {
+			final LoadBalancer balancer = LoadBalancer.builder()
+					.endpoint(one.uri("/").build())
+					.endpoint(two.uri("/").build())
+					.strategy(LoadBalancer.Strategy.ROUND_ROBIN)
+					.build();
+			for (int i = 0; i < 4; i++) {
+				balancer.<String>create(HttpMethod.GET, "/bytes/16").send(null);
+			}
+			for (LoadBalancer.Endpoint endpoint : balancer.getEndpoints()) {
+				assertEquals(0, endpoint.getInFlight());
+				assertEquals(0, endpoint.getFailures());
+				assertTrue(endpoint.getLatency() > 0);
+			}
+			assertEquals(new URL(one.uri("/bytes/16").build().toString()),
+					balancer.getEndpoints().get(0).resolve("bytes/16"));
+		}
+	}
+
+	@Test
+	void notFoundIsNotAFailure() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final LoadBalancer balancer = LoadBalancer.builder()
+					.endpoint(server.uri("/").build())
+					.maxFailures(2)
+					.build();
+			for (int i = 0; i < 5; i++) {
+				send(balancer, "status/404");
+			}
+			final LoadBalancer.Endpoint endpoint = balancer.getEndpoints().get(0);
+			assertEquals(0, endpoint.getFailures());
+			assertFalse(endpoint.isEjected());
+			send(balancer, "status/500");
+			send(balancer, "status/500");
+			assertTrue(endpoint.isEjected());
+		}
+	}
+
+	private static void send(final LoadBalancer balancer, final String path) throws IOException {
+		balancer.<String>create(HttpMethod.GET, path).send(new HttpStringResponseHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+			}
+		});
+	}
+
+	private static LoadBalancer balancer(final LoadBalancer.Strategy strategy) {
+		return LoadBalancer.builder()
+				.endpoint("http://a.example.com")
+				.endpoint("http://b.example.com/")
+				.endpoint(Uri.builder().host("c.example.com").build())
+				.strategy(strategy)
+				.build();
+	}
+
+	private static Map<String, Integer> count(final LoadBalancer balancer, final int n) {
+		final Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			counts.merge(balancer.select().getBase(), 1, Integer::sum);
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Http server on the loopback interface, for tests without the network.
+ * <ul>
+ *     <li>/bytes/{n} : n bytes with Content-Length, supports Range</li>
+ *     <li>/chunked/{n} : n bytes with chunked transfer encoding</li>
+ *     <li>/gzip/{n} : n bytes, gzip content encoding</li>
+ *     <li>/delay/{ms} : a short body after ms milliseconds</li>
+ *     <li>/trickle/{n}/{ms} : n bytes, one byte every ms milliseconds</li>
+ *     <li>/redirect/{n} : redirects n times, then to /bytes/16</li>
+ *     <li>/status/{code} : empty body with the given status</li>
+ *     <li>/drop : closes the connection without a response</li>
+ *     <li>/echo : the request body, request method in the X-Method header</li>
+ * </ul>
+ * Other endpoints can be added with {@link #handle(String, HttpHandler)}.
+ *
+ * @author Elex
+ */
+final class LoopbackServer implements AutoCloseable {
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+	static {
+		// otherwise Nagle and delayed acks add ~40ms to every small response
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	LoopbackServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+		executor = Executors.newCachedThreadPool(r -> {
+			final Thread thread = new Thread(r, "loopback-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+
+		handle("/bytes/", exchange -> {
+			final int size = intAt(exchange, 2);
+			final String range = exchange.getRequestHeaders().getFirst("Range");
+			exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+			if (null == range) {
+				send(exchange, 200, body(0, size));
+				return;
+			}
+			final Matcher matcher = RANGE.matcher(range);
+			if (!matcher.matches()) {
+				send(exchange, 416, new byte[0]);
+				return;
+			}
+			int from, to;
+			if (matcher.group(1).isEmpty()) {
+				from = Math.max(0, size - Integer.parseInt(matcher.group(2)));
+				to = size - 1;
+			} else {
+				from = Integer.parseInt(matcher.group(1));
+				to = matcher.group(2).isEmpty() ? size - 1 : Math.min(size - 1, Integer.parseInt(matcher.group(2)));
+			}
+			if (from >= size || from > to) {
+				exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+				send(exchange, 416, new byte[0]);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + size);
+			send(exchange, 206, body(from, to - from + 1));
+		});
+		handle("/chunked/", exchange -> {
+			final byte[] body = body(0, intAt(exchange, 2));
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream os = exchange.getResponseBody()) {
+				for (int i = 0; i < body.length; i += 1024) {
+					os.write(body, i, Math.min(1024, body.length - i));
+					os.flush();
+				}
+			}
+		});
+		handle("/gzip/", exchange -> {
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+				gzip.write(body(0, intAt(exchange, 2)));
+			}
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			send(exchange, 200, buffer.toByteArray());
+		});
+		handle("/delay/", exchange -> {
+			sleep(intAt(exchange, 2));
+			send(exchange, 200, body(0, 16));
+		});
+		handle("/trickle/", exchange -> {
+			final byte[] body = body(0, intAt(exchange, 2));
+			final int delay = intAt(exchange, 3);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				for (byte b : body) {
+					os.write(b);
+					os.flush();
+					sleep(delay);
+				}
+			} catch (IOException ignore) {
+				// client went away
+			}
+		});
+		handle("/redirect/", exchange -> {
+			final int count = intAt(exchange, 2);
+			exchange.getResponseHeaders().set("Location",
+					count > 1 ? "/redirect/" + (count - 1) : "/bytes/16");
+			send(exchange, 302, new byte[0]);
+		});
+		handle("/status/", exchange -> send(exchange, intAt(exchange, 2), new byte[0]));
+		handle("/drop", HttpExchange::close);
+		handle("/echo", exchange -> {
+			final byte[] body = readAll(exchange.getRequestBody());
+			exchange.getResponseHeaders().set("X-Method", exchange.getRequestMethod());
+			final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			if (null != contentType) exchange.getResponseHeaders().set("Content-Type", contentType);
+			send(exchange, 200, body);
+		});
+
+		server.start();
+	}
+
+	/**
+	 * Add or replace an endpoint
+	 *
+	 * @param path    context path
+	 * @param handler handler
+	 * @return this
+	 */
+	LoopbackServer handle(final String path, final HttpHandler handler) {
+		try {
+			server.removeContext(path);
+		} catch (IllegalArgumentException ignore) {
+			// not yet registered
+		}
+		server.createContext(path, handler);
+		return this;
+	}
+
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	Uri.Builder uri(final String path) {
+		return Uri.builder()
+				.scheme("http")
+				.host(server.getAddress().getHostString())
+				.port(getPort())
+				.path(path.startsWith("/") ? path.substring(1) : path);
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Deterministic body, so that the ranges can be checked
+	 */
+	static byte[] body(final int offset, final int length) {
+		final byte[] body = new byte[length];
+		for (int i = 0; i < length; i++) {
+			body[i] = (byte) ('a' + (offset + i) % 26);
+		}
+		return body;
+	}
+
+	private static void send(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+		readAll(exchange.getRequestBody());
+		if ("HEAD".equals(exchange.getRequestMethod()) || body.length == 0) {
+			if (body.length > 0) exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		}
+		exchange.close();
+	}
+
+	private static int intAt(final HttpExchange exchange, final int segment) {
+		return Integer.parseInt(exchange.getRequestURI().getPath().split("/")[segment]);
+	}
+
+	static byte[] readAll(final InputStream is) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final byte[] chunk = new byte[8192];
+		int n;
+		while ((n = is.read(chunk)) > 0) {
+			buffer.write(chunk, 0, n);
+		}
+		return buffer.toByteArray();
+	}
+
+	static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestBodyTest {
+	private static final int RECORDS = 100_000;
+
+	/**
+	 * Records made as they are iterated
+	 */
+	private static final List<Map<String, Object>> RECORD_LIST = new AbstractList<Map<String, Object>>() {
+		@Override
+		public Map<String, Object> get(final int index) {
+			return Collections.singletonMap("id", index);
+		}
+
+		@Override
+		public int size() {
+			return RECORDS;
+		}
+	};
+
+	/**
+	 * @return the echoed body, as read by the reader
+	 */
+	private static <T> T post(final LoopbackServer server, final RequestBody body, final JsonElements.ElementReader<T> echo) throws IOException {
+		final HttpPostRequest<T> request = new HttpPostRequest<>(server.uri("/echo").build());
+		request.setBody(body);
+		final AtomicReference<T> result = new AtomicReference<>();
+		request.send(new HttpJsonReaderResponseHandler<T>() {
+			@Override
+			protected T read(final JsonReader reader) throws IOException {
+				return echo.read(reader);
+			}
+
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final T message) {
+				result.set(message);
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+				fail(e);
+			}
+		});
+		return result.get();
+	}
+
+	@Test
+	void jsonObject() throws IOException {
+		final JSONObject json = new JSONObject();
+		json.put("name", "엘렉스");
+		json.put("tags", new JSONArray().put("a").put(1));
+		try (LoopbackServer server = new LoopbackServer()) {
+			final JSONObject echoed = post(server, RequestBody.json(json), reader -> (JSONObject) reader.readValue());
+			assertEquals("엘렉스", echoed.getString("name"));
+			assertEquals(2, echoed.getJSONArray("tags").length());
+		}
+	}
+
+	@Test
+	void records() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final long sum = post(server, RequestBody.jsonArray(RECORD_LIST, JsonCodecs.map(JsonCodecs.VALUE)), reader -> {
+				final AtomicLong total = new AtomicLong();
+				JsonElements.array(reader, r -> {
+					r.beginObject();
+					r.nextName();
+					final long id = r.nextLong();
+					r.endObject();
+					return id;
+				}).forEachRemaining(total::addAndGet);
+				return total.get();
+			});
+			assertEquals((long) RECORDS * (RECORDS - 1) / 2, sum);
+		}
+	}
+
+	@Test
+	void generatorAndLines() throws IOException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final Object generated = post(server, RequestBody.json(writer -> {
+				writer.beginArray();
+				for (int i = 0; i < 3; i++) writer.value(i);
+				writer.endArray();
+			}), JsonReader::readValue);
+			assertEquals(3, ((JSONArray) generated).length());
+
+			final long lines = post(server, RequestBody.ndjson(RECORD_LIST, JsonCodecs.map(JsonCodecs.VALUE)),
+					reader -> JsonElements.lines(reader, JsonElements.VALUE).stream().count());
+			assertEquals(RECORDS, lines);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseBufferTest {
+
+	@Test
+	void inMemory() throws IOException {
+		final byte[] body = LoopbackServer.body(0, 100_000);
+		try (ResponseBuffer buffer = ResponseBuffer.read(new ByteArrayInputStream(body), -1, ResponseLimits.getDefault())) {
+			assertFalse(buffer.isSpilled());
+			assertEquals(body.length, buffer.length());
+			try (InputStream is = buffer.getInputStream()) {
+				assertArrayEquals(body, LoopbackServer.readAll(is));
+			}
+		}
+	}
+
+	@Test
+	void spill(@TempDir final Path dir) throws IOException {
+		final byte[] body = LoopbackServer.body(0, 100_000);
+		final ResponseLimits limits = ResponseLimits.builder()
+				.memoryThreshold(1000)
+				.tempDirectory(dir)
+				.build();
+		final ResponseBuffer buffer = ResponseBuffer.read(new ByteArrayInputStream(body), body.length, limits);
+		assertTrue(buffer.isSpilled());
+		assertEquals(body.length, buffer.length());
+		assertEquals(1, files(dir));
+		// readable more than once
+		for (int i = 0; i < 2; i++) {
+			try (InputStream is = buffer.getInputStream()) {
+				assertArrayEquals(body, LoopbackServer.readAll(is));
+			}
+		}
+		buffer.close();
+		assertEquals(0, files(dir));
+	}
+
+	@Test
+	void maxBytes(@TempDir final Path dir) throws IOException {
+		final byte[] body = LoopbackServer.body(0, 100_000);
+		final ResponseLimits limits = ResponseLimits.builder()
+				.memoryThreshold(1000)
+				.maxBytes(50_000)
+				.tempDirectory(dir)
+				.build();
+		assertThrows(IOException.class, () -> ResponseBuffer.read(new ByteArrayInputStream(body), body.length, limits));
+		assertThrows(IOException.class, () -> ResponseBuffer.read(new ByteArrayInputStream(body), -1, limits));
+		assertEquals(0, files(dir));
+	}
+
+	@Test
+	void globalMemoryLimit(@TempDir final Path dir) throws IOException {
+		final byte[] body = LoopbackServer.body(0, 10_000);
+		final ResponseLimits limits = ResponseLimits.builder()
+				.memoryThreshold(10_000)
+				.budgetWait(50)
+				.tempDirectory(dir)
+				.build();
+		ResponseLimits.setGlobalMemoryLimit(15_000);
+		try {
+			try (ResponseBuffer first = ResponseBuffer.read(new ByteArrayInputStream(body), body.length, limits)) {
+				assertFalse(first.isSpilled());
+				assertEquals(10_000, ResponseLimits.getGlobalMemoryUsed());
+				// no room left in memory, so to disk after the wait
+				try (ResponseBuffer second = ResponseBuffer.read(new ByteArrayInputStream(body), body.length, limits)) {
+					assertTrue(second.isSpilled());
+					try (InputStream is = second.getInputStream()) {
+						assertArrayEquals(body, LoopbackServer.readAll(is));
+					}
+				}
+			}
+			assertEquals(0, ResponseLimits.getGlobalMemoryUsed());
+		} finally {
+			ResponseLimits.setGlobalMemoryLimit(0);
+		}
+	}
+
+	@Test
+	void releasedByHandler(@TempDir final Path dir) throws IOException {
+		final ResponseLimits limits = ResponseLimits.builder()
+				.memoryThreshold(1000)
+				.tempDirectory(dir)
+				.build();
+		final AtomicReference<ResponseBuffer> received = new AtomicReference<>();
+		try (LoopbackServer server = new LoopbackServer()) {
+			new HttpGetRequest<ResponseBuffer>(server.uri("/bytes/100000").build()).send(new HttpBufferedResponseHandler(limits) {
+				@Override
+				public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final ResponseBuffer message) {
+					assertNotNull(message);
+					assertTrue(message.isSpilled());
+					received.set(message);
+				}
+
+				@Override
+				public void onException(final Throwable e) {
+					fail(e);
+				}
+			});
+		}
+		// closed once onResponse returned
+		assertEquals(0, files(dir));
+		assertThrows(IOException.class, () -> received.get().getInputStream());
+	}
+
+	private static long files(final Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.count();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TlsContextTest {
+	/**
+	 * self-signed, for localhost and 127.0.0.1
+	 */
+	private static final String KEY_STORE = "/loopback.jks";
+	private static final char[] PASSWORD = "harpy-test".toCharArray();
+
+	@Test
+	void resume() throws Exception {
+		final KeyStore keyStore = KeyStore.getInstance("JKS");
+		try (InputStream is = TlsContextTest.class.getResourceAsStream(KEY_STORE)) {
+			keyStore.load(is, PASSWORD);
+		}
+		final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keyStore, PASSWORD);
+		final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagers.init(keyStore);
+		final SSLContext serverContext = SSLContext.getInstance("TLS");
+		serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+		final HttpsServer server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+		server.createContext("/", exchange -> {
+			LoopbackServer.readAll(exchange.getRequestBody());
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			final TlsContext tlsContext = TlsContext.builder()
+					.trustManagers(trustManagers.getTrustManagers())
+					.build();
+			final Uri uri = Uri.builder()
+					.scheme("https")
+					.host("127.0.0.1")
+					.port(server.getAddress().getPort())
+					.build();
+			for (int i = 0; i < 3; i++) {
+				final HttpGetRequest<String> request = new HttpGetRequest<>(uri);
+				request.setTlsContext(tlsContext);
+				// a new connection, so a handshake, every time
+				request.setDisconnect(true);
+				request.send(new HttpStringResponseHandler() {
+					@Override
+					public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final String message) {
+						assertEquals(204, status);
+					}
+
+					@Override
+					public void onException(final Throwable e) {
+						fail(e);
+					}
+				});
+			}
+
+			// handshake listeners are called on a thread of their own
+			final long until = System.currentTimeMillis() + 5000;
+			while (tlsContext.getFullHandshakes() + tlsContext.getResumedHandshakes() < 3
+					&& System.currentTimeMillis() < until) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, tlsContext.getFullHandshakes());
+			assertEquals(2, tlsContext.getResumedHandshakes());
+		} finally {
+			server.stop(0);
+		}
+	}
+}
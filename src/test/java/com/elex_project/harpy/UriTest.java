@@ -78,6 +78,52 @@ class UriTest {
 		Uri uri = Uri.parse(sample1);
 		Console.writeLine("URI: " + uri.toString());
 	}
+	@Test
+	void parseComponents() {
+		final Uri uri = Uri.parse("https://user:pw@example.com:8080/api//v1/?flag&tag=a&tag=b&empty=&&x=1%262#frag/ment?");
+		assertEquals("https", uri.getScheme());
+		assertEquals("user:pw", uri.getUser());
+		assertEquals("example.com", uri.getHost());
+		assertEquals(8080, uri.getPort());
+		assertEquals("[api, , v1, ]", uri.getPath().toString());
+		assertNull(uri.getQueryValue("flag"));
+		assertTrue(uri.getQuery().containsKey("flag"));
+		assertEquals("[a, b]", uri.getQueryValues("tag").toString());
+		assertEquals("a", uri.getQuery().get("tag"));
+		assertEquals("", uri.getQueryValue("empty"));
+		assertEquals("1%262", uri.getQueryValue("x"));
+		assertEquals("frag/ment?", uri.getFragment());
+		assertEquals("https://user:pw@example.com:8080/api//v1/?flag&tag=a&tag=b&empty=&x=1%262#frag/ment?", uri.toString());
+	}
+
+	@Test
+	void parseIpv6() {
+		final Uri uri = Uri.parse("http://[2001:db8::1]:8080?q=1");
+		assertEquals("[2001:db8::1]", uri.getHost());
+		assertEquals(8080, uri.getPort());
+		assertTrue(uri.getPath().isEmpty());
+		assertEquals("1", uri.getQueryValue("q"));
+		assertEquals("http://[2001:db8::1]:8080?q=1", uri.toString());
+		assertEquals("http://[::1]/a", Uri.builder().host("::1").path("a").build().toString());
+	}
+
+	@Test
+	void parseRoundTrip() {
+		for (String sample : SAMPLES) {
+			assertEquals(sample, Uri.parse(sample).toString());
+		}
+		// appended in place of the trailing slash
+		assertEquals("http://www.my.work.com/a/b", Uri.builder("http://www.my.work.com/").path("a/b").build().toString());
+	}
+
+	@Test
+	void parseInvalid() {
+		for (String invalid : new String[]{"example.com/a", "://example.com", "mailto:elex@example.com",
+				"http://", "http://:80/", "http://[::1/", "http://host:http/", "http://host:65536/"}) {
+			assertThrows(IllegalArgumentException.class, () -> Uri.parse(invalid), invalid);
+		}
+	}
+
 	@Test
 	void test(){
 		Uri.builder()
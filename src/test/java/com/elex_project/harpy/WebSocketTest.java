@@ -0,0 +1,396 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketTest {
+	private EchoServer server;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = new EchoServer();
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		server.close();
+	}
+
+	/**
+	 * Collects what the listener is told.
+	 */
+	private static final class Recorder implements WebSocket.Listener {
+		private final BlockingQueue<Object> messages = new LinkedBlockingQueue<>();
+		private final List<String> pings = new CopyOnWriteArrayList<>();
+		private final CountDownLatch ended = new CountDownLatch(1);
+		private volatile String end;
+
+		@Override
+		public void onText(@NotNull final WebSocket webSocket, @NotNull final String text) {
+			messages.add(text);
+		}
+
+		@Override
+		public void onBinary(@NotNull final WebSocket webSocket, @NotNull final ByteBuffer data) {
+			final byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			messages.add(bytes);
+		}
+
+		@Override
+		public void onPing(@NotNull final WebSocket webSocket, @NotNull final ByteBuffer data) {
+			pings.add(StandardCharsets.UTF_8.decode(data).toString());
+		}
+
+		@Override
+		public void onClose(@NotNull final WebSocket webSocket, final int code, @NotNull final String reason) {
+			end = code + " " + reason;
+			ended.countDown();
+		}
+
+		@Override
+		public void onError(@NotNull final WebSocket webSocket, @NotNull final Throwable e) {
+			end = e.toString();
+			ended.countDown();
+		}
+
+		Object next() throws InterruptedException {
+			final Object message = messages.poll(5, TimeUnit.SECONDS);
+			assertNotNull(message);
+			return message;
+		}
+
+		String end() throws InterruptedException {
+			assertTrue(ended.await(5, TimeUnit.SECONDS));
+			return end;
+		}
+	}
+
+	private WebSocket connect(final Recorder recorder, final boolean compression) throws IOException {
+		final WebSocket webSocket = WebSocket.builder("ws://127.0.0.1:" + server.getPort() + "/echo?a=1")
+				.listener(recorder)
+				.compression(compression)
+				.subprotocol("chat")
+				.header("Origin", "http://localhost")
+				.build();
+		webSocket.connect();
+		return webSocket;
+	}
+
+	@Test
+	void echo() throws Exception {
+		final byte[] large = new byte[200_000];
+		new Random(42).nextBytes(large);
+		final String text = "안녕, websocket! " + String.join("", Collections.nCopies(1000, "반복 "));
+		for (boolean compression : new boolean[]{false, true}) {
+			final Recorder recorder = new Recorder();
+			final WebSocket webSocket = connect(recorder, compression);
+			assertEquals(compression, webSocket.isCompressed());
+			assertEquals("chat", webSocket.getSubprotocol());
+			webSocket.sendText("hello");
+			assertEquals("hello", recorder.next());
+			webSocket.sendText(text);
+			assertEquals(text, recorder.next());
+			webSocket.sendBinary(ByteBuffer.wrap(large));
+			assertArrayEquals(large, (byte[]) recorder.next());
+			// fragmented, from a direct buffer
+			final ByteBuffer direct = ByteBuffer.allocateDirect(large.length);
+			direct.put(large).flip();
+			direct.limit(100_000);
+			webSocket.sendBinary(direct, false);
+			direct.limit(large.length);
+			webSocket.sendBinary(direct, true);
+			assertArrayEquals(large, (byte[]) recorder.next());
+			webSocket.sendText("", true);
+			assertEquals("", recorder.next());
+			webSocket.close();
+			assertEquals("1000 ", recorder.end());
+			assertFalse(webSocket.isOpen());
+		}
+		assertEquals("/echo?a=1", server.paths.get(0));
+		assertEquals("http://localhost", server.origins.get(0));
+	}
+
+	@Test
+	void ping() throws Exception {
+		final Recorder recorder = new Recorder();
+		final WebSocket webSocket = connect(recorder, false);
+		webSocket.sendText("ping-me");
+		// the server answers the pong with a text
+		assertEquals("pong: hi", recorder.next());
+		assertEquals("[hi]", recorder.pings.toString());
+		webSocket.close();
+	}
+
+	@Test
+	void keepAlive() throws Exception {
+		final Recorder recorder = new Recorder();
+		final WebSocket webSocket = WebSocket.builder("ws://127.0.0.1:" + server.getPort() + "/echo")
+				.listener(recorder)
+				.pingInterval(50)
+				.build();
+		webSocket.connect();
+		Thread.sleep(300);
+		assertTrue(server.pings.get() >= 2, "pings: " + server.pings.get());
+		assertTrue(webSocket.isOpen());
+		webSocket.close();
+	}
+
+	@Test
+	void closedByServer() throws Exception {
+		final Recorder recorder = new Recorder();
+		final WebSocket webSocket = connect(recorder, true);
+		webSocket.sendText("close-me");
+		assertEquals("4000 bye", recorder.end());
+		assertFalse(webSocket.isOpen());
+		assertThrows(IOException.class, () -> webSocket.sendText("late"));
+	}
+
+	@Test
+	void refused() {
+		final WebSocket webSocket = WebSocket.builder("ws://127.0.0.1:" + server.getPort() + "/refuse")
+				.listener(new Recorder())
+				.build();
+		assertThrows(ProtocolException.class, webSocket::connect);
+	}
+
+	/**
+	 * Echoes messages back in two fragments, compressed if agreed on,
+	 * with permessage-deflate without context takeover to keep it short.
+	 */
+	private static final class EchoServer implements AutoCloseable {
+		private final ServerSocket serverSocket;
+		private final List<String> paths = new CopyOnWriteArrayList<>();
+		private final List<String> origins = new CopyOnWriteArrayList<>();
+		private final AtomicInteger pings = new AtomicInteger();
+
+		EchoServer() throws IOException {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			final Thread thread = new Thread(() -> {
+				while (!serverSocket.isClosed()) {
+					try {
+						final Socket socket = serverSocket.accept();
+						final Thread connection = new Thread(() -> serve(socket));
+						connection.setDaemon(true);
+						connection.start();
+					} catch (IOException e) {
+						return;
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+		}
+
+		private void serve(final Socket socket) {
+			try (Socket s = socket) {
+				final DataInputStream in = new DataInputStream(s.getInputStream());
+				final OutputStream out = s.getOutputStream();
+				final Map<String, String> headers = new HashMap<>();
+				final String requestLine = line(in);
+				String line;
+				while (!(line = line(in)).isEmpty()) {
+					final int colon = line.indexOf(':');
+					headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+				}
+				final String path = requestLine.split(" ")[1];
+				if (path.equals("/refuse")) {
+					out.write("HTTP/1.1 403 Forbidden\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+					return;
+				}
+				paths.add(path);
+				origins.add(String.valueOf(headers.get("origin")));
+				final boolean deflate = String.valueOf(headers.get("sec-websocket-extensions")).contains("permessage-deflate");
+				final String accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1")
+						.digest((headers.get("sec-websocket-key") + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes(StandardCharsets.ISO_8859_1)));
+				out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+						+ "Sec-WebSocket-Accept: " + accept + "\r\n"
+						+ (headers.containsKey("sec-websocket-protocol") ? "Sec-WebSocket-Protocol: chat\r\n" : "")
+						+ (deflate ? "Sec-WebSocket-Extensions: permessage-deflate; server_no_context_takeover; client_no_context_takeover\r\n" : "")
+						+ "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+				final ByteArrayOutputStream message = new ByteArrayOutputStream();
+				int messageOpcode = 0;
+				boolean compressed = false;
+				while (true) {
+					final int b0 = in.readUnsignedByte();
+					final int b1 = in.readUnsignedByte();
+					assertTrue((b1 & 0x80) != 0, "unmasked");
+					long length = b1 & 0x7F;
+					if (length == 126) length = in.readUnsignedShort();
+					else if (length == 127) length = in.readLong();
+					final byte[] mask = new byte[4];
+					in.readFully(mask);
+					final byte[] payload = new byte[(int) length];
+					in.readFully(payload);
+					for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i & 3];
+					final int opcode = b0 & 0x0F;
+					if (opcode == 0x9) {
+						pings.incrementAndGet();
+						frame(out, 0x80 | 0xA, payload);
+					} else if (opcode == 0xA) {
+						frame(out, 0x81, ("pong: " + new String(payload, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+					} else if (opcode == 0x8) {
+						frame(out, 0x88, payload);
+						return;
+					} else {
+						if (opcode != 0) {
+							messageOpcode = opcode;
+							compressed = (b0 & 0x40) != 0;
+						}
+						message.write(payload);
+						if ((b0 & 0x80) == 0) continue;
+						byte[] data = message.toByteArray();
+						message.reset();
+						if (compressed) data = inflate(data);
+						final String text = messageOpcode == 1 ? new String(data, StandardCharsets.UTF_8) : null;
+						if ("ping-me".equals(text)) {
+							frame(out, 0x89, "hi".getBytes(StandardCharsets.UTF_8));
+						} else if ("close-me".equals(text)) {
+							final ByteBuffer close = ByteBuffer.allocate(5).putShort((short) 4000).put("bye".getBytes(StandardCharsets.UTF_8));
+							frame(out, 0x88, close.array());
+						} else {
+							int rsv = 0;
+							if (deflate) {
+								data = deflate(data);
+								rsv = 0x40;
+							}
+							final int half = data.length / 2;
+							frame(out, rsv | messageOpcode, Arrays.copyOfRange(data, 0, half));
+							frame(out, 0x80, Arrays.copyOfRange(data, half, data.length));
+						}
+					}
+				}
+			} catch (Exception e) {
+				// the client is gone
+			}
+		}
+
+		private static String line(final DataInputStream in) throws IOException {
+			final StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c < 0) throw new IOException("EOF");
+				if (c != '\r') line.append((char) c);
+			}
+			return line.toString();
+		}
+
+		private static void frame(final OutputStream out, final int b0, final byte[] payload) throws IOException {
+			final ByteBuffer header = ByteBuffer.allocate(10);
+			header.put((byte) b0);
+			if (payload.length < 126) {
+				header.put((byte) payload.length);
+			} else if (payload.length < 65536) {
+				header.put((byte) 126).putShort((short) payload.length);
+			} else {
+				header.put((byte) 127).putLong(payload.length);
+			}
+			out.write(header.array(), 0, header.position());
+			out.write(payload);
+			out.flush();
+		}
+
+		private static byte[] inflate(final byte[] data) throws Exception {
+			final Inflater inflater = new Inflater(true);
+			final byte[] input = Arrays.copyOf(data, data.length + 4);
+			input[data.length + 2] = (byte) 0xFF;
+			input[data.length + 3] = (byte) 0xFF;
+			inflater.setInput(input);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int n;
+			while ((n = inflater.inflate(buffer)) > 0 || !inflater.needsInput()) {
+				out.write(buffer, 0, n);
+			}
+			inflater.end();
+			return out.toByteArray();
+		}
+
+		private static byte[] deflate(final byte[] data) {
+			final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflater.setInput(data);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int n;
+			while ((n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			deflater.end();
+			final byte[] bytes = out.toByteArray();
+			return Arrays.copyOf(bytes, bytes.length - 4);
+		}
+	}
+}
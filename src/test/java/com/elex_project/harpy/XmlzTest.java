@@ -0,0 +1,139 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Elex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.elex_project.harpy;
+
+import com.sun.net.httpserver.Headers;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.transform.TransformerException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlzTest {
+
+	private static Document parse(final String xml) throws IOException {
+		return Xmlz.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void roundTrip() throws IOException, TransformerException {
+		final Document document = parse("<items><item id=\"1\">항목</item></items>");
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Xmlz.write(document, os);
+		final Document again = Xmlz.parse(new ByteArrayInputStream(os.toByteArray()));
+		assertEquals("항목", ((Element) again.getElementsByTagName("item").item(0)).getTextContent());
+		assertArrayEquals(os.toByteArray(), Xmlz.toBytes(document));
+		// one per thread
+		assertSame(Xmlz.documentBuilder(), Xmlz.documentBuilder());
+		assertSame(Xmlz.transformer(), Xmlz.transformer());
+	}
+
+	@Test
+	void noExternalEntities(@TempDir final Path dir) throws IOException {
+		final Path secret = dir.resolve("secret.txt");
+		Files.write(secret, "secret".getBytes(StandardCharsets.UTF_8));
+		final String xml = "<?xml version=\"1.0\"?><!DOCTYPE a [<!ENTITY x SYSTEM \"" + secret.toUri() + "\">]><a>&x;</a>";
+		try {
+			assertFalse(parse(xml).getDocumentElement().getTextContent().contains("secret"));
+		} catch (IOException e) {
+			// refused outright, fine too
+		}
+	}
+
+	@Test
+	void malformed() {
+		final IOException e = assertThrows(IOException.class, () -> parse("<a><b></a>"));
+		assertNotNull(e.getCause());
+	}
+
+	@Test
+	void postDocument() throws IOException, TransformerException {
+		try (LoopbackServer server = new LoopbackServer()) {
+			final List<String> framing = Collections.synchronizedList(new ArrayList<>());
+			server.handle("/xml", exchange -> {
+				final Headers headers = exchange.getRequestHeaders();
+				framing.add(null != headers.getFirst("Content-Length") ? "length" : headers.getFirst("Transfer-Encoding"));
+				final byte[] body = LoopbackServer.readAll(exchange.getRequestBody());
+				exchange.getResponseHeaders().set("Content-Type", headers.getFirst("Content-Type"));
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(body);
+				}
+			});
+
+			final HttpPostRequest<Document> request = new HttpPostRequest<>(server.uri("/xml").build());
+			request.setBody(parse("<items><item>항목</item></items>"));
+			assertEquals("항목", post(request).getElementsByTagName("item").item(0).getTextContent());
+
+			// chunked only when asked for
+			final HttpPostRequest<Document> chunked = new HttpPostRequest<>(server.uri("/xml").build());
+			chunked.setBody(RequestBody.xml(parse("<items><item>chunked</item></items>")));
+			assertEquals("chunked", post(chunked).getElementsByTagName("item").item(0).getTextContent());
+
+			assertEquals(Arrays.asList("length", "chunked"), framing);
+		}
+	}
+
+	private static Document post(final HttpPostRequest<Document> request) throws IOException {
+		final AtomicReference<Document> echoed = new AtomicReference<>();
+		request.send(new HttpXmlResponseHandler() {
+			@Override
+			public void onResponse(final int status, final Map<String, List<String>> headers, @Nullable final Document message) {
+				echoed.set(message);
+			}
+
+			@Override
+			public void onException(final Throwable e) {
+				fail(e);
+			}
+		});
+		return echoed.get();
+	}
+}